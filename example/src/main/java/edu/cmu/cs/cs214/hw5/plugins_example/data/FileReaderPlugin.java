@@ -3,15 +3,18 @@ package edu.cmu.cs.cs214.hw5.plugins_example.data;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.DataSet;
 import edu.cmu.cs.cs214.hw5.core.DataType;
+import edu.cmu.cs.cs214.hw5.core.RowSource;
 import edu.cmu.cs.cs214.hw5.core.UserInputConfig;
 import edu.cmu.cs.cs214.hw5.core.UserInputType;
 
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 /**
  * FileReaderPlugin is a DataPlugin which extracts dataSet from files(e.g. csv, tsv..) and
@@ -73,74 +76,176 @@ public class FileReaderPlugin implements DataPlugin {
      */
     @Override
     public DataSet loadData(Map<String, List<String>> params) {
+        List<List<Object>> data = new ArrayList<>();
+        try (RowSource source = openRowSource(params)) {
+            for (List<List<Object>> batch = source.nextBatch(); !batch.isEmpty(); batch = source.nextBatch()) {
+                data.addAll(batch);
+            }
+            return new DataSet(source.getLabels(), source.getDataTypes(), data);
+        }
+    }
+
+    /**
+     * Open a RowSource which parses the rows of the file lazily batch by batch, so that the framework
+     * can filter the rows while they are being read.
+     *
+     * @param params a parameter mapping from configuration name to concrete parameters user specifies.
+     * @return RowSource reading the file.
+     */
+    @Override
+    public RowSource openRowSource(Map<String, List<String>> params) {
         String path = params.get(FILE_PATH).get(0);
         String delimiter = params.get(DELIMITER).get(0);
 
-        Scanner scanner = null;
+        BufferedReader reader;
         try {
-            scanner = new Scanner(new File(path));
-        } catch (IOException ioe) {
-            throw new IllegalArgumentException(ioe.getMessage());
-        }
-
-        if (!scanner.hasNextLine()) {
-            throw new IllegalArgumentException("Please specify a column line in the file");
+            reader = Files.newBufferedReader(Paths.get(path));
+        } catch (IOException | InvalidPathException e) {
+            throw new IllegalArgumentException(e.getMessage());
         }
 
-        String columnLine = scanner.nextLine();
-        String[] columnNames = columnLine.split(delimiter);
-        int columnNum = columnNames.length;
-        List<String> labels = new ArrayList<>();
-        for (String columnName: columnNames) {
-            labels.add(columnName);
-        }
-
-        if (!scanner.hasNextLine()) {
-            throw new IllegalArgumentException("Please specify a column value type line in the file");
-        }
+        try {
+            String columnLine = reader.readLine();
+            if (columnLine == null) {
+                throw new IllegalArgumentException("Please specify a column line in the file");
+            }
+            String[] columnNames = columnLine.split(delimiter);
+            List<String> labels = new ArrayList<>();
+            for (String columnName: columnNames) {
+                labels.add(columnName);
+            }
 
-        String typeLine = scanner.nextLine();
-        String[] types = typeLine.split(delimiter);
-        List<DataType> dataTypes = new ArrayList<>();
-        for (String type: types) {
-            switch (type) {
-                case "String":
-                    dataTypes.add(DataType.STRING);
-                    break;
-                case "Integer":
-                    dataTypes.add(DataType.INTEGER);
-                    break;
-                case "Double":
-                    dataTypes.add(DataType.DOUBLE);
-                    break;
-                default:
-                    break;
+            String typeLine = reader.readLine();
+            if (typeLine == null) {
+                throw new IllegalArgumentException("Please specify a column value type line in the file");
             }
-        }
-                
-        List<List<Object>> data = new ArrayList<>();
-        while(scanner.hasNextLine()) {
-            List<Object> row = new ArrayList<>();
-            String[] valuesInLine = scanner.nextLine().split(delimiter);
-            for (int i = 0; i < columnNum; i++) {
-                switch (dataTypes.get(i)) {
-                    case STRING:
-                        row.add(valuesInLine[i]);
+            String[] types = typeLine.split(delimiter);
+            List<DataType> dataTypes = new ArrayList<>();
+            for (String type: types) {
+                switch (type) {
+                    case "String":
+                        dataTypes.add(DataType.STRING);
                         break;
-                    case INTEGER:
-                        row.add(Integer.parseInt(valuesInLine[i]));
+                    case "Integer":
+                        dataTypes.add(DataType.INTEGER);
                         break;
-                    case DOUBLE:
-                        row.add(Double.parseDouble(valuesInLine[i]));
+                    case "Double":
+                        dataTypes.add(DataType.DOUBLE);
                         break;
                     default:
                         break;
                 }
             }
-            data.add(row);
+            return new FileRowSource(reader, delimiter, labels, dataTypes);
+        } catch (IOException | IllegalArgumentException e) {
+            closeQuietly(reader);
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Close the reader and ignore the error.
+     *
+     * @param reader reader to be closed.
+     */
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+    }
+
+    /**
+     * RowSource parsing the data lines of a file batch by batch.
+     */
+    private static class FileRowSource implements RowSource {
+
+        /**
+         * Number of lines parsed in a batch.
+         */
+        private static final int BATCH_SIZE = 4096;
+
+        /**
+         * Reader of the file positioned after the header lines.
+         */
+        private final BufferedReader reader;
+
+        /**
+         * Delimiter of the values in a line.
+         */
+        private final String delimiter;
+
+        /**
+         * Column labels.
+         */
+        private final List<String> labels;
+
+        /**
+         * Column data types.
+         */
+        private final List<DataType> dataTypes;
+
+        /**
+         * Create and initialize a FileRowSource.
+         *
+         * @param reader reader of the file positioned after the header lines.
+         * @param delimiter delimiter of the values in a line.
+         * @param labels column labels.
+         * @param dataTypes column data types.
+         */
+        FileRowSource(BufferedReader reader, String delimiter, List<String> labels, List<DataType> dataTypes) {
+            this.reader = reader;
+            this.delimiter = delimiter;
+            this.labels = labels;
+            this.dataTypes = dataTypes;
+        }
+
+        @Override
+        public List<String> getLabels() {
+            return labels;
+        }
+
+        @Override
+        public List<DataType> getDataTypes() {
+            return dataTypes;
+        }
+
+        @Override
+        public List<List<Object>> nextBatch() {
+            int columnNum = labels.size();
+            List<List<Object>> batch = new ArrayList<>();
+            try {
+                String line;
+                while (batch.size() < BATCH_SIZE && (line = reader.readLine()) != null) {
+                    List<Object> row = new ArrayList<>();
+                    String[] valuesInLine = line.split(delimiter);
+                    for (int i = 0; i < columnNum; i++) {
+                        switch (dataTypes.get(i)) {
+                            case STRING:
+                                row.add(valuesInLine[i]);
+                                break;
+                            case INTEGER:
+                                row.add(Integer.parseInt(valuesInLine[i]));
+                                break;
+                            case DOUBLE:
+                                row.add(Double.parseDouble(valuesInLine[i]));
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                    batch.add(row);
+                }
+            } catch (IOException ioe) {
+                throw new IllegalArgumentException(ioe.getMessage());
+            }
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(reader);
         }
-        
-        DataSet dataSet = new DataSet(labels, dataTypes, data);
-        return dataSet;
     }
-}
\ No newline at end of file
+}
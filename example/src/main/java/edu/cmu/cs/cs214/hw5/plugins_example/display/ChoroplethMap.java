@@ -4,7 +4,8 @@ import edu.cmu.cs.cs214.hw5.core.DataSet;
 import edu.cmu.cs.cs214.hw5.core.DataType;
 import edu.cmu.cs.cs214.hw5.core.DisplayFilterConfig;
 import edu.cmu.cs.cs214.hw5.core.DisplayPlugin;
-import edu.cmu.cs.cs214.hw5.core.MultiPolygon;
+import edu.cmu.cs.cs214.hw5.core.ProjectedColumn;
+import edu.cmu.cs.cs214.hw5.core.Projection;
 import edu.cmu.cs.cs214.hw5.core.UserInputConfig;
 import edu.cmu.cs.cs214.hw5.core.UserInputType;
 import static java.awt.Image.SCALE_SMOOTH;
@@ -23,8 +24,12 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GradientPaint;
 import java.awt.Graphics2D;
-import java.awt.Polygon;
 import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
@@ -63,6 +68,11 @@ public class ChoroplethMap implements DisplayPlugin {
      */
     private static final String TIME = "Time (Optional)";
 
+    /**
+     * Projection configuration label name.
+     */
+    private static final String PROJECTION = "Projection (Optional)";
+
     /**
      * Light Color.
      */
@@ -108,6 +118,7 @@ public class ChoroplethMap implements DisplayPlugin {
         numericLabels.addAll(columnPreview.get(DataType.INTEGER));
         configs.add(new UserInputConfig(VALUE, UserInputType.SINGLE_SELECTION, numericLabels));
         configs.add(new UserInputConfig(TIME, UserInputType.SINGLE_SELECTION, columnPreview.get(DataType.INTEGER)));
+        configs.add(new UserInputConfig(PROJECTION, UserInputType.SINGLE_SELECTION, Projection.displayNames()));
 
         return configs;
     }
@@ -160,7 +171,11 @@ public class ChoroplethMap implements DisplayPlugin {
         checkParams(pluginParams);
 
         String areaLabel = pluginParams.get(AREA).get(0);
-        List<MultiPolygon> areaColumns = dataSet.getColumn(areaLabel).stream().map(o -> (MultiPolygon) o).collect(Collectors.toList());
+        List<String> projectionParam = pluginParams.get(PROJECTION);
+        Projection projection = projectionParam == null || projectionParam.isEmpty() || projectionParam.get(0) == null
+                ? Projection.EQUIRECTANGULAR : Projection.fromDisplayName(projectionParam.get(0));
+        // The column is projected once and cached, and is only scaled to pixels below.
+        ProjectedColumn areaColumns = dataSet.project(areaLabel, projection);
 
         String valueLabel = pluginParams.get(VALUE).get(0);
 
@@ -170,10 +185,10 @@ public class ChoroplethMap implements DisplayPlugin {
         double maxV = valueColumn.stream().max(Double::compareTo).get();
         double minV = valueColumn.stream().min(Double::compareTo).get();
 
-        double maxX = areaColumns.stream().map(MultiPolygon::getMaxX).max(Double::compareTo).get();
-        double minX = areaColumns.stream().map(MultiPolygon::getMinX).min(Double::compareTo).get();
-        double maxY = areaColumns.stream().map(MultiPolygon::getMaxY).max(Double::compareTo).get();
-        double minY = areaColumns.stream().map(MultiPolygon::getMinY).min(Double::compareTo).get();
+        double maxX = areaColumns.getMaxX();
+        double minX = areaColumns.getMinX();
+        double maxY = areaColumns.getMaxY();
+        double minY = areaColumns.getMinY();
 
         JPanel panel = new JPanel(new BorderLayout());
         panel.setPreferredSize(new Dimension(width, height));
@@ -196,27 +211,46 @@ public class ChoroplethMap implements DisplayPlugin {
         Graphics2D g = img.createGraphics();
 
         g.setStroke(new BasicStroke(2));
+        // Map projected coordinates to pixels, with the y axis pointing down.
+        double scaleX = graphWidth / (maxX - minX + 1);
+        double scaleY = graphHeight / (maxY - minY + 1);
+        AffineTransform toPixels = new AffineTransform(scaleX, 0, 0, -scaleY,
+                (1 - minX) * scaleX, graphHeight - (1 - minY) * scaleY);
+        double pixelsPerDegree = Math.max(scaleX, scaleY);
         for (int i = 0; i < valueColumn.size(); i++) {
             double val = (valueColumn.get(i) - minV + 1) / (maxV - minV + 1);
             Color color = new Color(
                     (int) (val * R1 + (1 - val) * R2),
                     (int) (val * G1 + (1 - val) * G2),
                     (int) (val * B1 + (1 - val) * B2));
-            for (List<Point2D> points : areaColumns.get(i).getPoints()) {
-                Polygon newPolygon = new Polygon(
-                        points.stream().mapToInt(p -> (int) ((p.getX() - minX + 1) * graphWidth / (maxX - minX + 1))).toArray(),
-                        points.stream().mapToInt(p -> graphHeight - (int) ((p.getY() - minY + 1) * graphHeight / (maxY - minY + 1))).toArray(),
-                        points.size()
-                );
-                g.setColor(Color.WHITE);
-                g.drawPolygon(newPolygon);
-                g.setColor(color);
-                g.fill(newPolygon);
-            }
+            Shape area = areaColumns.get(i).levelOfDetail(pixelsPerDegree).asShape(toPixels);
+            g.setColor(Color.WHITE);
+            g.draw(area);
+            g.setColor(color);
+            g.fill(area);
         }
         JLabel graphLabel = new JLabel(new ImageIcon(img));
         graphLabel.setOpaque(true);
         graphLabel.setBackground(Color.WHITE);
+        int nameCol = dataSet.getLabels().indexOf(pluginParams.get(AREA_NAME).get(0));
+        graphLabel.addMouseMotionListener(new MouseMotionAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                // The image is centered in the label, and the areas under the mouse are found with the spatial
+                // index of the dataSet.
+                Point2D point = new Point2D.Double(e.getX() - (graphLabel.getWidth() - graphWidth) / 2.0,
+                        e.getY() - (graphLabel.getHeight() - graphHeight) / 2.0);
+                try {
+                    toPixels.inverseTransform(point, point);
+                } catch (NoninvertibleTransformException ex) {
+                    return;
+                }
+                point = areaColumns.unproject(point.getX(), point.getY());
+                int[] rows = dataSet.rowsContaining(areaLabel, point.getX(), point.getY());
+                graphLabel.setToolTipText(rows.length == 0 ? null
+                        : dataSet.getCell(rows[0], nameCol) + ": " + valueColumn.get(rows[0]));
+            }
+        });
         graphPanel.add(graphLabel, BorderLayout.CENTER);
 
 
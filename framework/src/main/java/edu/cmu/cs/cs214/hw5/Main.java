@@ -3,6 +3,7 @@ package edu.cmu.cs.cs214.hw5;
 import edu.cmu.cs.cs214.hw5.core.DataPlugin;
 import edu.cmu.cs.cs214.hw5.core.DisplayPlugin;
 import edu.cmu.cs.cs214.hw5.core.GeoDataFramework;
+import edu.cmu.cs.cs214.hw5.core.GeocoderBackend;
 import edu.cmu.cs.cs214.hw5.gui.GeoDataFrameworkGui;
 
 import javax.swing.SwingUtilities;
@@ -25,9 +26,11 @@ public class Main {
 
         List<DataPlugin> dataPlugins = loadDataPlugins();
         List<DisplayPlugin> displayPlugins = loadDisplayPlugins();
+        List<GeocoderBackend> geocoderBackends = loadGeocoderBackends();
 
         dataPlugins.forEach(core::registerDataPlugin);
         displayPlugins.forEach(core::registerDisplayPlugin);
+        geocoderBackends.forEach(core::registerGeocoderBackend);
 
         SwingUtilities.invokeLater(() -> new GeoDataFrameworkGui(core));
     }
@@ -59,4 +62,19 @@ public class Main {
         }
         return result;
     }
+
+    /**
+     * Load available geocoder backends listed in META-INF/services/...
+     *
+     * @return List of instantiated backends
+     */
+    private static List<GeocoderBackend> loadGeocoderBackends() {
+        ServiceLoader<GeocoderBackend> backends = ServiceLoader.load(GeocoderBackend.class);
+        List<GeocoderBackend> result = new ArrayList<>();
+        for (GeocoderBackend backend : backends) {
+            if (backend.isAvailable())
+                result.add(backend);
+        }
+        return result;
+    }
 }
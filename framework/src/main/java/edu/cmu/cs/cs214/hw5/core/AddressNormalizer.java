@@ -0,0 +1,319 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * AddressNormalizer turns addresses into keys that are equal for the different spellings of the same
+ * address, e.g. "New York", "new york ", "NEW YORK" and "New York, NY". The key is used to detect
+ * duplicate addresses before querying and as the key of the geoCoding caches, while the addresses
+ * themselves are queried as they are written. The normalization applies, in order:
+ * <ol>
+ *     <li>case folding,</li>
+ *     <li>Unicode folding, which also removes diacritics ("S&atilde;o Paulo" becomes "sao paulo"),</li>
+ *     <li>punctuation collapsing: apostrophes and periods are removed, the other punctuations become
+ *     whitespaces, and commas separate the parts of the address,</li>
+ *     <li>the abbreviation tables: every word is replaced by its abbreviation ("Street" becomes "st"),
+ *     and every whole part by its abbreviation ("United States" becomes "usa").</li>
+ * </ol>
+ * Whitespaces are always collapsed, and empty or repeated consecutive parts are removed. US state names
+ * are only abbreviated ("Pennsylvania" becomes "pa") in the state field of structured addresses, since
+ * state codes such as "CA", "LA" or "IN" also name other places or are common words.
+ */
+class AddressNormalizer {
+
+    /**
+     * Default abbreviations of single words.
+     */
+    static final Map<String, String> DEFAULT_WORD_ABBREVIATIONS = Collections.unmodifiableMap(abbreviations(
+            "street", "st", "saint", "st", "avenue", "ave", "av", "ave", "road", "rd", "boulevard", "blvd",
+            "drive", "dr", "lane", "ln", "court", "ct", "place", "pl", "square", "sq", "terrace", "ter",
+            "highway", "hwy", "parkway", "pkwy", "expressway", "expy", "freeway", "fwy", "route", "rte",
+            "circle", "cir", "mount", "mt", "mountain", "mtn", "fort", "ft", "county", "co", "township", "twp",
+            "north", "n", "south", "s", "east", "e", "west", "w",
+            "northeast", "ne", "northwest", "nw", "southeast", "se", "southwest", "sw"));
+
+    /**
+     * Default abbreviations of whole parts of an address.
+     */
+    static final Map<String, String> DEFAULT_PART_ABBREVIATIONS = Collections.unmodifiableMap(abbreviations(
+            "united states", "usa", "united states of america", "usa", "us", "usa",
+            "united kingdom", "uk", "great britain", "uk"));
+
+    /**
+     * Default abbreviations of the state field of an address.
+     */
+    static final Map<String, String> DEFAULT_STATE_ABBREVIATIONS = Collections.unmodifiableMap(abbreviations(
+            "alabama", "al", "alaska", "ak", "arizona", "az", "arkansas", "ar", "california", "ca",
+            "colorado", "co", "connecticut", "ct", "delaware", "de", "district of columbia", "dc",
+            "florida", "fl", "georgia", "ga", "hawaii", "hi", "idaho", "id", "illinois", "il", "indiana", "in",
+            "iowa", "ia", "kansas", "ks", "kentucky", "ky", "louisiana", "la", "maine", "me", "maryland", "md",
+            "massachusetts", "ma", "michigan", "mi", "minnesota", "mn", "mississippi", "ms", "missouri", "mo",
+            "montana", "mt", "nebraska", "ne", "nevada", "nv", "new hampshire", "nh", "new jersey", "nj",
+            "new mexico", "nm", "new york", "ny", "north carolina", "nc",
+            "north dakota", "nd", "ohio", "oh", "oklahoma", "ok", "oregon", "or",
+            "pennsylvania", "pa", "rhode island", "ri", "south carolina", "sc",
+            "south dakota", "sd", "tennessee", "tn", "texas", "tx", "utah", "ut",
+            "vermont", "vt", "virginia", "va", "washington", "wa", "west virginia", "wv",
+            "wisconsin", "wi", "wyoming", "wy"));
+
+    /**
+     * Letters that Unicode decomposition doesn't fold into ASCII.
+     */
+    private static final Map<Character, String> LETTER_FOLDING = Map.of(
+            '\u00df', "ss", '\u00e6', "ae", '\u00c6', "AE", '\u0153', "oe", '\u0152', "OE",
+            '\u00f8', "o", '\u00d8', "O", '\u0142', "l", '\u0141', "L", '\u0111', "d");
+
+    /**
+     * Diacritics and other combining marks left by Unicode decomposition.
+     */
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Punctuations removed without separating words, e.g. in "St. John's".
+     */
+    private static final Pattern REMOVED_PUNCTUATIONS = Pattern.compile("['\u2019\u02bc.]");
+
+    /**
+     * Punctuations and symbols replaced by whitespaces, except commas which separate the parts.
+     */
+    private static final Pattern SEPARATING_PUNCTUATIONS = Pattern.compile("[\\p{P}\\p{S}&&[^,]]");
+
+    /**
+     * Runs of whitespaces collapsed into one.
+     */
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    /**
+     * Whether upper case letters are folded into lower case.
+     */
+    private final boolean foldCase;
+
+    /**
+     * Whether Unicode compatibility characters are folded and diacritics removed.
+     */
+    private final boolean foldUnicode;
+
+    /**
+     * Whether punctuations are removed or replaced by whitespaces.
+     */
+    private final boolean collapsePunctuation;
+
+    /**
+     * Abbreviations of single words, in normalized form.
+     */
+    private final Map<String, String> wordAbbreviations;
+
+    /**
+     * Abbreviations of whole parts of an address, in normalized form.
+     */
+    private final Map<String, String> partAbbreviations;
+
+    /**
+     * Abbreviations of the state field of an address, in normalized form.
+     */
+    private final Map<String, String> stateAbbreviations;
+
+    /**
+     * Number of distinct addresses, as written, that were looked up in batches.
+     */
+    private final AtomicLong addressCount = new AtomicLong();
+
+    /**
+     * Number of distinct keys of the addresses looked up in batches.
+     */
+    private final AtomicLong keyCount = new AtomicLong();
+
+    /**
+     * Initialize a normalizer applying every stage with the default abbreviation tables.
+     */
+    AddressNormalizer() {
+        this(true, true, true, DEFAULT_WORD_ABBREVIATIONS, DEFAULT_PART_ABBREVIATIONS, DEFAULT_STATE_ABBREVIATIONS);
+    }
+
+    /**
+     * Initialize a normalizer with the given stages. The keys of the abbreviation tables are normalized by
+     * the enabled stages, so that they match the words and parts they abbreviate. Pass empty tables to
+     * disable abbreviations.
+     *
+     * @param foldCase whether to fold upper case letters into lower case.
+     * @param foldUnicode whether to fold Unicode compatibility characters and remove diacritics.
+     * @param collapsePunctuation whether to remove or replace punctuations by whitespaces.
+     * @param wordAbbreviations map from word to its abbreviation.
+     * @param partAbbreviations map from whole part of an address to its abbreviation.
+     * @param stateAbbreviations map from state to its abbreviation, applied to the state field only.
+     */
+    AddressNormalizer(boolean foldCase, boolean foldUnicode, boolean collapsePunctuation,
+                      Map<String, String> wordAbbreviations, Map<String, String> partAbbreviations,
+                      Map<String, String> stateAbbreviations) {
+        this.foldCase = foldCase;
+        this.foldUnicode = foldUnicode;
+        this.collapsePunctuation = collapsePunctuation;
+        this.wordAbbreviations = new HashMap<>();
+        wordAbbreviations.forEach((k, v) -> this.wordAbbreviations.put(fold(k), fold(v)));
+        this.partAbbreviations = new HashMap<>();
+        partAbbreviations.forEach((k, v) -> this.partAbbreviations.put(abbreviateWords(fold(k)), fold(v)));
+        this.stateAbbreviations = new HashMap<>();
+        stateAbbreviations.forEach((k, v) -> this.stateAbbreviations.put(normalize(k), fold(v)));
+    }
+
+    /**
+     * Return a mutable map of the given abbreviations.
+     *
+     * @param pairs words followed by their abbreviation.
+     * @return map from word to its abbreviation.
+     */
+    private static Map<String, String> abbreviations(String... pairs) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2)
+            map.put(pairs[i], pairs[i + 1]);
+        return map;
+    }
+
+    /**
+     * Normalize an address, or a part of an address.
+     *
+     * @param s address, possibly null.
+     * @return the normalized address, empty if the address is null or blank.
+     */
+    String normalize(String s) {
+        if (s == null)
+            return "";
+        List<String> parts = new ArrayList<>();
+        for (String part : fold(s).split(",")) {
+            part = abbreviateWords(part);
+            part = partAbbreviations.getOrDefault(part, part);
+            if (!part.isEmpty() && (parts.isEmpty() || !parts.get(parts.size() - 1).equals(part)))
+                parts.add(part);
+        }
+        return String.join(", ", parts);
+    }
+
+    /**
+     * Normalize the state field of an address, abbreviating US state names.
+     *
+     * @param state state of an address, possibly null.
+     * @return the normalized state, empty if the state is null or blank.
+     */
+    String normalizeState(String state) {
+        String normalized = normalize(state);
+        return stateAbbreviations.getOrDefault(normalized, normalized);
+    }
+
+    /**
+     * Return the key of a structured address, made of its normalized parts.
+     *
+     * @param address structured address.
+     * @return the key of the address.
+     */
+    String key(GeoAddress address) {
+        return normalize(address.getCountry()) + "|" + normalizeState(address.getState()) + "|"
+                + normalize(address.getCity()) + "|" + normalize(address.getCounty()) + "|"
+                + normalize(address.getStreet());
+    }
+
+    /**
+     * Return the key of a free-form address.
+     *
+     * @param address free-form address.
+     * @return the key of the address.
+     */
+    String key(String address) {
+        return normalize(address);
+    }
+
+    /**
+     * Group addresses by key, keeping the first address of every key as the one to query. The number of
+     * queries saved compared to querying every distinct address as written is added to the statistics.
+     *
+     * @param addresses addresses of a batch.
+     * @param key function returning the key of an address.
+     * @param <T> type of address.
+     * @return map from key to the address to query, in order of first appearance.
+     */
+    <T> Map<String, T> distinctByKey(T[] addresses, Function<T, String> key) {
+        Map<String, T> representatives = new LinkedHashMap<>();
+        Set<T> distinct = new HashSet<>();
+        for (T a : addresses) {
+            if (distinct.add(a))
+                representatives.putIfAbsent(key.apply(a), a);
+        }
+        addressCount.addAndGet(distinct.size());
+        keyCount.addAndGet(representatives.size());
+        return representatives;
+    }
+
+    /**
+     * Return the number of queries saved by the normalization so far.
+     *
+     * @return number of queries saved.
+     */
+    long savedCount() {
+        return addressCount.get() - keyCount.get();
+    }
+
+    /**
+     * Return a summary of the queries saved by the normalization.
+     *
+     * @return a summary of the queries saved by the normalization.
+     */
+    String stats() {
+        return String.format("%d distinct address(es) normalized to %d key(s), %d request(s) saved",
+                addressCount.get(), keyCount.get(), savedCount());
+    }
+
+    /**
+     * Apply the case, Unicode and punctuation stages and collapse whitespaces.
+     *
+     * @param s string to fold.
+     * @return the folded string.
+     */
+    private String fold(String s) {
+        if (foldUnicode) {
+            StringBuilder folded = new StringBuilder(s.length());
+            for (char c : Normalizer.normalize(s, Normalizer.Form.NFKD).toCharArray()) {
+                String letter = LETTER_FOLDING.get(c);
+                if (letter != null)
+                    folded.append(letter);
+                else
+                    folded.append(c);
+            }
+            s = COMBINING_MARKS.matcher(folded).replaceAll("");
+        }
+        if (foldCase)
+            s = s.toLowerCase(Locale.ROOT);
+        if (collapsePunctuation) {
+            s = REMOVED_PUNCTUATIONS.matcher(s).replaceAll("");
+            s = SEPARATING_PUNCTUATIONS.matcher(s).replaceAll(" ");
+        }
+        s = WHITESPACES.matcher(s).replaceAll(" ").strip();
+        return s.replace(" ,", ",").replace(", ", ",");
+    }
+
+    /**
+     * Replace every word of a part by its abbreviation.
+     *
+     * @param part folded part of an address.
+     * @return the part with abbreviated words.
+     */
+    private String abbreviateWords(String part) {
+        part = part.strip();
+        if (wordAbbreviations.isEmpty() || part.isEmpty())
+            return part;
+        String[] words = part.split(" ");
+        for (int i = 0; i < words.length; i++)
+            words[i] = wordAbbreviations.getOrDefault(words[i], words[i]);
+        return String.join(" ", words);
+    }
+}
@@ -0,0 +1,63 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * AggregateFunction enumerates the functions that can be computed over the values of a numeric column
+ * within each group of rows.
+ */
+enum AggregateFunction {
+    COUNT("Count"),
+    SUM("Sum"),
+    AVERAGE("Average"),
+    MIN("Min"),
+    MAX("Max");
+
+    /**
+     * Name of the function shown to the user.
+     */
+    private final String displayName;
+
+    /**
+     * Initialize an aggregate function with its display name.
+     *
+     * @param displayName name of the function shown to the user.
+     */
+    AggregateFunction(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Return the name of the function shown to the user.
+     *
+     * @return name of the function shown to the user.
+     */
+    String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Return the display names of all aggregate functions.
+     *
+     * @return display names of all aggregate functions.
+     */
+    static List<String> displayNames() {
+        return Arrays.stream(values()).map(AggregateFunction::getDisplayName).collect(Collectors.toList());
+    }
+
+    /**
+     * Return the aggregate function with the given display name.
+     *
+     * @param displayName name of the function shown to the user.
+     * @return the aggregate function with the given display name.
+     */
+    static AggregateFunction fromDisplayName(String displayName) {
+        for (AggregateFunction function : values()) {
+            if (function.displayName.equals(displayName))
+                return function;
+        }
+        throw new IllegalArgumentException("Unknown Aggregate Function");
+    }
+}
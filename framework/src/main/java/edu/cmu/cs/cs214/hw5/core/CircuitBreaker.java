@@ -0,0 +1,145 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * CircuitBreaker stops sending requests to a backend that keeps failing. After a number of consecutive
+ * failures the circuit opens and requests are rejected without being sent. Once the open duration has
+ * passed, a single trial request is let through: the circuit closes again if it succeeds and reopens if
+ * it fails.
+ */
+class CircuitBreaker {
+
+    /**
+     * State of the circuit.
+     */
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Number of consecutive failures that opens the circuit.
+     */
+    private final int failureThreshold;
+
+    /**
+     * Time in nanoseconds the circuit stays open before a trial request is let through.
+     */
+    private final long openNanos;
+
+    /**
+     * Source of the current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Current state of the circuit.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * Number of consecutive failures.
+     */
+    private int failures;
+
+    /**
+     * Time in nanoseconds at which the circuit was opened.
+     */
+    private long openedAt;
+
+    /**
+     * Whether the trial request of the half open circuit has been let through.
+     */
+    private boolean trialSent;
+
+    /**
+     * Initialize a closed circuit breaker.
+     *
+     * @param failureThreshold number of consecutive failures that opens the circuit.
+     * @param openDuration time the circuit stays open before a trial request is let through.
+     */
+    CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    /**
+     * Initialize a closed circuit breaker with the given clock.
+     *
+     * @param failureThreshold number of consecutive failures that opens the circuit.
+     * @param openDuration time the circuit stays open before a trial request is let through.
+     * @param clock source of the current time in nanoseconds.
+     */
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("Invalid Failure Threshold");
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Return a circuit breaker that never opens, e.g. for a simulated server whose throttling is measured.
+     *
+     * @return a circuit breaker that never opens.
+     */
+    static CircuitBreaker disabled() {
+        return new CircuitBreaker(Integer.MAX_VALUE, Duration.ZERO) {
+            @Override
+            synchronized void recordFailure() {
+            }
+        };
+    }
+
+    /**
+     * Check if a request can be sent, which lets the trial request through if the open duration has passed.
+     *
+     * @return true if the request can be sent and false if it should be rejected.
+     */
+    synchronized boolean allowRequest() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialSent = false;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialSent)
+                    return false;
+                trialSent = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Record a successful request, which closes the circuit.
+     */
+    synchronized void recordSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Record a failed request, which opens the circuit if the trial request failed or too many requests
+     * failed in a row.
+     */
+    synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    /**
+     * Return the current state of the circuit.
+     *
+     * @return the current state of the circuit.
+     */
+    synchronized State getState() {
+        return state;
+    }
+}
@@ -37,4 +37,17 @@ public interface DataPlugin {
      * @return DataSet object containing the data from source.
      */
     DataSet loadData(Map<String, List<String>> params);
+
+    /**
+     * Open a RowSource to read the data from source batch by batch, so that the framework can filter,
+     * project or aggregate the rows while they are being read and only materialize the result. Plugins
+     * reading large sources should override this method to parse rows lazily. By default, the whole data
+     * is loaded by {@link #loadData} and read in one batch.
+     *
+     * @param params a parameter mapping from configuration name to concrete parameters user specifies.
+     * @return RowSource reading the data from source.
+     */
+    default RowSource openRowSource(Map<String, List<String>> params) {
+        return RowSource.of(loadData(params));
+    }
 }
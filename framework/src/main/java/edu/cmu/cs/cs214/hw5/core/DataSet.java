@@ -1,11 +1,16 @@
 package edu.cmu.cs.cs214.hw5.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -45,6 +50,36 @@ public class DataSet {
      */
     private final int rowCount;
 
+    /**
+     * Cache of estimated numbers of distinct values by column index.
+     */
+    private final Map<Integer, Long> distinctEstimates = new ConcurrentHashMap<>();
+
+    /**
+     * Cache of sorted distinct values (as strings) by column index.
+     */
+    private final Map<Integer, String[]> distinctValues = new ConcurrentHashMap<>();
+
+    /**
+     * Cache of the values of numeric columns as primitive arrays by column index.
+     */
+    private final Map<Integer, double[]> doubleColumns = new ConcurrentHashMap<>();
+
+    /**
+     * Cache of the spatial indexes of POLYGONS columns by column index.
+     */
+    private final Map<Integer, SpatialIndex> spatialIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Cache of the spatial indexes of points by longitude and latitude column indexes.
+     */
+    private final Map<List<Integer>, SpatialIndex> pointIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Cache of the projected POLYGONS columns by column index and projection.
+     */
+    private final Map<List<Object>, ProjectedColumn> projectedColumns = new ConcurrentHashMap<>();
+
     /**
      * Error message shown when label is empty.
      */
@@ -105,6 +140,79 @@ public class DataSet {
         resolveDuplicateLabels();
     }
 
+    /**
+     * Create a DataSet by appending a column to an existing one. The cells of the existing columns are
+     * shared with the parent without being checked again, and the values cached on the parent for those
+     * columns are carried over.
+     *
+     * @param parent data set to append the column to.
+     * @param label label of the new column.
+     * @param type data type of the new column.
+     * @param column values of the new column, one per row of the parent.
+     */
+    DataSet(DataSet parent, String label, DataType type, List<?> column) {
+        if (label == null || label.isEmpty())
+            throw new IllegalArgumentException(EMPTY_LABEL_MSG);
+        if (type == null)
+            throw new IllegalArgumentException(EMPTY_DATA_TYPE_MSG);
+        if (column.size() != parent.rowCount)
+            throw new IllegalArgumentException(INVALID_DATASET_SIZE_MSG);
+        this.labels = new ArrayList<>(parent.labels);
+        this.labels.add(label);
+        this.dataTypes = new ArrayList<>(parent.dataTypes);
+        this.dataTypes.add(type);
+        colCount = parent.colCount + 1;
+
+        data = new ArrayList<>(parent.rowCount);
+        for (int i = 0; i < parent.rowCount; i++) {
+            Object value = column.get(i);
+            if (!type.checkType(value))
+                throw new IllegalArgumentException(String.format(
+                        INVALID_TYPE_MSG, i, parent.colCount, type, value));
+            List<Object> row = new ArrayList<>(colCount);
+            row.addAll(parent.data.get(i));
+            row.add(value);
+            data.add(row);
+        }
+        rowCount = parent.rowCount;
+        distinctEstimates.putAll(parent.distinctEstimates);
+        distinctValues.putAll(parent.distinctValues);
+        doubleColumns.putAll(parent.doubleColumns);
+        spatialIndexes.putAll(parent.spatialIndexes);
+        pointIndexes.putAll(parent.pointIndexes);
+        projectedColumns.putAll(parent.projectedColumns);
+        resolveDuplicateLabels();
+    }
+
+    /**
+     * Create a DataSet with the same rows as an existing one, whose MultiPolygons are replaced by the ones
+     * returned by the given function. The cells are not checked again, and the values cached on the source
+     * for the columns other than POLYGONS are carried over.
+     *
+     * @param source data set to copy.
+     * @param interner function returning the MultiPolygon to keep in place of a MultiPolygon.
+     */
+    private DataSet(DataSet source, UnaryOperator<MultiPolygon> interner) {
+        this.labels = new ArrayList<>(source.labels);
+        this.dataTypes = new ArrayList<>(source.dataTypes);
+        colCount = source.colCount;
+        rowCount = source.rowCount;
+
+        data = new ArrayList<>(rowCount);
+        for (List<Object> sourceRow : source.data) {
+            List<Object> row = new ArrayList<>(sourceRow);
+            for (int j = 0; j < colCount; j++) {
+                if (dataTypes.get(j) == DataType.POLYGONS)
+                    row.set(j, interner.apply((MultiPolygon) row.get(j)));
+            }
+            data.add(row);
+        }
+        distinctEstimates.putAll(source.distinctEstimates);
+        distinctValues.putAll(source.distinctValues);
+        doubleColumns.putAll(source.doubleColumns);
+        pointIndexes.putAll(source.pointIndexes);
+    }
+
     /**
      * Check if there are empty labels.
      * 
@@ -267,6 +375,251 @@ public class DataSet {
         return list;
     }
 
+    /**
+     * Return an estimate of the number of distinct values in the column of the given label. The estimate
+     * is computed with HyperLogLog in a single pass over the column and cached on this data set.
+     *
+     * @param label label of column.
+     * @return estimated number of distinct values in the column.
+     */
+    public long estimateDistinctCount(String label) {
+        int col = indexOfLabel(label);
+        return distinctEstimates.computeIfAbsent(col, c -> {
+            HyperLogLog hll = new HyperLogLog();
+            for (List<Object> row : data) {
+                hll.add(row.get(c));
+            }
+            return hll.estimate();
+        });
+    }
+
+    /**
+     * Return a page of the sorted distinct values in the column of the given label that start with the
+     * given prefix. Values are sorted in the natural order of the column type and converted to strings.
+     * The sorted distinct values are computed once per column and cached on this data set.
+     *
+     * @param label label of column.
+     * @param prefix prefix that the values start with (case-sensitive), or empty for all values.
+     * @param offset number of matching values to skip.
+     * @param limit maximum number of values to return.
+     * @return a page of the matching distinct values.
+     */
+    public List<String> getDistinctValues(String label, String prefix, int offset, int limit) {
+        if (offset < 0 || limit < 0)
+            throw new IllegalArgumentException("Invalid Page");
+        int col = indexOfLabel(label);
+        String[] values = sortedDistinctValues(col);
+        if (prefix == null || prefix.isEmpty()) {
+            int from = Math.min(offset, values.length);
+            return Arrays.asList(values).subList(from, (int) Math.min(values.length, (long) from + limit));
+        }
+        if (dataTypes.get(col) == DataType.STRING) {
+            int[] range = prefixRange(values, prefix);
+            int from = (int) Math.min((long) range[0] + offset, range[1]);
+            return Arrays.asList(values).subList(from, (int) Math.min(range[1], (long) from + limit));
+        }
+        return Arrays.stream(values).filter(v -> v.startsWith(prefix)).skip(offset).limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Return the number of distinct values in the column of the given label that start with the given prefix.
+     *
+     * @param label label of column.
+     * @param prefix prefix that the values start with (case-sensitive), or empty for all values.
+     * @return number of the matching distinct values.
+     */
+    public int countDistinctValues(String label, String prefix) {
+        int col = indexOfLabel(label);
+        String[] values = sortedDistinctValues(col);
+        if (prefix == null || prefix.isEmpty())
+            return values.length;
+        if (dataTypes.get(col) == DataType.STRING) {
+            int[] range = prefixRange(values, prefix);
+            return range[1] - range[0];
+        }
+        return (int) Arrays.stream(values).filter(v -> v.startsWith(prefix)).count();
+    }
+
+    /**
+     * Return the values of the given INTEGER or DOUBLE column as a primitive array. The array is computed
+     * once per column and cached on this data set, so callers must not modify it.
+     *
+     * @param col column number.
+     * @return values of the column as doubles.
+     */
+    double[] doubleColumn(int col) {
+        if (dataTypes.get(col) != DataType.INTEGER && dataTypes.get(col) != DataType.DOUBLE)
+            throw new IllegalArgumentException("Column Is Not Numeric: " + labels.get(col));
+        return doubleColumns.computeIfAbsent(col, c -> {
+            double[] values = new double[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = ((Number) data.get(i).get(c)).doubleValue();
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Return the rows whose MultiPolygon in the given POLYGONS column has bounds intersecting the given
+     * rectangle, e.g. the rows to draw in a viewport. The rows are found with a spatial index built on first
+     * use and cached on this data set.
+     *
+     * @param label label of a POLYGONS column.
+     * @param minX left bound of the rectangle.
+     * @param minY lower bound of the rectangle.
+     * @param maxX right bound of the rectangle.
+     * @param maxY upper bound of the rectangle.
+     * @return the rows in ascending order.
+     */
+    public int[] rowsIntersecting(String label, double minX, double minY, double maxX, double maxY) {
+        return spatialIndex(indexOfLabel(label)).search(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Return the rows whose MultiPolygon in the given POLYGONS column contains the given point, e.g. the
+     * rows under the mouse. The rows are found with a spatial index built on first use and cached on this
+     * data set.
+     *
+     * @param label label of a POLYGONS column.
+     * @param x x coordinate (longitude) of the point.
+     * @param y y coordinate (latitude) of the point.
+     * @return the rows in ascending order.
+     */
+    public int[] rowsContaining(String label, double x, double y) {
+        return spatialIndex(indexOfLabel(label)).containing(x, y);
+    }
+
+    /**
+     * Return the given POLYGONS column projected with the given projection, e.g. to draw it. The column is
+     * projected once per projection and cached on this data set, so drawing it again only needs an affine
+     * transform from the projected coordinates to pixels.
+     *
+     * @param label label of a POLYGONS column.
+     * @param projection projection of the column.
+     * @return the projected column.
+     */
+    public ProjectedColumn project(String label, Projection projection) {
+        int col = indexOfLabel(label);
+        if (dataTypes.get(col) != DataType.POLYGONS)
+            throw new IllegalArgumentException("Column Is Not " + DataType.POLYGONS + ": " + label);
+        return projectedColumns.computeIfAbsent(List.of(col, projection), k -> new ProjectedColumn(data.stream()
+                .map(row -> (MultiPolygon) row.get(col)).collect(Collectors.toList()), projection));
+    }
+
+    /**
+     * Return the spatial index of the given POLYGONS column. The index is built once per column and cached
+     * on this data set.
+     *
+     * @param col column number.
+     * @return spatial index of the column.
+     */
+    SpatialIndex spatialIndex(int col) {
+        if (dataTypes.get(col) != DataType.POLYGONS)
+            throw new IllegalArgumentException("Column Is Not " + DataType.POLYGONS + ": " + labels.get(col));
+        return spatialIndexes.computeIfAbsent(col, c -> new SpatialIndex(data.stream()
+                .map(row -> (MultiPolygon) row.get(c)).collect(Collectors.toList())));
+    }
+
+    /**
+     * Return the spatial index of the points of the given numeric longitude and latitude columns. The index
+     * is built once per pair of columns and cached on this data set.
+     *
+     * @param xCol column number of the longitudes.
+     * @param yCol column number of the latitudes.
+     * @return spatial index of the points.
+     */
+    SpatialIndex pointIndex(int xCol, int yCol) {
+        double[] xs = doubleColumn(xCol);
+        double[] ys = doubleColumn(yCol);
+        return pointIndexes.computeIfAbsent(List.of(xCol, yCol), k -> new SpatialIndex(xs, ys));
+    }
+
+    /**
+     * Return the index of the column of the given label.
+     *
+     * @param label label of column.
+     * @return index of the column.
+     */
+    private int indexOfLabel(String label) {
+        int col = labels.indexOf(label);
+        if (col < 0)
+            throw new IllegalArgumentException("Label Not Found");
+        return col;
+    }
+
+    /**
+     * Return the cached sorted distinct values of the given column, computing them on first use.
+     *
+     * @param col column number.
+     * @return sorted distinct values of the column as strings.
+     */
+    private String[] sortedDistinctValues(int col) {
+        if (dataTypes.get(col) == DataType.POLYGONS)
+            throw new IllegalArgumentException("Distinct Values Are Not Supported For " + DataType.POLYGONS);
+        return distinctValues.computeIfAbsent(col, c -> data.stream().map(row -> row.get(c)).distinct()
+                .sorted().map(Object::toString).toArray(String[]::new));
+    }
+
+    /**
+     * Return the range [from, to) of the sorted string values starting with the given prefix.
+     *
+     * @param values sorted string values.
+     * @param prefix prefix that the values start with.
+     * @return range of the values starting with the prefix.
+     */
+    private static int[] prefixRange(String[] values, String prefix) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid].compareTo(prefix) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        int from = lo;
+        hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid].startsWith(prefix))
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return new int[] {from, lo};
+    }
+
+    /**
+     * Return a data set with the MultiPolygons of the POLYGONS columns replaced by the ones returned by the
+     * given function, which must have the same content, e.g. their canonical instances in a
+     * {@link GeometryStore}. The new data set only shares more MultiPolygons with other data sets, and this
+     * data set is left unchanged.
+     *
+     * @param interner function returning the MultiPolygon to keep in place of a MultiPolygon.
+     * @return a new data set holding the interned MultiPolygons, or this data set if it has no POLYGONS column.
+     */
+    DataSet withInternedPolygons(UnaryOperator<MultiPolygon> interner) {
+        if (!dataTypes.contains(DataType.POLYGONS))
+            return this;
+        return new DataSet(this, interner);
+    }
+
+    /**
+     * Return the distinct MultiPolygon instances of the POLYGONS columns.
+     *
+     * @return a set of the MultiPolygons of this data set, compared by identity.
+     */
+    Set<MultiPolygon> distinctPolygons() {
+        Set<MultiPolygon> polygons = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int j = 0; j < colCount; j++) {
+            if (dataTypes.get(j) != DataType.POLYGONS)
+                continue;
+            for (List<Object> row : data)
+                polygons.add((MultiPolygon) row.get(j));
+        }
+        return polygons;
+    }
+
     /**
      * Return a copy of this data set.
      * 
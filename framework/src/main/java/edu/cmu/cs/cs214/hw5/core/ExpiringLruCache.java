@@ -0,0 +1,174 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * ExpiringLruCache is a bounded, thread-safe in-memory cache. When the cache is full the least recently used
+ * entry is evicted, and every entry expires after the time to live given when it is put, so that different
+ * kinds of entries (e.g. found and unfound addresses) can be kept for different durations. The cache counts
+ * its hits and misses.
+ *
+ * @param <K> type of key.
+ * @param <V> type of value.
+ */
+class ExpiringLruCache<K, V> {
+
+    /**
+     * Entries in access order, each holding the value and its expiration time in nanoseconds.
+     */
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * Source of the current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Number of lookups that found an unexpired entry.
+     */
+    private long hits;
+
+    /**
+     * Number of lookups that found no unexpired entry.
+     */
+    private long misses;
+
+    /**
+     * Initialize an empty cache with the given capacity.
+     *
+     * @param capacity maximum number of entries.
+     */
+    ExpiringLruCache(int capacity) {
+        this(capacity, System::nanoTime);
+    }
+
+    /**
+     * Initialize an empty cache with the given capacity and clock.
+     *
+     * @param capacity maximum number of entries.
+     * @param clock source of the current time in nanoseconds.
+     */
+    ExpiringLruCache(int capacity, LongSupplier clock) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid Capacity");
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the value of the given key if it is cached and not expired.
+     *
+     * @param key key to look up.
+     * @return the cached value, or null if there is none.
+     */
+    synchronized V get(K key) {
+        V value = peek(key);
+        if (value == null)
+            misses++;
+        else
+            hits++;
+        return value;
+    }
+
+    /**
+     * Return the value of a key without counting a hit or a miss.
+     *
+     * @param key key to look up.
+     * @return the value, or null if the key is absent or expired.
+     */
+    synchronized V peek(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt - clock.getAsLong() <= 0) {
+            entries.remove(key);
+            entry = null;
+        }
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Cache the value of the given key for the given time.
+     *
+     * @param key key of the value.
+     * @param value value to be cached.
+     * @param ttlNanos time to live of the entry in nanoseconds.
+     */
+    synchronized void put(K key, V value, long ttlNanos) {
+        if (ttlNanos <= 0)
+            return;
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlNanos));
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Return the number of entries, including expired ones not yet removed.
+     *
+     * @return number of entries.
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Return the number of lookups that found an unexpired entry.
+     *
+     * @return number of hits.
+     */
+    synchronized long hitCount() {
+        return hits;
+    }
+
+    /**
+     * Return the number of lookups that found no unexpired entry.
+     *
+     * @return number of misses.
+     */
+    synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * Return the fraction of lookups that found an unexpired entry.
+     *
+     * @return hit rate between 0 and 1, or 0 if there has been no lookup.
+     */
+    synchronized double hitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Cached value with its expiration time.
+     *
+     * @param <V> type of value.
+     */
+    private static final class Entry<V> {
+        /**
+         * Cached value.
+         */
+        private final V value;
+
+        /**
+         * Expiration time in nanoseconds.
+         */
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Expression is an arithmetic and conditional expression over the INTEGER and DOUBLE columns of a dataSet,
+ * e.g. {@code NY.GDP / SP.POP} or {@code if(SP.POP > 0, NY.GDP / SP.POP, 0)}. An expression is compiled once
+ * into a tree of vectorized operators, each of which is evaluated in a tight loop over a chunk of primitive
+ * values, and chunks are evaluated in parallel for large dataSets.
+ *
+ * Columns are referenced by label, either directly if the label consists of letters, digits, '.' and '_'
+ * and does not start with a digit, or enclosed in brackets such as {@code [GDP (US$)]}. Supported operators
+ * are {@code + - * / %}, comparisons {@code < <= > >= == !=}, {@code && || !} and {@code cond ? a : b},
+ * and supported functions are {@code if, abs, sqrt, log, exp, pow, min, max}. Comparisons and logical
+ * operators yield 1 for true and 0 for false.
+ */
+class Expression {
+
+    /**
+     * Number of rows evaluated at a time by an operator.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Number of rows above which chunks are evaluated in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 100000;
+
+    /**
+     * Root operator of the compiled expression.
+     */
+    private final Node root;
+
+    /**
+     * Column indexes referenced by the expression, in the order of their slot numbers.
+     */
+    private final List<Integer> columns;
+
+    /**
+     * Initialize a compiled expression.
+     *
+     * @param root root operator of the compiled expression.
+     * @param columns column indexes referenced by the expression.
+     */
+    private Expression(Node root, List<Integer> columns) {
+        this.root = root;
+        this.columns = columns;
+    }
+
+    /**
+     * Compile an expression over the numeric columns of a dataSet.
+     *
+     * @param source string representation of the expression.
+     * @param labels list of label names of the dataSet.
+     * @param dataTypes list of data types of the dataSet.
+     * @return the compiled expression.
+     */
+    static Expression compile(String source, List<String> labels, List<DataType> dataTypes) {
+        if (source == null || source.isBlank())
+            throw new IllegalArgumentException("Empty Expression");
+        Parser parser = new Parser(source, labels, dataTypes);
+        Node root = parser.parseTernary();
+        parser.skipSpaces();
+        if (parser.pos < source.length())
+            throw parser.error("Unexpected '" + source.charAt(parser.pos) + "'");
+        return new Expression(root, parser.columns);
+    }
+
+    /**
+     * Evaluate the expression for every row of the dataSet.
+     *
+     * @param dataSet dataSet the expression is compiled for.
+     * @return values of the expression for every row.
+     */
+    double[] evaluate(DataSet dataSet) {
+        double[][] slots = new double[columns.size()][];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = dataSet.doubleColumn(columns.get(i));
+        }
+        int rowCount = dataSet.rowCount();
+        double[] result = new double[rowCount];
+        int chunks = (rowCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream range = IntStream.range(0, chunks);
+        if (rowCount > PARALLEL_THRESHOLD)
+            range = range.parallel();
+        range.forEach(chunk -> {
+            int from = chunk * CHUNK_SIZE;
+            int len = Math.min(CHUNK_SIZE, rowCount - from);
+            double[] out = new double[len];
+            root.eval(slots, from, len, out);
+            System.arraycopy(out, 0, result, from, len);
+        });
+        return result;
+    }
+
+    /**
+     * Vectorized operator of a compiled expression.
+     */
+    private abstract static class Node {
+
+        /**
+         * Evaluate the operator for a chunk of rows.
+         *
+         * @param slots primitive values of the referenced columns.
+         * @param from index of the first row of the chunk.
+         * @param len number of rows in the chunk.
+         * @param out array receiving the values of the chunk, starting at index 0.
+         */
+        abstract void eval(double[][] slots, int from, int len, double[] out);
+    }
+
+    /**
+     * Operator returning a constant.
+     */
+    private static final class Constant extends Node {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        void eval(double[][] slots, int from, int len, double[] out) {
+            for (int i = 0; i < len; i++) {
+                out[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Operator returning the values of a column.
+     */
+    private static final class Column extends Node {
+        private final int slot;
+
+        Column(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        void eval(double[][] slots, int from, int len, double[] out) {
+            System.arraycopy(slots[slot], from, out, 0, len);
+        }
+    }
+
+    /**
+     * Operator applying a unary function to its operand.
+     */
+    private static final class Unary extends Node {
+        private final DoubleUnaryOperator op;
+        private final Node operand;
+
+        Unary(DoubleUnaryOperator op, Node operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+
+        @Override
+        void eval(double[][] slots, int from, int len, double[] out) {
+            operand.eval(slots, from, len, out);
+            for (int i = 0; i < len; i++) {
+                out[i] = op.applyAsDouble(out[i]);
+            }
+        }
+    }
+
+    /**
+     * Operator applying a binary function to its operands.
+     */
+    private static final class Binary extends Node {
+        private final char op;
+        private final DoubleBinaryOperator function;
+        private final Node left;
+        private final Node right;
+
+        Binary(char op, DoubleBinaryOperator function, Node left, Node right) {
+            this.op = op;
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void eval(double[][] slots, int from, int len, double[] out) {
+            double[] rhs = new double[len];
+            left.eval(slots, from, len, out);
+            right.eval(slots, from, len, rhs);
+            // The common arithmetic operators are inlined to keep the loops free of indirect calls.
+            switch (op) {
+                case '+':
+                    for (int i = 0; i < len; i++) out[i] += rhs[i];
+                    break;
+                case '-':
+                    for (int i = 0; i < len; i++) out[i] -= rhs[i];
+                    break;
+                case '*':
+                    for (int i = 0; i < len; i++) out[i] *= rhs[i];
+                    break;
+                case '/':
+                    for (int i = 0; i < len; i++) out[i] /= rhs[i];
+                    break;
+                default:
+                    for (int i = 0; i < len; i++) out[i] = function.applyAsDouble(out[i], rhs[i]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Operator choosing between two operands by a condition.
+     */
+    private static final class Conditional extends Node {
+        private final Node condition;
+        private final Node whenTrue;
+        private final Node whenFalse;
+
+        Conditional(Node condition, Node whenTrue, Node whenFalse) {
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        void eval(double[][] slots, int from, int len, double[] out) {
+            double[] a = new double[len];
+            double[] b = new double[len];
+            condition.eval(slots, from, len, out);
+            whenTrue.eval(slots, from, len, a);
+            whenFalse.eval(slots, from, len, b);
+            for (int i = 0; i < len; i++) {
+                out[i] = out[i] != 0 ? a[i] : b[i];
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser compiling the string representation of an expression.
+     */
+    private static final class Parser {
+        private final String source;
+        private final List<String> labels;
+        private final List<DataType> dataTypes;
+        private final List<Integer> columns = new ArrayList<>();
+        private int pos;
+
+        Parser(String source, List<String> labels, List<DataType> dataTypes) {
+            this.source = source;
+            this.labels = labels;
+            this.dataTypes = dataTypes;
+        }
+
+        Node parseTernary() {
+            Node condition = parseOr();
+            if (accept("?")) {
+                Node whenTrue = parseTernary();
+                expect(":");
+                Node whenFalse = parseTernary();
+                return new Conditional(condition, whenTrue, whenFalse);
+            }
+            return condition;
+        }
+
+        private Node parseOr() {
+            Node node = parseAnd();
+            while (accept("||")) {
+                node = new Binary('|', (a, b) -> a != 0 || b != 0 ? 1 : 0, node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseComparison();
+            while (accept("&&")) {
+                node = new Binary('&', (a, b) -> a != 0 && b != 0 ? 1 : 0, node, parseComparison());
+            }
+            return node;
+        }
+
+        private Node parseComparison() {
+            Node node = parseAdditive();
+            if (accept("<="))
+                return new Binary('c', (a, b) -> a <= b ? 1 : 0, node, parseAdditive());
+            if (accept(">="))
+                return new Binary('c', (a, b) -> a >= b ? 1 : 0, node, parseAdditive());
+            if (accept("=="))
+                return new Binary('c', (a, b) -> a == b ? 1 : 0, node, parseAdditive());
+            if (accept("!="))
+                return new Binary('c', (a, b) -> a != b ? 1 : 0, node, parseAdditive());
+            if (accept("<"))
+                return new Binary('c', (a, b) -> a < b ? 1 : 0, node, parseAdditive());
+            if (accept(">"))
+                return new Binary('c', (a, b) -> a > b ? 1 : 0, node, parseAdditive());
+            return node;
+        }
+
+        private Node parseAdditive() {
+            Node node = parseTerm();
+            while (true) {
+                if (accept("+"))
+                    node = new Binary('+', Double::sum, node, parseTerm());
+                else if (accept("-"))
+                    node = new Binary('-', (a, b) -> a - b, node, parseTerm());
+                else
+                    return node;
+            }
+        }
+
+        private Node parseTerm() {
+            Node node = parseUnary();
+            while (true) {
+                if (accept("*"))
+                    node = new Binary('*', (a, b) -> a * b, node, parseUnary());
+                else if (accept("/"))
+                    node = new Binary('/', (a, b) -> a / b, node, parseUnary());
+                else if (accept("%"))
+                    node = new Binary('%', (a, b) -> a % b, node, parseUnary());
+                else
+                    return node;
+            }
+        }
+
+        private Node parseUnary() {
+            if (accept("-"))
+                return new Unary(a -> -a, parseUnary());
+            if (accept("!"))
+                return new Unary(a -> a == 0 ? 1 : 0, parseUnary());
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            skipSpaces();
+            if (pos >= source.length())
+                throw error("Unexpected End");
+            char c = source.charAt(pos);
+            if (accept("(")) {
+                Node node = parseTernary();
+                expect(")");
+                return node;
+            }
+            if (c == '[') {
+                int end = source.indexOf(']', pos);
+                if (end < 0)
+                    throw error("Missing ']'");
+                String label = source.substring(pos + 1, end);
+                pos = end + 1;
+                return column(label);
+            }
+            if (Character.isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.'))
+                    pos++;
+                if (pos < source.length() && (source.charAt(pos) == 'e' || source.charAt(pos) == 'E')) {
+                    pos++;
+                    if (pos < source.length() && (source.charAt(pos) == '+' || source.charAt(pos) == '-'))
+                        pos++;
+                    while (pos < source.length() && Character.isDigit(source.charAt(pos)))
+                        pos++;
+                }
+                try {
+                    return new Constant(Double.parseDouble(source.substring(start, pos)));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid Number");
+                }
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int start = pos;
+                while (pos < source.length() && (Character.isLetterOrDigit(source.charAt(pos))
+                        || source.charAt(pos) == '.' || source.charAt(pos) == '_'))
+                    pos++;
+                String name = source.substring(start, pos);
+                skipSpaces();
+                if (pos < source.length() && source.charAt(pos) == '(' && !labels.contains(name))
+                    return function(name);
+                return column(name);
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        private Node function(String name) {
+            expect("(");
+            List<Node> args = new ArrayList<>();
+            if (!accept(")")) {
+                do {
+                    args.add(parseTernary());
+                } while (accept(","));
+                expect(")");
+            }
+            switch (name.toLowerCase()) {
+                case "if":
+                    checkArity(name, args, 3);
+                    return new Conditional(args.get(0), args.get(1), args.get(2));
+                case "abs":
+                    checkArity(name, args, 1);
+                    return new Unary(Math::abs, args.get(0));
+                case "sqrt":
+                    checkArity(name, args, 1);
+                    return new Unary(Math::sqrt, args.get(0));
+                case "log":
+                    checkArity(name, args, 1);
+                    return new Unary(Math::log, args.get(0));
+                case "exp":
+                    checkArity(name, args, 1);
+                    return new Unary(Math::exp, args.get(0));
+                case "pow":
+                    checkArity(name, args, 2);
+                    return new Binary('^', Math::pow, args.get(0), args.get(1));
+                case "min":
+                    checkArity(name, args, 2);
+                    return new Binary('m', Math::min, args.get(0), args.get(1));
+                case "max":
+                    checkArity(name, args, 2);
+                    return new Binary('M', Math::max, args.get(0), args.get(1));
+                default:
+                    throw error("Unknown Function: " + name);
+            }
+        }
+
+        private void checkArity(String name, List<Node> args, int arity) {
+            if (args.size() != arity)
+                throw error(String.format("Function %s Expects %d Argument(s)", name, arity));
+        }
+
+        private Node column(String label) {
+            int col = labels.indexOf(label);
+            if (col < 0)
+                throw error("Label Not Found: " + label);
+            if (dataTypes.get(col) != DataType.INTEGER && dataTypes.get(col) != DataType.DOUBLE)
+                throw error("Column Is Not Numeric: " + label);
+            int slot = columns.indexOf(col);
+            if (slot < 0) {
+                slot = columns.size();
+                columns.add(col);
+            }
+            return new Column(slot);
+        }
+
+        private boolean accept(String token) {
+            skipSpaces();
+            if (source.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token))
+                throw error("Expected '" + token + "'");
+        }
+
+        void skipSpaces() {
+            while (pos < source.length() && Character.isWhitespace(source.charAt(pos)))
+                pos++;
+        }
+
+        IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException(String.format("Invalid Expression At %d: %s", pos, msg));
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.apache.commons.lang3.tuple.Triple;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Gazetteer is an offline geoCoder backed by a local file of place names and boundaries, so that addresses
+ * can be geoCoded without network at in-memory speed. A gazetteer is loaded from
+ * <ul>
+ *     <li>a GeoJSON FeatureCollection whose features have a "name" property and a Point, Polygon or
+ *     MultiPolygon geometry (optional "lon" and "lat" properties give the coordinates of the place,
+ *     otherwise the center of its bounds is used), or</li>
+ *     <li>a CSV file with a header containing "name", "longitude" (or "lon") and "latitude" (or "lat")
+ *     columns, giving places without boundary.</li>
+ * </ul>
+ * Places may also have a "state" and a "country" property (or column) naming the state and the country
+ * they are in, so that the parts of an address can only match a place inside the state and the country
+ * the address gives.
+ *
+ * The names are kept in a sorted array searched by binary search, and the coordinates of all boundaries
+ * are packed into a single array with offsets, so that the index stays compact. The boundary of a place
+ * is only turned into a MultiPolygon when the place is found, and the MultiPolygon is shared by all rows
+ * of the same place.
+ */
+class Gazetteer {
+
+    /**
+     * Normalizer of the names of the places and of the addresses looked up.
+     */
+    private final AddressNormalizer normalizer;
+
+    /**
+     * Normalized names of the places in sorted order.
+     */
+    private final String[] names;
+
+    /**
+     * Place index of each name in the sorted order.
+     */
+    private final int[] nameToPlace;
+
+    /**
+     * Normalized state of each place, or null if unknown.
+     */
+    private final String[] states;
+
+    /**
+     * Normalized country of each place, or null if unknown.
+     */
+    private final String[] countries;
+
+    /**
+     * Longitude and latitude of each place, interleaved.
+     */
+    private final double[] locations;
+
+    /**
+     * Index of the first part of each place, followed by the total number of parts.
+     */
+    private final int[] placeParts;
+
+    /**
+     * Index of the first point of each part, followed by the total number of points.
+     */
+    private final int[] partPoints;
+
+    /**
+     * Coordinates of all points, interleaved as x and y.
+     */
+    private final double[] coordinates;
+
+    /**
+     * MultiPolygons of the places built so far.
+     */
+    private final Map<Integer, MultiPolygon> polygons = new ConcurrentHashMap<>();
+
+    /**
+     * Initialize a gazetteer from the places read by a builder.
+     *
+     * @param builder builder holding the places.
+     */
+    private Gazetteer(Builder builder) {
+        normalizer = builder.normalizer;
+        int count = builder.names.size();
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> builder.names.get(a).compareTo(builder.names.get(b)));
+        names = new String[count];
+        nameToPlace = new int[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = builder.names.get(order[i]);
+            nameToPlace[i] = order[i];
+        }
+        states = builder.states.toArray(new String[0]);
+        countries = builder.countries.toArray(new String[0]);
+        locations = Arrays.copyOf(builder.locations, count * 2);
+        placeParts = Arrays.copyOf(builder.placeParts, count + 1);
+        placeParts[count] = builder.geometry.partCount();
+        partPoints = builder.geometry.partOffsets();
+        coordinates = builder.geometry.coordinates();
+    }
+
+    /**
+     * Load a gazetteer from a GeoJSON (".json" or ".geojson") or CSV file.
+     *
+     * @param path path of the file.
+     * @param normalizer normalizer of the names of the places and of the addresses looked up.
+     * @return the loaded gazetteer.
+     * @throws IOException if the file cannot be read.
+     */
+    static Gazetteer load(Path path, AddressNormalizer normalizer) throws IOException {
+        String fileName = path.getFileName().toString().toLowerCase();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            if (fileName.endsWith(".csv"))
+                return loadCsv(reader, normalizer);
+            if (fileName.endsWith(".json") || fileName.endsWith(".geojson"))
+                return loadGeoJson(reader, normalizer);
+        }
+        throw new IllegalArgumentException("Gazetteer Must Be A GeoJSON Or CSV File");
+    }
+
+    /**
+     * Load a gazetteer from a GeoJSON FeatureCollection. The coordinates are streamed into the packed
+     * arrays without building a tree of the geometry.
+     *
+     * @param in reader of the GeoJSON.
+     * @param normalizer normalizer of the names of the places and of the addresses looked up.
+     * @return the loaded gazetteer.
+     * @throws IOException if the GeoJSON cannot be read.
+     */
+    static Gazetteer loadGeoJson(Reader in, AddressNormalizer normalizer) throws IOException {
+        Builder builder = new Builder(normalizer);
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("features")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                readFeature(reader, builder);
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return new Gazetteer(builder);
+    }
+
+    /**
+     * Read a GeoJSON feature into the builder. Features without name are skipped.
+     *
+     * @param reader reader positioned at the feature.
+     * @param builder builder receiving the place.
+     * @throws IOException if the feature cannot be read.
+     */
+    private static void readFeature(JsonReader reader, Builder builder) throws IOException {
+        JsonObject properties = null;
+        PolygonBuffer geometry = builder.geometry;
+        int firstPart = geometry.partCount();
+        int firstPoint = geometry.pointCount();
+        double[] point = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("properties") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                properties = JsonParser.parseReader(reader).getAsJsonObject();
+            } else if (field.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                point = readGeometry(reader, geometry);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        JsonElement name = properties == null ? null : properties.get("name");
+        double lon, lat;
+        if (name == null || !name.isJsonPrimitive() || builder.normalizer.normalize(name.getAsString()).isEmpty()) {
+            geometry.truncate(firstPart, firstPoint);
+            return;
+        } else if (properties.has("lon") && properties.has("lat")) {
+            lon = properties.get("lon").getAsDouble();
+            lat = properties.get("lat").getAsDouble();
+        } else if (point != null) {
+            lon = point[0];
+            lat = point[1];
+        } else if (geometry.pointCount() > firstPoint) {
+            double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = firstPoint; i < geometry.pointCount(); i++) {
+                minX = Math.min(minX, geometry.x(i));
+                maxX = Math.max(maxX, geometry.x(i));
+                minY = Math.min(minY, geometry.y(i));
+                maxY = Math.max(maxY, geometry.y(i));
+            }
+            lon = (minX + maxX) / 2;
+            lat = (minY + maxY) / 2;
+        } else {
+            geometry.truncate(firstPart, firstPoint);
+            return;
+        }
+        builder.addPlace(name.getAsString(), stringProperty(properties, "state"),
+                stringProperty(properties, "country"), lon, lat, firstPart);
+    }
+
+    /**
+     * Return a string property of a GeoJSON feature.
+     *
+     * @param properties properties of the feature.
+     * @param name name of the property.
+     * @return the value of the property, or null if it is missing or not a string.
+     */
+    private static String stringProperty(JsonObject properties, String name) {
+        JsonElement value = properties.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    /**
+     * Read a GeoJSON geometry into the buffer. Only the parts of Polygon and MultiPolygon geometries are
+     * kept, and every polygon becomes one part made of all of its rings, the same way as the polygons
+     * returned by OpenStreetMap.
+     *
+     * @param reader reader positioned at the geometry.
+     * @param geometry buffer receiving the parts.
+     * @return the coordinates of a Point geometry, or null for other geometries.
+     * @throws IOException if the geometry cannot be read.
+     */
+    private static double[] readGeometry(JsonReader reader, PolygonBuffer geometry) throws IOException {
+        int firstPart = geometry.partCount();
+        int firstPoint = geometry.pointCount();
+        String type = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("type"))
+                type = reader.nextString();
+            else if (field.equals("coordinates"))
+                geometry.readGeoJsonCoordinates(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        if ("Polygon".equals(type) || "MultiPolygon".equals(type))
+            return null;
+        double[] point = null;
+        if ("Point".equals(type) && geometry.pointCount() > firstPoint)
+            point = new double[] {geometry.x(firstPoint), geometry.y(firstPoint)};
+        geometry.truncate(firstPart, firstPoint);
+        return point;
+    }
+
+    /**
+     * Load a gazetteer from a CSV file of place names and coordinates, and optionally of the state and the
+     * country of the places.
+     *
+     * @param reader reader of the CSV file.
+     * @param normalizer normalizer of the names of the places and of the addresses looked up.
+     * @return the loaded gazetteer.
+     * @throws IOException if the file cannot be read.
+     */
+    static Gazetteer loadCsv(BufferedReader reader, AddressNormalizer normalizer) throws IOException {
+        String header = reader.readLine();
+        if (header == null)
+            throw new IllegalArgumentException("Empty Gazetteer");
+        List<String> columns = splitCsvLine(header).stream().map(s -> s.strip().toLowerCase())
+                .collect(Collectors.toList());
+        int nameIdx = columns.indexOf("name");
+        int lonIdx = columns.indexOf("longitude") >= 0 ? columns.indexOf("longitude") : columns.indexOf("lon");
+        int latIdx = columns.indexOf("latitude") >= 0 ? columns.indexOf("latitude") : columns.indexOf("lat");
+        if (nameIdx < 0 || lonIdx < 0 || latIdx < 0)
+            throw new IllegalArgumentException("Gazetteer CSV Must Have Name, Longitude And Latitude Columns");
+        int stateIdx = columns.indexOf("state");
+        int countryIdx = columns.indexOf("country");
+
+        Builder builder = new Builder(normalizer);
+        int lineNumber = 1;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            if (line.isBlank())
+                continue;
+            List<String> cells = splitCsvLine(line);
+            if (cells.size() <= Math.max(nameIdx, Math.max(lonIdx, latIdx)))
+                throw new IllegalArgumentException("Invalid Gazetteer Line " + lineNumber);
+            if (normalizer.normalize(cells.get(nameIdx)).isEmpty())
+                continue;
+            try {
+                builder.addPlace(cells.get(nameIdx), cell(cells, stateIdx), cell(cells, countryIdx),
+                        Double.parseDouble(cells.get(lonIdx).strip()), Double.parseDouble(cells.get(latIdx).strip()),
+                        builder.geometry.partCount());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid Coordinates At Gazetteer Line " + lineNumber);
+            }
+        }
+        return new Gazetteer(builder);
+    }
+
+    /**
+     * Return a cell of an optional column of a CSV line.
+     *
+     * @param cells cells of the line.
+     * @param idx index of the column, or -1 if the file has no such column.
+     * @return the cell, or null if the column or the cell is missing.
+     */
+    private static String cell(List<String> cells, int idx) {
+        return idx >= 0 && idx < cells.size() ? cells.get(idx) : null;
+    }
+
+    /**
+     * Split a CSV line into cells, allowing cells in double quotes to contain commas and escaped quotes.
+     *
+     * @param line CSV line.
+     * @return cells of the line.
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    /**
+     * Return the number of places in the gazetteer.
+     *
+     * @return number of places.
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Look up a structured address. The whole address is looked up first, then its most specific part
+     * (street, county, city, state and country in that order) among the places inside the state and the
+     * country of the address. A place whose state or country is unknown only matches an address without them,
+     * so that e.g. a city is never taken for a homonym in another state, or for the state itself.
+     *
+     * @param addr GeoAddress representation of address.
+     * @return a Triple of longitude, latitude and polygons, or null if the address is not found.
+     */
+    Triple<Double, Double, MultiPolygon> lookup(GeoAddress addr) {
+        int place = find(addr.toString(), p -> true);
+        String[] parts = {addr.getStreet(), addr.getCounty(), addr.getCity(), addr.getState(), addr.getCountry()};
+        int level = 0;
+        while (level < parts.length && normalizer.normalize(parts[level]).isEmpty())
+            level++;
+        if (place < 0 && level < parts.length) {
+            String state = level < 3 ? normalizer.normalizeState(addr.getState()) : "";
+            String country = level < 4 ? normalizer.normalize(addr.getCountry()) : "";
+            place = find(parts[level], p -> isIn(states[p], state) && isIn(countries[p], country));
+        }
+        return place < 0 ? null : result(place);
+    }
+
+    /**
+     * Look up a free-form address. The whole address is looked up first, then its first comma separated
+     * part (e.g. "Allegheny County" of "Allegheny County, Pennsylvania") among the places whose state or
+     * country is each of the other parts.
+     *
+     * @param s a string representation of address.
+     * @return a Triple of longitude, latitude and polygons, or null if the address is not found.
+     */
+    Triple<Double, Double, MultiPolygon> lookup(String s) {
+        int place = find(s, p -> true);
+        if (place < 0 && s.indexOf(',') > 0) {
+            List<String> parents = Arrays.asList(s.substring(s.indexOf(',') + 1).split(","));
+            place = find(s.substring(0, s.indexOf(',')), p -> parents.stream().allMatch(parent ->
+                    isIn(states[p], normalizer.normalizeState(parent))
+                            || isIn(countries[p], normalizer.normalize(parent))));
+        }
+        return place < 0 ? null : result(place);
+    }
+
+    /**
+     * Batch lookup given an array of GeoAddress.
+     *
+     * @param addressArray an array of GeoAddress used for batch lookup.
+     * @param unfounded a set to stored unfound address
+     * @param progress progress of the batch, which also cancels it.
+     * @return a list of Triple of longitude, latitude and polygons.
+     */
+    List<Triple<Double, Double, MultiPolygon>> batchQuery(GeoAddress[] addressArray, Set<String> unfounded,
+                                                          GeoCodeProgress progress) {
+        return batchQuery(addressArray, unfounded, progress, normalizer::key, this::lookup);
+    }
+
+    /**
+     * Batch lookup given a string representing the address.
+     *
+     * @param addressArray a string representing the address used for batch lookup.
+     * @param unfounded a set to stored unfound address
+     * @param progress progress of the batch, which also cancels it.
+     * @return a list of Triple of longitude, latitude and polygons.
+     */
+    List<Triple<Double, Double, MultiPolygon>> batchQuery(String[] addressArray, Set<String> unfounded,
+                                                          GeoCodeProgress progress) {
+        return batchQuery(addressArray, unfounded, progress, normalizer::key, this::lookup);
+    }
+
+    /**
+     * Batch lookup given an array of addresses. Addresses of the same key are looked up once, in parallel.
+     * Once the batch is cancelled, the remaining addresses are skipped and their rows get no result.
+     *
+     * @param addressArray an array of addresses used for batch lookup.
+     * @param unfounded a set to stored unfound address
+     * @param progress progress of the batch, which also cancels it.
+     * @param key function returning the key of an address.
+     * @param lookup function looking up an address.
+     * @param <T> type of address.
+     * @return a list of Triple of longitude, latitude and polygons.
+     */
+    private <T> List<Triple<Double, Double, MultiPolygon>> batchQuery(T[] addressArray, Set<String> unfounded,
+            GeoCodeProgress progress, Function<T, String> key, Function<T, Triple<Double, Double, MultiPolygon>> lookup) {
+        Map<String, T> addresses = normalizer.distinctByKey(addressArray, key);
+        Map<String, Triple<Double, Double, MultiPolygon>> res = new ConcurrentHashMap<>();
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        progress.start(addresses.size(), () -> 0);
+        addresses.entrySet().parallelStream().forEach(e -> {
+            if (progress.isCancelled())
+                return;
+            Triple<Double, Double, MultiPolygon> result = lookup.apply(e.getValue());
+            if (result != null)
+                res.put(e.getKey(), result);
+            done.add(e.getKey());
+            progress.addCompleted();
+        });
+        return Arrays.stream(addressArray).map(a -> {
+            String k = key.apply(a);
+            Triple<Double, Double, MultiPolygon> result = res.get(k);
+            if (result == null && done.contains(k))
+                unfounded.add(a.toString());
+            return result;
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Return the index of the first place of the given name accepted by the given test.
+     *
+     * @param name name of the place.
+     * @param accepted test of the index of a place.
+     * @return index of the place, or -1 if there is no such place.
+     */
+    private int find(String name, IntPredicate accepted) {
+        String normalized = normalizer.normalize(name);
+        int i = Arrays.binarySearch(names, normalized);
+        if (i < 0)
+            return -1;
+        while (i > 0 && names[i - 1].equals(normalized))
+            i--;
+        for (; i < names.length && names[i].equals(normalized); i++) {
+            if (accepted.test(nameToPlace[i]))
+                return nameToPlace[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a place is inside the given state or country of an address.
+     *
+     * @param placeParent normalized state or country of the place, or null if unknown.
+     * @param addressParent normalized state or country of the address, empty if the address doesn't give it.
+     * @return true if the address doesn't give the parent, or if it is the one of the place.
+     */
+    private static boolean isIn(String placeParent, String addressParent) {
+        return addressParent.isEmpty() || addressParent.equals(placeParent);
+    }
+
+    /**
+     * Return the result of a place.
+     *
+     * @param place index of the place.
+     * @return a Triple of longitude, latitude and polygons.
+     */
+    private Triple<Double, Double, MultiPolygon> result(int place) {
+        double lon = locations[2 * place];
+        double lat = locations[2 * place + 1];
+        return Triple.of(lon, lat, polygons.computeIfAbsent(place, p -> {
+            int firstPart = placeParts[p];
+            int endPart = placeParts[p + 1];
+            if (firstPart == endPart)
+                return new MultiPolygon(new double[] {lon, lat}, new int[] {0, 1});
+            int[] offsets = new int[endPart - firstPart + 1];
+            for (int part = firstPart; part <= endPart; part++) {
+                offsets[part - firstPart] = partPoints[part] - partPoints[firstPart];
+            }
+            return new MultiPolygon(Arrays.copyOfRange(coordinates, 2 * partPoints[firstPart],
+                    2 * partPoints[endPart]), offsets);
+        }));
+    }
+
+    /**
+     * Growable packed arrays of the places read from a gazetteer file.
+     */
+    private static final class Builder {
+        private final AddressNormalizer normalizer;
+        private final List<String> names = new ArrayList<>();
+        private final List<String> states = new ArrayList<>();
+        private final List<String> countries = new ArrayList<>();
+        private final PolygonBuffer geometry = new PolygonBuffer();
+        private double[] locations = new double[64];
+        private int[] placeParts = new int[32];
+
+        Builder(AddressNormalizer normalizer) {
+            this.normalizer = normalizer;
+        }
+
+        void addPlace(String name, String state, String country, double lon, double lat, int firstPart) {
+            int place = names.size();
+            names.add(normalizer.normalize(name));
+            states.add(parent(normalizer.normalizeState(state)));
+            countries.add(parent(normalizer.normalize(country)));
+            if (2 * place + 2 > locations.length)
+                locations = Arrays.copyOf(locations, locations.length * 2);
+            locations[2 * place] = lon;
+            locations[2 * place + 1] = lat;
+            if (place + 1 > placeParts.length)
+                placeParts = Arrays.copyOf(placeParts, placeParts.length * 2);
+            placeParts[place] = firstPart;
+        }
+
+        String parent(String normalized) {
+            return normalized.isEmpty() ? null : normalized;
+        }
+    }
+}
@@ -75,7 +75,9 @@ class GeoAddress {
     }
 
     /**
-     * Preprocess and format the given string by removing punctuations and unnecessary whitespaces.
+     * Preprocess and format the given string by removing leading and trailing whitespaces. The value is
+     * otherwise kept as written since it is sent in queries, and the different spellings of an address are
+     * matched by {@link AddressNormalizer} instead.
      * 
      * @param s string to be processed.
      * @return the formatted value.
@@ -0,0 +1,174 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * GeoCodeProgress reports the progress of a geoCoding transformation and lets it be cancelled. It is passed
+ * to {@link GeoDataFramework#geoCodeTransform(String, String, String, java.util.Map, boolean, java.util.List,
+ * GeoCodeProgress)} and can be polled from any thread while the transformation runs. Counts are in distinct
+ * addresses, i.e. the addresses left after duplicates are removed. This class is thread-safe.
+ */
+public final class GeoCodeProgress {
+
+    /**
+     * Number of distinct addresses to geoCode, -1 until known.
+     */
+    private volatile int total = -1;
+
+    /**
+     * Number of distinct addresses done, whether found, unfound or failed.
+     */
+    private final AtomicInteger completed = new AtomicInteger();
+
+    /**
+     * Number of distinct addresses found in the persistent cache.
+     */
+    private final AtomicInteger cached = new AtomicInteger();
+
+    /**
+     * Number of distinct addresses that could not be geoCoded because of failures.
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Whether the transformation is cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Number of requests sent, as counted by the geoCoder.
+     */
+    private volatile LongSupplier requestCounter = () -> 0;
+
+    /**
+     * Number of requests already sent when the geoCoding started.
+     */
+    private volatile long startRequests;
+
+    /**
+     * Time in nanoseconds at which the geoCoding started.
+     */
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * Initialize the progress of a geoCoding transformation that hasn't started.
+     */
+    public GeoCodeProgress() {
+    }
+
+    /**
+     * Start reporting the progress of the given number of distinct addresses.
+     *
+     * @param total number of distinct addresses to geoCode.
+     * @param requestCounter number of requests sent by the geoCoder so far.
+     */
+    void start(int total, LongSupplier requestCounter) {
+        this.requestCounter = requestCounter;
+        this.startRequests = requestCounter.getAsLong();
+        this.startNanos = System.nanoTime();
+        this.total = total;
+    }
+
+    /**
+     * Record addresses found in the persistent cache.
+     *
+     * @param count number of distinct addresses.
+     */
+    void addCached(int count) {
+        cached.addAndGet(count);
+        completed.addAndGet(count);
+    }
+
+    /**
+     * Record an address geoCoded, found or not.
+     */
+    void addCompleted() {
+        completed.incrementAndGet();
+    }
+
+    /**
+     * Record an address that could not be geoCoded because of failures.
+     */
+    void addFailed() {
+        failed.incrementAndGet();
+        completed.incrementAndGet();
+    }
+
+    /**
+     * Cancel the transformation. The addresses that are being queried are finished, the remaining ones are
+     * skipped, and the transformation returns a dataSet of the addresses geoCoded so far.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Check if the transformation is cancelled.
+     *
+     * @return true if the transformation is cancelled and false otherwise.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Return the number of distinct addresses to geoCode.
+     *
+     * @return number of distinct addresses, or -1 if the geoCoding hasn't started.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Return the number of distinct addresses done, whether found, unfound, cached or failed.
+     *
+     * @return number of distinct addresses done.
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Return the number of distinct addresses found in the persistent cache.
+     *
+     * @return number of distinct addresses found in the cache.
+     */
+    public int getCached() {
+        return cached.get();
+    }
+
+    /**
+     * Return the number of distinct addresses that could not be geoCoded because of failures.
+     *
+     * @return number of distinct addresses failed.
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Return the average number of requests sent per second since the geoCoding started.
+     *
+     * @return number of requests per second.
+     */
+    public double getRequestsPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        if (total < 0 || elapsed <= 0)
+            return 0;
+        return (requestCounter.getAsLong() - startRequests) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * Return a summary of the progress.
+     *
+     * @return a summary of the progress.
+     */
+    @Override
+    public String toString() {
+        return String.format("%d/%d done (%d cached, %d failed), %.1f requests/s",
+                getCompleted(), Math.max(total, 0), getCached(), getFailed(), getRequestsPerSecond());
+    }
+}
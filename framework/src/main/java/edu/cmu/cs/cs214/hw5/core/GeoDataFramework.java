@@ -1,21 +1,27 @@
 package edu.cmu.cs.cs214.hw5.core;
 
 import static edu.cmu.cs.cs214.hw5.core.UserInputType.SINGLE_SELECTION;
+import com.google.gson.JsonParseException;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 
 import javax.swing.JPanel;
+import java.io.IOException;
 import java.net.http.HttpClient;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +45,42 @@ public class GeoDataFramework {
      */
     private static final int DISPLAY_WINDOW_HEIGHT = 450;
 
+    /**
+     * Default number of rows sampled for the preview of a graph.
+     */
+    private static final int DEFAULT_PREVIEW_SAMPLE_SIZE = 50000;
+
+    /**
+     * Estimated number of distinct values above which a column is listed page by page instead of as a whole.
+     */
+    private static final long HIGH_CARDINALITY_THRESHOLD = 1000;
+
+    /**
+     * Names of the sampling methods.
+     */
+    private static final List<String> SAMPLE_METHODS = Arrays.asList("Reservoir", "Stratified", "Bernoulli");
+
+    /**
+     * Modes of the spatial filter.
+     */
+    private static final List<String> SPATIAL_FILTER_MODES = Arrays.asList("Bounding Box", "Within Radius",
+            "Inside Polygon");
+
+    /**
+     * Modes of the geometry metrics, geodesic first.
+     */
+    private static final List<String> GEOMETRY_MODES = Arrays.asList("Geodesic", "Planar");
+
+    /**
+     * Name of the online geoCoder.
+     */
+    private static final String OPEN_STREET_MAP = "OpenStreetMap";
+
+    /**
+     * Name of the offline geoCoder.
+     */
+    private static final String OFFLINE_GAZETTEER = "Offline Gazetteer";
+
     /**
      * Map from dataPlugin name to dataPlugin.
      */
@@ -60,9 +102,39 @@ public class GeoDataFramework {
     private final Set<FrameworkListener> listeners;
 
     /**
-     * Open Street Map Client
+     * Map from geoCoder name to the service geoCoding with it, starting with OpenStreetMap.
      */
-    private OpenStreetMapClient openStreetMapClient;
+    private final Map<String, GeocodingService> geocodingServiceMap;
+
+    /**
+     * Normalizer giving the keys of the addresses, shared by all geoCoders.
+     */
+    private final AddressNormalizer addressNormalizer;
+
+    /**
+     * Persistent cache of the geoCoding results, or null if results are not persisted.
+     */
+    private final GeocodeCache geocodeCache;
+
+    /**
+     * Whether geoCoders print their status.
+     */
+    private final boolean printStatus;
+
+    /**
+     * Store of the MultiPolygons of all dataSets, which keeps the boundaries shared by several dataSets once.
+     */
+    private final GeometryStore geometryStore = new GeometryStore();
+
+    /**
+     * Offline geoCoder, or null if no gazetteer is loaded.
+     */
+    private volatile Gazetteer gazetteer;
+
+    /**
+     * Number of rows sampled for the preview of a graph, 0 if preview is disabled.
+     */
+    private volatile int previewSampleSize = DEFAULT_PREVIEW_SAMPLE_SIZE;
 
     /**
      * Initialize the framework by default.
@@ -72,7 +144,11 @@ public class GeoDataFramework {
         displayPluginMap = new LinkedHashMap<>();
         dataSetMap = new HashMap<>();
         listeners = new LinkedHashSet<>();
-        openStreetMapClient = new OpenStreetMapClient(HttpClient.newBuilder().build(), true);
+        geocodingServiceMap = new LinkedHashMap<>();
+        addressNormalizer = new AddressNormalizer();
+        geocodeCache = openGeocodeCache(GeocodeCache.defaultPath());
+        printStatus = true;
+        registerOpenStreetMap(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build());
     }
 
     /**
@@ -85,7 +161,56 @@ public class GeoDataFramework {
         displayPluginMap = new LinkedHashMap<>();
         dataSetMap = new HashMap<>();
         listeners = new LinkedHashSet<>();
-        openStreetMapClient = new OpenStreetMapClient(httpClient, printStatus);
+        geocodingServiceMap = new LinkedHashMap<>();
+        addressNormalizer = new AddressNormalizer();
+        geocodeCache = null;
+        this.printStatus = printStatus;
+        registerOpenStreetMap(httpClient);
+    }
+
+    /**
+     * Initialize the framework by providing a http client and the file of the persistent geoCoding cache.
+     * @param httpClient http client.
+     * @param printStatus print status.
+     * @param geocodeCacheFile file storing the geoCoding results across restarts.
+     */
+    public GeoDataFramework(HttpClient httpClient, boolean printStatus, Path geocodeCacheFile) {
+        dataPluginMap = new LinkedHashMap<>();
+        displayPluginMap = new LinkedHashMap<>();
+        dataSetMap = new HashMap<>();
+        listeners = new LinkedHashSet<>();
+        geocodingServiceMap = new LinkedHashMap<>();
+        addressNormalizer = new AddressNormalizer();
+        geocodeCache = openGeocodeCache(geocodeCacheFile);
+        this.printStatus = printStatus;
+        registerOpenStreetMap(httpClient);
+    }
+
+    /**
+     * Register the built-in OpenStreetMap geoCoder. Its cache keys have no prefix, so the results cached
+     * before geoCoders became pluggable are still used.
+     *
+     * @param httpClient http client.
+     */
+    private void registerOpenStreetMap(HttpClient httpClient) {
+        geocodingServiceMap.put(OPEN_STREET_MAP, new GeocodingService(
+                new OpenStreetMapClient(httpClient, printStatus), printStatus, geocodeCache, "", addressNormalizer));
+    }
+
+    /**
+     * Open the persistent geoCoding cache stored in the given file. GeoCoding still works without the cache
+     * if the file cannot be opened.
+     *
+     * @param path file of the cache.
+     * @return the opened cache, or null if it cannot be opened.
+     */
+    private static GeocodeCache openGeocodeCache(Path path) {
+        try {
+            return new GeocodeCache(path);
+        } catch (IOException e) {
+            System.out.println("Unable to open geocode cache " + path + ": " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -122,6 +247,22 @@ public class GeoDataFramework {
         System.out.println("Loaded display plugin: " + plugin.getName());
     }
 
+    /**
+     * Register geoCoder backend into the framework, which is then listed as a choice of geoCoder. Results of
+     * the backend are cached separately from the ones of other geoCoders, and only persisted if the backend
+     * allows it.
+     *
+     * @param backend geoCoder backend.
+     */
+    public void registerGeocoderBackend(GeocoderBackend backend) {
+        if (backend.getName().equals(OPEN_STREET_MAP) || backend.getName().equals(OFFLINE_GAZETTEER))
+            throw new IllegalArgumentException("Duplicate Geocoder Name");
+        GeocodeCache cache = backend.isPersistentlyCached() ? geocodeCache : null;
+        geocodingServiceMap.put(backend.getName(), new GeocodingService(backend, printStatus, cache,
+                backend.getName() + "|", addressNormalizer));
+        System.out.println("Loaded geocoder backend: " + backend.getName());
+    }
+
     /**
      * Return a list of names of all data plugins.
      * 
@@ -169,10 +310,90 @@ public class GeoDataFramework {
      */
     public void loadData(String pluginName, String dataSetName, Map<String, List<String>> params) {
         checkNewDataSetName(dataSetName);
-        dataSetMap.put(dataSetName, dataPluginMap.get(pluginName).loadData(params));
+        putDataSet(dataSetName, dataPluginMap.get(pluginName).loadData(params));
+        listeners.forEach(l -> l.dataSetLoaded(dataSetName));
+    }
+
+    /**
+     * Return a list of UserInputConfig specific to the optional operations applied while importing data.
+     * Since the columns are unknown before importing, column labels are specified as text.
+     *
+     * @return a list of UserInputConfig specific to import operations.
+     */
+    public List<UserInputConfig> getImportConfigs() {
+        List<UserInputConfig> configList = new ArrayList<>();
+        configList.add(new UserInputConfig("Filter Column", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("Filter Operator", SINGLE_SELECTION, Arrays.asList(">", ">=", "=", "<=", "<", "!=")));
+        configList.add(new UserInputConfig("Filter Value", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("Keep Columns", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("Group By", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("Aggregate", SINGLE_SELECTION, AggregateFunction.displayNames()));
+        configList.add(new UserInputConfig("Aggregate Column", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        return configList;
+    }
+
+    /**
+     * Load data from data plugin while applying the import operations. The rows are read from the plugin
+     * batch by batch and filtered as they are parsed, then projected to the kept columns (comma separated)
+     * and aggregated by the group column, and only the result is stored as the new dataSet. Operations
+     * whose parameters are left empty are skipped. The source is closed if an import operation is invalid.
+     *
+     * @param pluginName name of data plugin.
+     * @param dataSetName name of dataSet.
+     * @param params a parameter mapping from configuration name to concrete parameters user specifies.
+     * @param importParams a parameter mapping from import configuration name to parameters user specifies.
+     */
+    public void loadData(String pluginName, String dataSetName, Map<String, List<String>> params,
+                         Map<String, List<String>> importParams) {
+        checkNewDataSetName(dataSetName);
+        String filterColumn = firstNonBlank(importParams.get("Filter Column"));
+        String keepColumns = firstNonBlank(importParams.get("Keep Columns"));
+        String groupBy = firstNonBlank(importParams.get("Group By"));
+
+        String operator = firstNonBlank(importParams.get("Filter Operator"));
+        if (filterColumn != null && operator == null)
+            throw new IllegalArgumentException("Select The Filter Operator");
+        String function = firstNonBlank(importParams.get("Aggregate"));
+        if (groupBy != null && function == null)
+            throw new IllegalArgumentException("Select The Aggregate Function");
+
+        RowSource source = dataPluginMap.get(pluginName).openRowSource(params);
+        StreamingTransformation transform;
+        try {
+            transform = new StreamingTransformation(source);
+            if (filterColumn != null) {
+                String value = importParams.get("Filter Value").get(0);
+                transform.filter(filterColumn, operator, value == null ? "" : value.strip());
+            }
+            if (keepColumns != null) {
+                transform.project(Arrays.stream(keepColumns.split(",")).map(String::strip)
+                        .filter(l -> !l.isEmpty()).collect(Collectors.toList()));
+            }
+            if (groupBy != null) {
+                transform.aggregate(groupBy, firstNonBlank(importParams.get("Aggregate Column")),
+                        AggregateFunction.fromDisplayName(function));
+            }
+        } catch (RuntimeException e) {
+            // The pipeline only closes the source once it is read, so close it here if it cannot be set up.
+            source.close();
+            throw e;
+        }
+        putDataSet(dataSetName, transform.toDataSet());
         listeners.forEach(l -> l.dataSetLoaded(dataSetName));
     }
 
+    /**
+     * Return the first value of the user input with surrounding whitespaces removed.
+     *
+     * @param input list of values user specifies.
+     * @return the first value, or null if the input is empty or blank.
+     */
+    private static String firstNonBlank(List<String> input) {
+        if (input == null || input.isEmpty() || input.get(0) == null || input.get(0).isBlank())
+            return null;
+        return input.get(0).strip();
+    }
+
     /**
      * Check if a new data set can be added.
      * @param dataSetName name of new data set name;
@@ -192,11 +413,29 @@ public class GeoDataFramework {
      */
     public void deleteDataSet(String name) {
         if (dataSetMap.containsKey(name)) {
-            dataSetMap.remove(name);
+            dataSetMap.remove(name).distinctPolygons().forEach(geometryStore::release);
             listeners.forEach(l -> l.dataSetDeleted(name));
         }
     }
 
+    /**
+     * Add a dataSet to the framework. A copy of it whose MultiPolygons are interned in the geometry store is
+     * stored, so that the boundaries it shares with other dataSets are kept in memory once, and every distinct MultiPolygon of
+     * the dataSet holds one reference released when the dataSet is deleted.
+     *
+     * @param name name of the dataSet.
+     * @param dataSet dataSet to be added.
+     */
+    private void putDataSet(String name, DataSet dataSet) {
+        Set<MultiPolygon> held = Collections.newSetFromMap(new IdentityHashMap<>());
+        dataSetMap.put(name, dataSet.withInternedPolygons(p -> {
+            MultiPolygon canonical = geometryStore.acquire(p);
+            if (!held.add(canonical))
+                geometryStore.release(canonical);
+            return canonical;
+        }));
+    }
+
     /**
      * Return a list of UserInputConfig specific to the display plugin of given name.
      * 
@@ -234,34 +473,89 @@ public class GeoDataFramework {
     public JPanel drawGraph(String pluginName, String dataSetName,
                           Map<String, List<String>> pluginParams,
                           List<Pair<DisplayFilterConfig, List<String>>> transformParams) {
+        return drawGraph(pluginName, dataSetName, pluginParams, transformParams, preview -> { });
+    }
+
+    /**
+     * Draw a graph in the framework, drawing first a preview with a uniform sample of the data to be
+     * displayed if the data is larger than the sample. The display filters are applied once for both graphs.
+     * This method is meant to be called in the background, the preview being shown while the graph of the
+     * full data is drawn.
+     *
+     * @param pluginName name of plugin.
+     * @param dataSetName name of dataSet.
+     * @param pluginParams a parameter mapping from configuration name to concrete parameters user specifies.
+     * @param transformParams a list of pairs of DisplayFilterConfig and a list of values selected by user.
+     * @param preview consumer of the panel drawn with the sample, which is not called if preview is disabled
+     *                or the data is not larger than the sample.
+     * @return a panel drawn by display plugin.
+     */
+    public JPanel drawGraph(String pluginName, String dataSetName,
+                            Map<String, List<String>> pluginParams,
+                            List<Pair<DisplayFilterConfig, List<String>>> transformParams,
+                            Consumer<JPanel> preview) {
         DisplayPlugin plugin = displayPluginMap.get(pluginName);
-        DataSet dataSet = dataSetMap.get(dataSetName);
+        DataSet dataSet = applyDisplayFilters(dataSetMap.get(dataSetName), transformParams);
+        int sampleSize = previewSampleSize;
+        if (sampleSize > 0 && dataSet.rowCount() > sampleSize) {
+            DataSet sample = new Transformation(dataSet).sampleReservoir(sampleSize, new Random()).toDataSet();
+            preview.accept(plugin.draw(sample, DISPLAY_WINDOW_WIDTH, DISPLAY_WINDOW_HEIGHT, pluginParams));
+        }
+        return plugin.draw(dataSet, DISPLAY_WINDOW_WIDTH, DISPLAY_WINDOW_HEIGHT, pluginParams);
+    }
 
-        if (!transformParams.isEmpty()) {
-            Transformation transform = new Transformation(dataSet);
-            for (Pair<DisplayFilterConfig, List<String>> param : transformParams) {
-                DisplayFilterConfig config = param.getLeft();
-                switch (config.getFilterType()) {
-                    case MULTI_SELECTION:
-                    case SINGLE_SELECTION:
-                        List<String> values = param.getRight();
-                        transform.filter(config.getLabel(), values);
-                        break;
-                    default:
-                        break;
-                }
-                if (config.getSortOrder() != null) {
-                    if (config.getSortOrder()) {
-                        transform.sort(config.getLabel());
-                    } else {
-                        transform.sort(config.getLabel(), false);
-                    }
-                }
+    /**
+     * Set the number of rows sampled for the preview of a graph.
+     *
+     * @param sampleSize number of rows sampled for the preview of a graph, 0 to disable preview.
+     */
+    public void setPreviewSampleSize(int sampleSize) {
+        if (sampleSize < 0)
+            throw new IllegalArgumentException("Sample Size Should Not Be Negative");
+        this.previewSampleSize = sampleSize;
+    }
+
+    /**
+     * Return the number of rows sampled for the preview of a graph.
+     *
+     * @return number of rows sampled for the preview of a graph, 0 if preview is disabled.
+     */
+    public int getPreviewSampleSize() {
+        return previewSampleSize;
+    }
 
+    /**
+     * Filter and sort the dataSet as specified by the display filter configs and the values selected by user.
+     *
+     * @param dataSet dataSet to be displayed.
+     * @param transformParams a list of pairs of DisplayFilterConfig and a list of values selected by user.
+     * @return the filtered and sorted dataSet.
+     */
+    private DataSet applyDisplayFilters(DataSet dataSet, List<Pair<DisplayFilterConfig, List<String>>> transformParams) {
+        if (transformParams.isEmpty())
+            return dataSet;
+        Transformation transform = new Transformation(dataSet);
+        for (Pair<DisplayFilterConfig, List<String>> param : transformParams) {
+            DisplayFilterConfig config = param.getLeft();
+            switch (config.getFilterType()) {
+                case MULTI_SELECTION:
+                case SINGLE_SELECTION:
+                    List<String> values = param.getRight();
+                    transform.filter(config.getLabel(), values);
+                    break;
+                default:
+                    break;
             }
-            dataSet = transform.toDataSet();
+            if (config.getSortOrder() != null) {
+                if (config.getSortOrder()) {
+                    transform.sort(config.getLabel());
+                } else {
+                    transform.sort(config.getLabel(), false);
+                }
+            }
+
         }
-        return plugin.draw(dataSet, DISPLAY_WINDOW_WIDTH, DISPLAY_WINDOW_HEIGHT, pluginParams);
+        return transform.toDataSet();
     }
 
     /**
@@ -286,6 +580,9 @@ public class GeoDataFramework {
                 configList.add(new UserInputConfig(param, SINGLE_SELECTION, stringColumnLabels));
         }
 
+        List<String> geocoders = new ArrayList<>(geocodingServiceMap.keySet());
+        geocoders.add(1, OFFLINE_GAZETTEER);
+        configList.add(new UserInputConfig("Geocoder", SINGLE_SELECTION, geocoders));
         configList.add(new UserInputConfig("Polygon Threshold", SINGLE_SELECTION, POLYGON_THRESOLD_VALUES));
 
         return configList;
@@ -299,33 +596,96 @@ public class GeoDataFramework {
      * @param newLabel new name of the labels.
      * @param params a parameter mapping from configuration name to concrete parameters user specifies.
      * @param isFreeForm whether the configuration if from free form or not.
-     * @return a list of strings of addresses that geo-information cannot be founded.
+     * @return a list of strings of addresses that geo-information cannot be founded, including the ones
+     *         that could not be queried because of failures.
      */
     public List<String> geoCodeTransform(String origDataSetName, String newDataSetName, String newLabel,
                                  Map<String, List<String>> params, boolean isFreeForm) {
+        List<String> unresolved = new ArrayList<>();
+        List<String> unfounded = geoCodeTransform(origDataSetName, newDataSetName, newLabel, params, isFreeForm,
+                unresolved);
+        unfounded.addAll(unresolved);
+        return unfounded;
+    }
+
+    /**
+     * Transform dataSet by geoCoding. Addresses that could not be queried because of failures (e.g. the
+     * geoCoding service is unreachable) don't abort the transformation: they are added to the unresolved
+     * list and their rows are left out of the new dataSet like the ones of unfound addresses. Found results
+     * are cached, so geoCoding again later only queries the unresolved addresses. If the "Geocoder"
+     * parameter is "Offline Gazetteer", addresses are looked up in the loaded gazetteer instead of
+     * OpenStreetMap, and the polygon threshold is ignored. Any other registered geoCoder backend can be
+     * chosen as well.
+     *
+     * @param origDataSetName name of the original dataSet.
+     * @param newDataSetName name of the new dataSet.
+     * @param newLabel new name of the labels.
+     * @param params a parameter mapping from configuration name to concrete parameters user specifies.
+     * @param isFreeForm whether the configuration if from free form or not.
+     * @param unresolved a list to which the addresses that could not be queried are added.
+     * @return a list of strings of addresses that geo-information cannot be founded.
+     */
+    public List<String> geoCodeTransform(String origDataSetName, String newDataSetName, String newLabel,
+                                 Map<String, List<String>> params, boolean isFreeForm, List<String> unresolved) {
+        return geoCodeTransform(origDataSetName, newDataSetName, newLabel, params, isFreeForm, unresolved,
+                new GeoCodeProgress());
+    }
+
+    /**
+     * Transform dataSet by geoCoding, reporting the progress to the given progress object, which can be
+     * polled from another thread. If the progress is cancelled, the addresses being queried are finished,
+     * the remaining ones are added to the unresolved list without being queried (they are skipped silently
+     * by the offline gazetteer), and the new dataSet is made of the rows geoCoded so far.
+     *
+     * @param origDataSetName name of the original dataSet.
+     * @param newDataSetName name of the new dataSet.
+     * @param newLabel new name of the labels.
+     * @param params a parameter mapping from configuration name to concrete parameters user specifies.
+     * @param isFreeForm whether the configuration if from free form or not.
+     * @param unresolved a list to which the addresses that could not be queried are added.
+     * @param progress progress of the transformation, which also cancels it.
+     * @return a list of strings of addresses that geo-information cannot be founded.
+     */
+    public List<String> geoCodeTransform(String origDataSetName, String newDataSetName, String newLabel,
+                                 Map<String, List<String>> params, boolean isFreeForm, List<String> unresolved,
+                                 GeoCodeProgress progress) {
         if (newDataSetName == null || newDataSetName.isBlank())
             throw new IllegalArgumentException("Empty DataSet Name");
         if (newLabel == null || newLabel.isBlank())
             throw new IllegalArgumentException("Empty Label");
         if (dataSetMap.containsKey(newDataSetName))
             throw new IllegalArgumentException("Duplicate Name");
-        if (params.get("Polygon Threshold").size() == 0)
+        List<String> geocoder = params.getOrDefault("Geocoder", new ArrayList<>());
+        Gazetteer offline = null;
+        GeocodingService service = geocodingServiceMap.get(OPEN_STREET_MAP);
+        if (!geocoder.isEmpty() && geocoder.get(0).equals(OFFLINE_GAZETTEER)) {
+            offline = gazetteer;
+            if (offline == null)
+                throw new IllegalArgumentException("Load A Gazetteer First");
+        } else if (!geocoder.isEmpty() && !geocodingServiceMap.containsKey(geocoder.get(0))) {
+            throw new IllegalArgumentException("Geocoder Not Found");
+        } else if (params.get("Polygon Threshold").size() == 0) {
             throw new IllegalArgumentException("Specify Polygon Threshold");
-        String threshold = params.get("Polygon Threshold").get(0);
+        }
+        String threshold = offline != null ? null : params.get("Polygon Threshold").get(0);
+        if (offline == null && !geocoder.isEmpty())
+            service = geocodingServiceMap.get(geocoder.get(0));
 
         DataSet origDataSet = dataSetMap.get(origDataSetName);
         if (origDataSet == null) {
             throw new IllegalArgumentException("DataSet Not Found");
         }
 
-        Set<Object> unfounded = new HashSet<>();
+        Set<String> unfounded = new HashSet<>();
+        Set<String> unresolvedSet = new HashSet<>();
         List<Triple<Double, Double, MultiPolygon>> queryResult = null;
         if (isFreeForm) {
             String columnLabel = params.get("Address").get(0);
             if (columnLabel == null)
                 throw new IllegalArgumentException("Choose The Address Column");
             String[] addressArray = origDataSet.getColumn(columnLabel).stream().map(Object::toString).toArray(String[]::new);
-            queryResult = openStreetMapClient.batchQuery(addressArray, unfounded, threshold);
+            queryResult = offline != null ? offline.batchQuery(addressArray, unfounded, progress)
+                    : service.batchQuery(addressArray, unfounded, unresolvedSet, threshold, progress);
         } else {
             GeoAddress[] addressArray = new GeoAddress[origDataSet.rowCount()];
 
@@ -341,7 +701,8 @@ public class GeoDataFramework {
                         indexes[4] < 0 ? null : origDataSet.getCell(i, indexes[4]).toString()
                 );
             }
-            queryResult = openStreetMapClient.batchQuery(addressArray, unfounded, threshold);
+            queryResult = offline != null ? offline.batchQuery(addressArray, unfounded, progress)
+                    : service.batchQuery(addressArray, unfounded, unresolvedSet, threshold, progress);
         }
 
         List<List<Object>> data = origDataSet.toLists();
@@ -365,14 +726,61 @@ public class GeoDataFramework {
         labels.add(newLabel + " (contour)");
         types.add(DataType.POLYGONS);
 
-        dataSetMap.put(newDataSetName, new DataSet(labels, types, data));
+        putDataSet(newDataSetName, new DataSet(labels, types, data));
         listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
-        List<String> unfoundedList = unfounded.stream().map(Object::toString).collect(Collectors.toList());
-        return unfoundedList;
+        unresolved.addAll(unresolvedSet);
+        return new ArrayList<>(unfounded);
+    }
+
+    /**
+     * Load a gazetteer file used by the "Offline Gazetteer" geoCoder, replacing the one loaded before.
+     * See {@link Gazetteer} for the supported GeoJSON and CSV formats.
+     *
+     * @param path path of the GeoJSON or CSV file.
+     * @return number of places in the gazetteer.
+     */
+    public int loadGazetteer(Path path) {
+        try {
+            gazetteer = Gazetteer.load(path, addressNormalizer);
+        } catch (IOException | IllegalStateException | JsonParseException e) {
+            throw new IllegalArgumentException("Unable To Read Gazetteer: " + e.getMessage());
+        }
+        return gazetteer.size();
+    }
+
+    /**
+     * Return a summary of the hit rate of the in-memory OpenStreetMap geoCoding cache of this session.
+     *
+     * @return a summary of the hit rate of the in-memory geoCoding cache.
+     */
+    public String getGeoCodeCacheStats() {
+        return geocodingServiceMap.get(OPEN_STREET_MAP).memoryCacheStats();
+    }
+
+    /**
+     * Return a summary of the geoCoding requests saved by address normalization in this session, i.e. the
+     * addresses spelled differently but geoCoded by a single request.
+     *
+     * @return a summary of the requests saved by address normalization.
+     */
+    public String getAddressNormalizationStats() {
+        return addressNormalizer.stats();
+    }
+
+    /**
+     * Return a summary of the boundaries kept in memory for all dataSets, and of the copies saved by
+     * sharing them between dataSets.
+     *
+     * @return a summary of the boundaries kept in memory.
+     */
+    public String getGeometryStoreStats() {
+        return geometryStore.stats();
     }
 
     /**
-     * Return a list of UserInputConfig for user to choose which values to filter with.
+     * Return a list of UserInputConfig for user to choose which values to filter with. The selection list
+     * of a high cardinality column is left empty, and its values should be listed page by page with
+     * {@link DataSet#getDistinctValues} instead.
      * 
      * @param dataSetName name of dataSet.
      * @param displayFilterConfigs a list of TransformConfigs mapping from configuration name to transform type.
@@ -382,14 +790,13 @@ public class GeoDataFramework {
         DataSet dataSet = dataSetMap.get(dataSetName);
         List<UserInputConfig> res = new ArrayList<>();
         for (DisplayFilterConfig controlConfig : displayFilterConfigs) {
-            List<Object> column = dataSet.getColumn(controlConfig.getLabel());
+            String label = controlConfig.getLabel();
             switch (controlConfig.getFilterType()) {
                 case SINGLE_SELECTION:
                 case MULTI_SELECTION:
-                    res.add(new UserInputConfig(controlConfig.getLabel(), controlConfig.getFilterType(), column.stream()
-                            .filter(Objects::nonNull).distinct()
-                            .sorted()
-                            .map(Object::toString).collect(Collectors.toList())));
+                    List<String> values = isHighCardinality(dataSetName, label) ? new ArrayList<>()
+                            : dataSet.getDistinctValues(label, "", 0, Integer.MAX_VALUE);
+                    res.add(new UserInputConfig(label, controlConfig.getFilterType(), values));
                 default:
                     break;
             }
@@ -397,6 +804,21 @@ public class GeoDataFramework {
         return res;
     }
 
+    /**
+     * Check if the column of the given label has too many distinct values to be listed as a whole, based on
+     * an estimate of its number of distinct values.
+     *
+     * @param dataSetName name of dataSet.
+     * @param label label of column.
+     * @return true if the values of the column should be listed page by page and false otherwise.
+     */
+    public boolean isHighCardinality(String dataSetName, String label) {
+        DataSet dataSet = dataSetMap.get(dataSetName);
+        if (dataSet == null)
+            throw new IllegalArgumentException("DataSet does not exist");
+        return dataSet.estimateDistinctCount(label) > HIGH_CARDINALITY_THRESHOLD;
+    }
+
     /**
      * Return a list of UserInputConfig specific to filter function.
      * 
@@ -461,7 +883,7 @@ public class GeoDataFramework {
         
         Transformation newData = origin.filter(label, operator, value);
         DataSet newDataSet = newData.toDataSet();
-        dataSetMap.put(newDataSetName, newDataSet);
+        putDataSet(newDataSetName, newDataSet);
         listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
     }
 
@@ -483,10 +905,113 @@ public class GeoDataFramework {
         List<String> values = params.get("Values");
         Transformation newData = origin.filter(label, values);
         DataSet newDataSet = newData.toDataSet();
-        dataSetMap.put(newDataSetName, newDataSet);
+        putDataSet(newDataSetName, newDataSet);
         listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
     }
 
+    /**
+     * Return a list of UserInputConfig specific to spatial filter function.
+     *
+     * @param dataSetName name of dataSet to be filtered.
+     * @return a list of UserInputConfig specific to spatial filter function.
+     */
+    public List<UserInputConfig> getSpatialFilterConfigs(String dataSetName) {
+        DataSet dataSet = dataSetMap.get(dataSetName);
+        if (dataSet == null)
+            throw new IllegalArgumentException("DataSet does not exist");
+        List<UserInputConfig> configList = new ArrayList<>();
+        List<String> numericLabels = new ArrayList<>(dataSet.labelsOfType(DataType.DOUBLE));
+        numericLabels.addAll(dataSet.labelsOfType(DataType.INTEGER));
+
+        configList.add(new UserInputConfig("Mode", SINGLE_SELECTION, SPATIAL_FILTER_MODES));
+        configList.add(new UserInputConfig("Contour Column", SINGLE_SELECTION, dataSet.labelsOfType(DataType.POLYGONS)));
+        configList.add(new UserInputConfig("Longitude Column", SINGLE_SELECTION, numericLabels));
+        configList.add(new UserInputConfig("Latitude Column", SINGLE_SELECTION, numericLabels));
+        configList.add(new UserInputConfig("Coordinates", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("Radius (km)", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        return configList;
+    }
+
+    /**
+     * Filter the original dataSet by location and create a new DataSet based on the parameter mapping
+     * specified by user. The rows are kept if their contour intersects the region, or if no contour column
+     * is selected, if their point of longitude and latitude is inside the region. The coordinates are pairs
+     * of longitude and latitude separated by commas: the two corners of a bounding box, the center of a
+     * radius or the vertices of a polygon.
+     *
+     * @param origDataSetName name of original dataSet.
+     * @param newDataSetName name of new dataSet.
+     * @param params parameter mapping from configuration name to a list of values that user specifies.
+     */
+    public void spatialFilter(String origDataSetName, String newDataSetName, Map<String, List<String>> params) {
+        if (params.get("Mode").isEmpty())
+            throw new IllegalArgumentException("Select The Spatial Filter Mode");
+        String contourLabel = params.get("Contour Column").isEmpty() ? null : params.get("Contour Column").get(0);
+        if (contourLabel == null && (params.get("Longitude Column").isEmpty() || params.get("Latitude Column").isEmpty()))
+            throw new IllegalArgumentException("Select A Contour Column Or The Longitude And Latitude Columns");
+        checkNewDataSetName(newDataSetName);
+
+        double[] coordinates = parseCoordinates(params.get("Coordinates").get(0));
+        SpatialRegion region;
+        switch (params.get("Mode").get(0)) {
+            case "Bounding Box":
+                if (coordinates.length != 4)
+                    throw new IllegalArgumentException("Enter Two Corners Of The Bounding Box");
+                region = SpatialRegion.box(Math.min(coordinates[0], coordinates[2]),
+                        Math.min(coordinates[1], coordinates[3]), Math.max(coordinates[0], coordinates[2]),
+                        Math.max(coordinates[1], coordinates[3]));
+                break;
+            case "Within Radius":
+                if (coordinates.length != 2)
+                    throw new IllegalArgumentException("Enter The Center Of The Radius");
+                String radius = params.get("Radius (km)").get(0);
+                try {
+                    region = SpatialRegion.circle(coordinates[0], coordinates[1],
+                            Double.parseDouble(radius == null ? "" : radius.strip()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid Radius");
+                }
+                break;
+            case "Inside Polygon":
+                region = SpatialRegion.polygon(coordinates);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown Spatial Filter Mode");
+        }
+
+        Transformation origin = new Transformation(dataSetMap.get(origDataSetName));
+        Transformation newData = contourLabel != null ? origin.filterPolygons(contourLabel, region)
+                : origin.filterPoints(params.get("Longitude Column").get(0), params.get("Latitude Column").get(0), region);
+        DataSet newDataSet = newData.toDataSet();
+        putDataSet(newDataSetName, newDataSet);
+        listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
+    }
+
+    /**
+     * Parse pairs of longitude and latitude separated by commas, e.g. "-80.1 40.3, -79.8 40.6".
+     *
+     * @param text text of the coordinates.
+     * @return the coordinates, interleaved as longitude and latitude.
+     */
+    private static double[] parseCoordinates(String text) {
+        if (text == null || text.isBlank())
+            throw new IllegalArgumentException("Enter The Coordinates");
+        String[] points = text.strip().split("\\s*,\\s*");
+        double[] coordinates = new double[2 * points.length];
+        for (int i = 0; i < points.length; i++) {
+            String[] point = points[i].strip().split("\\s+");
+            if (point.length != 2)
+                throw new IllegalArgumentException("Invalid Coordinates: " + points[i]);
+            try {
+                coordinates[2 * i] = Double.parseDouble(point[0]);
+                coordinates[2 * i + 1] = Double.parseDouble(point[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid Coordinates: " + points[i]);
+            }
+        }
+        return coordinates;
+    }
+
     /**
      * Sort the dataSet and create a new DataSet based on the parameter mapping specified by user.
      * 
@@ -505,7 +1030,230 @@ public class GeoDataFramework {
         Transformation newData = origin.sort(label);
 
         DataSet newDataSet = newData.toDataSet();
-        dataSetMap.put(newDataSetName, newDataSet);
+        putDataSet(newDataSetName, newDataSet);
+        listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
+    }
+
+    /**
+     * Return a list of UserInputConfig specific to window function.
+     *
+     * @param dataSetName name of dataSet to compute window function on.
+     * @return a list of UserInputConfig specific to window function.
+     */
+    public List<UserInputConfig> getWindowConfigs(String dataSetName) {
+        DataSet dataSet = dataSetMap.get(dataSetName);
+        if (dataSet == null)
+            throw new IllegalArgumentException("DataSet does not exist");
+        List<UserInputConfig> configList = new ArrayList<>();
+        List<String> comparableLabels = new ArrayList<>(dataSet.labelsOfType(DataType.STRING));
+        comparableLabels.addAll(dataSet.labelsOfType(DataType.INTEGER));
+        comparableLabels.addAll(dataSet.labelsOfType(DataType.DOUBLE));
+        List<String> numericLabels = new ArrayList<>(dataSet.labelsOfType(DataType.INTEGER));
+        numericLabels.addAll(dataSet.labelsOfType(DataType.DOUBLE));
+
+        configList.add(new UserInputConfig("Partition By", SINGLE_SELECTION, comparableLabels));
+        configList.add(new UserInputConfig("Order By", SINGLE_SELECTION, comparableLabels));
+        configList.add(new UserInputConfig("Value", SINGLE_SELECTION, numericLabels));
+        configList.add(new UserInputConfig("Function", SINGLE_SELECTION, WindowFunction.displayNames()));
+        configList.add(new UserInputConfig("Frame Size", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("New Label", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        return configList;
+    }
+
+    /**
+     * Compute a window function (rolling average, delta, lag, lead or cumulative sum) over the dataSet and
+     * create a new DataSet with the result appended as a new column.
+     *
+     * @param origDataSetName name of original dataSet.
+     * @param newDataSetName name of new dataSet.
+     * @param params parameter mapping from configuration name to a list of values that user specifies.
+     */
+    public void window(String origDataSetName, String newDataSetName, Map<String, List<String>> params) {
+        if (params.get("Order By").isEmpty())
+            throw new IllegalArgumentException("Select The Column To Order By");
+        if (params.get("Value").isEmpty())
+            throw new IllegalArgumentException("Select The Value Column");
+        if (params.get("Function").isEmpty())
+            throw new IllegalArgumentException("Select The Window Function");
+        String newLabel = params.get("New Label").get(0);
+        if (newLabel == null || newLabel.isBlank())
+            throw new IllegalArgumentException("Empty Label");
+        checkNewDataSetName(newDataSetName);
+
+        String frameSizeInput = params.get("Frame Size").get(0);
+        int frameSize;
+        try {
+            frameSize = frameSizeInput == null || frameSizeInput.isBlank() ? 1 : Integer.parseInt(frameSizeInput.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid Frame Size");
+        }
+        String partitionLabel = params.get("Partition By").isEmpty() ? null : params.get("Partition By").get(0);
+        WindowFunction function = WindowFunction.fromDisplayName(params.get("Function").get(0));
+
+        DataSet originDataSet = dataSetMap.get(origDataSetName);
+        Transformation origin = new Transformation(originDataSet);
+        Transformation newData = origin.window(partitionLabel, params.get("Order By").get(0),
+                params.get("Value").get(0), function, frameSize, newLabel);
+
+        DataSet newDataSet = newData.toDataSet();
+        putDataSet(newDataSetName, newDataSet);
+        listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
+    }
+
+    /**
+     * Return a list of UserInputConfig specific to sample function.
+     *
+     * @param dataSetName name of dataSet to be sampled.
+     * @return a list of UserInputConfig specific to sample function.
+     */
+    public List<UserInputConfig> getSampleConfigs(String dataSetName) {
+        DataSet dataSet = dataSetMap.get(dataSetName);
+        if (dataSet == null)
+            throw new IllegalArgumentException("DataSet does not exist");
+        List<UserInputConfig> configList = new ArrayList<>();
+        List<String> categoryLabels = new ArrayList<>(dataSet.labelsOfType(DataType.STRING));
+        categoryLabels.addAll(dataSet.labelsOfType(DataType.INTEGER));
+
+        configList.add(new UserInputConfig("Method", SINGLE_SELECTION, SAMPLE_METHODS));
+        configList.add(new UserInputConfig("Sample Size / Rate", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("Stratify By", SINGLE_SELECTION, categoryLabels));
+        return configList;
+    }
+
+    /**
+     * Sample the dataSet and create a new DataSet based on the parameter mapping specified by user. Reservoir
+     * sampling keeps a fixed number of rows, stratified sampling keeps a fixed number of rows per category
+     * of the "Stratify By" column and Bernoulli sampling keeps each row with a fixed rate.
+     *
+     * @param origDataSetName name of original dataSet.
+     * @param newDataSetName name of new dataSet.
+     * @param params parameter mapping from configuration name to a list of values that user specifies.
+     */
+    public void sample(String origDataSetName, String newDataSetName, Map<String, List<String>> params) {
+        if (params.get("Method").isEmpty())
+            throw new IllegalArgumentException("Select The Sampling Method");
+        checkNewDataSetName(newDataSetName);
+        String method = params.get("Method").get(0);
+        String amount = params.get("Sample Size / Rate").get(0).strip();
+
+        DataSet originDataSet = dataSetMap.get(origDataSetName);
+        Transformation origin = new Transformation(originDataSet);
+        Random random = new Random();
+        Transformation newData;
+        try {
+            switch (method) {
+                case "Reservoir":
+                    newData = origin.sampleReservoir(Integer.parseInt(amount), random);
+                    break;
+                case "Stratified":
+                    if (params.get("Stratify By").isEmpty())
+                        throw new IllegalArgumentException("Select The Column To Stratify By");
+                    newData = origin.sampleStratified(params.get("Stratify By").get(0), Integer.parseInt(amount), random);
+                    break;
+                case "Bernoulli":
+                    newData = origin.sampleBernoulli(Double.parseDouble(amount), random);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown Sampling Method");
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid Sample Size / Rate");
+        }
+
+        DataSet newDataSet = newData.toDataSet();
+        putDataSet(newDataSetName, newDataSet);
+        listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
+    }
+
+    /**
+     * Return a list of UserInputConfig specific to computed column.
+     *
+     * @param dataSetName name of dataSet to add the computed column to.
+     * @return a list of UserInputConfig specific to computed column.
+     */
+    public List<UserInputConfig> getComputedColumnConfigs(String dataSetName) {
+        DataSet dataSet = dataSetMap.get(dataSetName);
+        if (dataSet == null)
+            throw new IllegalArgumentException("DataSet does not exist");
+        List<UserInputConfig> configList = new ArrayList<>();
+        configList.add(new UserInputConfig("Expression", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        configList.add(new UserInputConfig("New Label", UserInputType.TEXT_FIELD, new ArrayList<>()));
+        return configList;
+    }
+
+    /**
+     * Evaluate an expression over the numeric columns of the dataSet (e.g. "NY.GDP / SP.POP") and create a
+     * new DataSet with the result appended as a new DOUBLE column. See {@link Expression} for the syntax.
+     *
+     * @param origDataSetName name of original dataSet.
+     * @param newDataSetName name of new dataSet.
+     * @param params parameter mapping from configuration name to a list of values that user specifies.
+     */
+    public void addComputedColumn(String origDataSetName, String newDataSetName, Map<String, List<String>> params) {
+        String source = params.get("Expression").get(0);
+        if (source == null || source.isBlank())
+            throw new IllegalArgumentException("Empty Expression");
+        String newLabel = params.get("New Label").get(0);
+        if (newLabel == null || newLabel.isBlank())
+            throw new IllegalArgumentException("Empty Label");
+        checkNewDataSetName(newDataSetName);
+
+        DataSet originDataSet = dataSetMap.get(origDataSetName);
+        Expression expression = Expression.compile(source, originDataSet.getLabels(), originDataSet.getDataTypes());
+        double[] values = expression.evaluate(originDataSet);
+        List<Double> column = new ArrayList<>(values.length);
+        for (double value : values) {
+            column.add(value);
+        }
+
+        DataSet newDataSet = new DataSet(originDataSet, newLabel.strip(), DataType.DOUBLE, column);
+        putDataSet(newDataSetName, newDataSet);
+        listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
+    }
+
+    /**
+     * Return a list of UserInputConfig specific to geometry metrics.
+     *
+     * @param dataSetName name of dataSet to measure.
+     * @return a list of UserInputConfig specific to geometry metrics.
+     */
+    public List<UserInputConfig> getGeometryMetricConfigs(String dataSetName) {
+        DataSet dataSet = dataSetMap.get(dataSetName);
+        if (dataSet == null)
+            throw new IllegalArgumentException("DataSet does not exist");
+        List<UserInputConfig> configList = new ArrayList<>();
+        configList.add(new UserInputConfig("Contour Column", SINGLE_SELECTION, dataSet.labelsOfType(DataType.POLYGONS)));
+        configList.add(new UserInputConfig("Metrics", UserInputType.MULTI_SELECTION, GeometryMetric.displayNames()));
+        configList.add(new UserInputConfig("Geometry", SINGLE_SELECTION, GEOMETRY_MODES));
+        return configList;
+    }
+
+    /**
+     * Compute the area, perimeter or centroid of every row of a POLYGONS column and create a new DataSet
+     * with each metric appended as a new DOUBLE column. Geodesic metrics are in kilometers on the sphere and
+     * planar ones in the units of the coordinates.
+     *
+     * @param origDataSetName name of original dataSet.
+     * @param newDataSetName name of new dataSet.
+     * @param params parameter mapping from configuration name to a list of values that user specifies.
+     */
+    public void geometryMetrics(String origDataSetName, String newDataSetName, Map<String, List<String>> params) {
+        if (params.get("Contour Column").isEmpty())
+            throw new IllegalArgumentException("Select The Contour Column");
+        if (params.get("Metrics").isEmpty())
+            throw new IllegalArgumentException("Select At Least One Metric");
+        checkNewDataSetName(newDataSetName);
+        boolean geodesic = params.get("Geometry").isEmpty() || params.get("Geometry").get(0).equals(GEOMETRY_MODES.get(0));
+        List<GeometryMetric> metrics = new ArrayList<>();
+        for (String metric : params.get("Metrics"))
+            metrics.add(GeometryMetric.fromDisplayName(metric));
+
+        DataSet originDataSet = dataSetMap.get(origDataSetName);
+        Transformation origin = new Transformation(originDataSet);
+        Transformation newData = origin.geometryMetrics(params.get("Contour Column").get(0), metrics, geodesic);
+
+        DataSet newDataSet = newData.toDataSet();
+        putDataSet(newDataSetName, newDataSet);
         listeners.forEach(l -> l.dataSetLoaded(newDataSetName));
     }
 }
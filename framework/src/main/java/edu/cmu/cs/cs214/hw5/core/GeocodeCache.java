@@ -0,0 +1,314 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import org.apache.commons.lang3.tuple.Triple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * GeocodeCache is a persistent cache of geoCoding results that survives restarts of the framework. Results
+ * are stored in an append-only log file, and an in-memory index maps every key to the offset of its latest
+ * record in the file, so that a lookup reads a single record. The index is rebuilt by scanning the log when
+ * the cache is opened, and the log is compacted at that time if most of its records have been superseded.
+ *
+ * Each record consists of its length, the key, the longitude and latitude and the polygons encoded with
+ * {@link GeometryCodec}, rounded to 7 decimals like the coordinates returned by Nominatim. Only found
+ * addresses are stored. A cache file of an older version is discarded when it is opened.
+ */
+class GeocodeCache implements AutoCloseable {
+
+    /**
+     * Magic number at the beginning of the log file ("GEOC").
+     */
+    private static final int MAGIC = 0x47454f43;
+
+    /**
+     * Version of the record format.
+     */
+    private static final int VERSION = 3;
+
+    /**
+     * Size of the file header in bytes.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * System property overriding the directory of the default cache file.
+     */
+    private static final String CACHE_DIR_PROPERTY = "geodata.cache.dir";
+
+    /**
+     * Name of the default cache file.
+     */
+    private static final String CACHE_FILE_NAME = "geocode-cache.log";
+
+    /**
+     * Path of the log file.
+     */
+    private final Path path;
+
+    /**
+     * Map from key to the offset of its latest record in the log file.
+     */
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+
+    /**
+     * Log file. Reads and appends are synchronized on this cache.
+     */
+    private RandomAccessFile file;
+
+    /**
+     * Open the cache stored in the given file, creating the file if it doesn't exist.
+     *
+     * @param path path of the log file.
+     * @throws IOException if the file cannot be read or created.
+     */
+    GeocodeCache(Path path) throws IOException {
+        this.path = path;
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        file = new RandomAccessFile(path.toFile(), "rw");
+        int records = load();
+        if (records > 2 * index.size() + 1000)
+            compact();
+    }
+
+    /**
+     * Return the default location of the cache file, which is "~/.geodata/geocode-cache.log" unless the
+     * directory is overridden by the "geodata.cache.dir" system property.
+     *
+     * @return default location of the cache file.
+     */
+    static Path defaultPath() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.isBlank())
+            return Paths.get(System.getProperty("user.home"), ".geodata", CACHE_FILE_NAME);
+        return Paths.get(dir, CACHE_FILE_NAME);
+    }
+
+    /**
+     * Return the cache key of a structured address queried with the given polygon threshold.
+     *
+     * @param normalizer normalizer of the address.
+     * @param address structured address.
+     * @param threshold polygon threshold of the query.
+     * @return the cache key.
+     */
+    static String key(AddressNormalizer normalizer, GeoAddress address, String threshold) {
+        return "A|" + normalizer.key(address) + "|" + threshold;
+    }
+
+    /**
+     * Return the cache key of a free-form address queried with the given polygon threshold.
+     *
+     * @param normalizer normalizer of the address.
+     * @param address free-form address.
+     * @param threshold polygon threshold of the query.
+     * @return the cache key.
+     */
+    static String key(AddressNormalizer normalizer, String address, String threshold) {
+        return "Q|" + normalizer.key(address) + "|" + threshold;
+    }
+
+    /**
+     * Return the cached result of the given key.
+     *
+     * @param key cache key.
+     * @return a Triple of longitude, latitude and polygons, or null if the key is not cached.
+     */
+    Triple<Double, Double, MultiPolygon> get(String key) {
+        Long offset = index.get(key);
+        if (offset == null)
+            return null;
+        byte[] record;
+        try {
+            synchronized (this) {
+                file.seek(offset);
+                record = new byte[file.readInt()];
+                file.readFully(record);
+            }
+            return decode(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Append the result of the given key to the log and index it.
+     *
+     * @param key cache key.
+     * @param result a Triple of longitude, latitude and polygons.
+     */
+    void put(String key, Triple<Double, Double, MultiPolygon> result) {
+        byte[] record = encode(key, result);
+        try {
+            synchronized (this) {
+                long offset = file.length();
+                file.seek(offset);
+                file.writeInt(record.length);
+                file.write(record);
+                index.put(key, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Return the number of cached keys.
+     *
+     * @return number of cached keys.
+     */
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Close the log file.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Scan the log file and build the index. A record cut off at the end of the file (e.g. by a crash
+     * during an append) is truncated, and a file of an older version is emptied.
+     *
+     * @return number of records in the log file.
+     * @throws IOException if the file cannot be read.
+     */
+    private int load() throws IOException {
+        long length = file.length();
+        if (length >= HEADER_SIZE) {
+            file.seek(0);
+            if (file.readInt() != MAGIC)
+                throw new IOException("Invalid Geocode Cache File: " + path);
+        }
+        if (length < HEADER_SIZE || file.readInt() != VERSION) {
+            file.setLength(0);
+            file.seek(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            return 0;
+        }
+        int records = 0;
+        long offset = HEADER_SIZE;
+        while (offset < length) {
+            try {
+                file.seek(offset);
+                int size = file.readInt();
+                if (size <= 0 || offset + 4 + size > length)
+                    break;
+                byte[] record = new byte[size];
+                file.readFully(record);
+                index.put(decodeKey(record), offset);
+                offset += 4 + size;
+                records++;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        if (offset < length)
+            file.setLength(offset);
+        return records;
+    }
+
+    /**
+     * Rewrite the log file so that it only contains the latest record of every key.
+     *
+     * @throws IOException if the file cannot be rewritten.
+     */
+    private synchronized void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Map<String, Long> newIndex = new ConcurrentHashMap<>();
+        try (RandomAccessFile out = new RandomAccessFile(tmp.toFile(), "rw")) {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                file.seek(entry.getValue());
+                byte[] record = new byte[file.readInt()];
+                file.readFully(record);
+                newIndex.put(entry.getKey(), out.getFilePointer());
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        }
+        file.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        file = new RandomAccessFile(path.toFile(), "rw");
+        index.clear();
+        index.putAll(newIndex);
+    }
+
+    /**
+     * Encode a key and its result into a record.
+     *
+     * @param key cache key.
+     * @param result a Triple of longitude, latitude and polygons.
+     * @return the encoded record.
+     */
+    private static byte[] encode(String key, Triple<Double, Double, MultiPolygon> result) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(key);
+            out.writeDouble(result.getLeft());
+            out.writeDouble(result.getMiddle());
+            out.write(GeometryCodec.encode(result.getRight()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode the key of a record.
+     *
+     * @param record the encoded record.
+     * @return the cache key.
+     * @throws IOException if the record is malformed.
+     */
+    private static String decodeKey(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            return in.readUTF();
+        }
+    }
+
+    /**
+     * Decode the result of a record.
+     *
+     * @param record the encoded record.
+     * @return a Triple of longitude, latitude and polygons.
+     * @throws IOException if the record is malformed.
+     */
+    private static Triple<Double, Double, MultiPolygon> decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            in.readUTF();
+            double lon = in.readDouble();
+            double lat = in.readDouble();
+            int offset = record.length - in.available();
+            try {
+                MultiPolygon polygons = GeometryCodec.decode(ByteBuffer.wrap(record, offset, record.length - offset));
+                return Triple.of(lon, lat, polygons);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid Geocode Cache Record", e);
+            }
+        }
+    }
+}
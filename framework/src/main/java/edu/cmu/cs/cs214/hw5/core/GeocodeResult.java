@@ -0,0 +1,158 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import org.apache.commons.lang3.tuple.Triple;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+/**
+ * Result of geoCoding an address by a {@link GeocoderBackend}: the coordinates of the place and its
+ * boundary, or nothing if the address is not found. This class is immutable.
+ */
+public final class GeocodeResult {
+
+    /**
+     * Result of an address that is not found.
+     */
+    private static final GeocodeResult NOT_FOUND = new GeocodeResult(null, null, null);
+
+    /**
+     * Longitude of the place, null if not found.
+     */
+    private final Double longitude;
+
+    /**
+     * Latitude of the place, null if not found.
+     */
+    private final Double latitude;
+
+    /**
+     * Boundary of the place, null if not found.
+     */
+    private final MultiPolygon polygons;
+
+    /**
+     * Initialize a result.
+     *
+     * @param longitude longitude of the place, null if not found.
+     * @param latitude latitude of the place, null if not found.
+     * @param polygons boundary of the place, null if not found.
+     */
+    private GeocodeResult(Double longitude, Double latitude, MultiPolygon polygons) {
+        this.longitude = longitude;
+        this.latitude = latitude;
+        this.polygons = polygons;
+    }
+
+    /**
+     * Return the result of an address that is not found.
+     *
+     * @return the result of an address that is not found.
+     */
+    public static GeocodeResult notFound() {
+        return NOT_FOUND;
+    }
+
+    /**
+     * Return the result of a found place.
+     *
+     * @param longitude longitude of the place.
+     * @param latitude latitude of the place.
+     * @param polygons polygons of the boundary of the place, each a list of points, or an empty list if the
+     *                 place has no boundary.
+     * @return the result of the place.
+     */
+    public static GeocodeResult of(double longitude, double latitude, List<List<Point2D>> polygons) {
+        if (polygons.isEmpty())
+            return of(longitude, latitude, new MultiPolygon(new double[] {longitude, latitude}, new int[] {0, 1}));
+        return of(longitude, latitude, new MultiPolygon(polygons));
+    }
+
+    /**
+     * Return the result of a found place.
+     *
+     * @param longitude longitude of the place.
+     * @param latitude latitude of the place.
+     * @param polygons boundary of the place.
+     * @return the result of the place.
+     */
+    static GeocodeResult of(double longitude, double latitude, MultiPolygon polygons) {
+        return new GeocodeResult(longitude, latitude, polygons);
+    }
+
+    /**
+     * Return the result of the given Triple of longitude, latitude and polygons.
+     *
+     * @param triple a Triple of longitude, latitude and polygons, all null if not found.
+     * @return the result of the Triple.
+     */
+    static GeocodeResult of(Triple<Double, Double, MultiPolygon> triple) {
+        if (triple.getLeft() == null)
+            return NOT_FOUND;
+        return new GeocodeResult(triple.getLeft(), triple.getMiddle(), triple.getRight());
+    }
+
+    /**
+     * Check if the address is found.
+     *
+     * @return true if the address is found and false otherwise.
+     */
+    public boolean isFound() {
+        return longitude != null;
+    }
+
+    /**
+     * Return the longitude of the place.
+     *
+     * @return longitude of the place.
+     * @throws IllegalStateException if the address is not found.
+     */
+    public double getLongitude() {
+        if (!isFound())
+            throw new IllegalStateException("Address Not Found");
+        return longitude;
+    }
+
+    /**
+     * Return the latitude of the place.
+     *
+     * @return latitude of the place.
+     * @throws IllegalStateException if the address is not found.
+     */
+    public double getLatitude() {
+        if (!isFound())
+            throw new IllegalStateException("Address Not Found");
+        return latitude;
+    }
+
+    /**
+     * Return the boundary of the place.
+     *
+     * @return boundary of the place.
+     * @throws IllegalStateException if the address is not found.
+     */
+    public MultiPolygon getPolygons() {
+        if (!isFound())
+            throw new IllegalStateException("Address Not Found");
+        return polygons;
+    }
+
+    /**
+     * Return this result as a Triple of longitude, latitude and polygons, all null if not found.
+     *
+     * @return a Triple of longitude, latitude and polygons.
+     */
+    Triple<Double, Double, MultiPolygon> toTriple() {
+        return Triple.of(longitude, latitude, polygons);
+    }
+
+    /**
+     * Return a string representing this result.
+     *
+     * @return a string representing this result.
+     */
+    @Override
+    public String toString() {
+        return isFound() ? toTriple().toString() : "Not Found";
+    }
+}
@@ -0,0 +1,133 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface implemented by concrete geoCoding backends, which turn addresses into coordinates and
+ * boundaries. Backends are listed in META-INF/services and loaded like data plugins. The framework takes
+ * care of removing duplicate addresses, caching the results, reporting progress and deriving coarser
+ * polygon thresholds, so a backend only needs to geoCode the batches of distinct addresses it is given.
+ * At most {@link #getMaxConcurrentBatches()} batches of at most {@link #getMaxBatchSize()} addresses are
+ * given to a backend at a time.
+ */
+public interface GeocoderBackend {
+
+    /**
+     * Key of the country in a structured address.
+     */
+    String COUNTRY = "country";
+
+    /**
+     * Key of the state in a structured address.
+     */
+    String STATE = "state";
+
+    /**
+     * Key of the city in a structured address.
+     */
+    String CITY = "city";
+
+    /**
+     * Key of the county in a structured address.
+     */
+    String COUNTY = "county";
+
+    /**
+     * Key of the street in a structured address.
+     */
+    String STREET = "street";
+
+    /**
+     * Fetch the name of the backend, which is shown as a choice of geoCoder.
+     *
+     * @return name of the backend.
+     */
+    String getName();
+
+    /**
+     * Check if the backend can be used, e.g. because it is configured. Unavailable backends are not
+     * registered into the framework.
+     *
+     * @return true if the backend can be used and false otherwise.
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * GeoCode a batch of free-form addresses without blocking. The returned future completes with one
+     * result per address, in the same order, using {@link GeocodeResult#notFound()} for the addresses that
+     * are not found. If the future fails, all addresses of the batch are reported as unresolved.
+     *
+     * @param addresses free-form addresses.
+     * @param polygonThreshold tolerance in degrees the boundaries may be simplified with.
+     * @return a future of the results of the addresses.
+     */
+    CompletableFuture<List<GeocodeResult>> geocode(List<String> addresses, String polygonThreshold);
+
+    /**
+     * GeoCode a batch of structured addresses without blocking. Every address maps some of the keys
+     * {@link #COUNTRY}, {@link #STATE}, {@link #CITY}, {@link #COUNTY} and {@link #STREET} to their value.
+     * By default, the values are joined from the most to the least general and geoCoded as free-form
+     * addresses.
+     *
+     * @param addresses structured addresses.
+     * @param polygonThreshold tolerance in degrees the boundaries may be simplified with.
+     * @return a future of the results of the addresses.
+     */
+    default CompletableFuture<List<GeocodeResult>> geocodeStructured(List<Map<String, String>> addresses,
+                                                                     String polygonThreshold) {
+        List<String> freeForm = new ArrayList<>(addresses.size());
+        for (Map<String, String> address : addresses) {
+            List<String> parts = new ArrayList<>();
+            for (String key : new String[] {COUNTRY, STATE, CITY, COUNTY, STREET}) {
+                if (address.get(key) != null)
+                    parts.add(address.get(key));
+            }
+            freeForm.add(String.join(", ", parts));
+        }
+        return geocode(freeForm, polygonThreshold);
+    }
+
+    /**
+     * Check if the results of the backend are kept in the persistent geoCoding cache, so that they are reused
+     * after a restart. Backends whose results shouldn't outlive the session, e.g. simulated ones used for
+     * benchmarks, return false.
+     *
+     * @return true if the results are persisted and false otherwise.
+     */
+    default boolean isPersistentlyCached() {
+        return true;
+    }
+
+    /**
+     * Return the maximum number of addresses in a batch.
+     *
+     * @return maximum number of addresses in a batch.
+     */
+    default int getMaxBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Return the maximum number of batches being geoCoded at a time.
+     *
+     * @return maximum number of batches in flight.
+     */
+    default int getMaxConcurrentBatches() {
+        return 1;
+    }
+
+    /**
+     * Return the number of requests sent by the backend so far, which is used to report the request rate.
+     * Backends that don't count their requests return -1, and the number of batches is used instead.
+     *
+     * @return number of requests sent, or -1 if unknown.
+     */
+    default long getRequestCount() {
+        return -1;
+    }
+}
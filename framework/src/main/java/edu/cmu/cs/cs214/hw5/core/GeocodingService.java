@@ -0,0 +1,599 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import org.apache.commons.lang3.tuple.Triple;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * GeocodingService geoCodes batches of addresses with a {@link GeocoderBackend}. It removes duplicate
+ * addresses with an {@link AddressNormalizer}, looks the addresses up in the in-memory and persistent
+ * caches, hands the remaining ones to the backend in bounded batches, reports progress, and derives
+ * coarser polygon thresholds locally from the boundaries fetched at the finest one. Batch queries may run
+ * concurrently, e.g. when several dataSets are geoCoded at the same time, and an address being queried by
+ * one of them is not queried again by the others, which wait for its pending result instead.
+ */
+class GeocodingService {
+
+    /**
+     * Default maximum number of addresses kept in the in-memory cache.
+     */
+    static final int DEFAULT_MEMORY_CACHE_CAPACITY = 10000;
+
+    /**
+     * Default time to live of a found address in the in-memory cache.
+     */
+    static final Duration DEFAULT_HIT_TTL = Duration.ofHours(24);
+
+    /**
+     * Default time to live of an unfound address in the in-memory cache.
+     */
+    static final Duration DEFAULT_MISS_TTL = Duration.ofMinutes(10);
+
+    /**
+     * Polygon threshold of the geometries fetched by batch queries. Coarser thresholds are derived locally
+     * from the geometries at this threshold, so that changing threshold doesn't query again.
+     */
+    static final String FINEST_POLYGON_THRESHOLD = "0.05";
+
+    /**
+     * Interval in milliseconds at which the cancellation of a batch query is checked while it waits for
+     * addresses queried by other batch queries.
+     */
+    private static final long SHARED_POLL_MILLIS = 100;
+
+    /**
+     * Backend geoCoding the addresses.
+     */
+    private final GeocoderBackend backend;
+
+    private final boolean printStatus;
+
+    /**
+     * Persistent cache of found addresses, or null if results are not persisted.
+     */
+    private final GeocodeCache cache;
+
+    /**
+     * Prefix of the cache keys, which keeps the results of different backends apart.
+     */
+    private final String keyPrefix;
+
+    /**
+     * In-memory cache of found and unfound addresses of this session.
+     */
+    private final ExpiringLruCache<String, Triple<Double, Double, MultiPolygon>> memoryCache;
+
+    /**
+     * Time to live of a found address in the in-memory cache in nanoseconds.
+     */
+    private final long hitTtlNanos;
+
+    /**
+     * Time to live of an unfound address in the in-memory cache in nanoseconds.
+     */
+    private final long missTtlNanos;
+
+    /**
+     * Normalizer giving the keys used to detect duplicate addresses and to look up the caches.
+     */
+    private final AddressNormalizer addressNormalizer;
+
+    /**
+     * Number of batches handed to the backend, used as request count if the backend doesn't count them.
+     */
+    private final AtomicLong batchesSent = new AtomicLong();
+
+    /**
+     * Map from the key of an address being queried to its pending result, shared by concurrent batch
+     * queries so that every address is queried once at a time.
+     */
+    private final Map<String, CompletableFuture<GeocodeResult>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Number of addresses whose pending result was shared with another batch query.
+     */
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Initialize a service with the default configuration of the in-memory cache.
+     *
+     * @param backend backend geoCoding the addresses.
+     * @param printStatus print status.
+     * @param cache persistent cache of found addresses, or null if results are not persisted.
+     * @param keyPrefix prefix of the cache keys of the backend.
+     * @param addressNormalizer normalizer giving the keys of the addresses.
+     */
+    GeocodingService(GeocoderBackend backend, boolean printStatus, GeocodeCache cache, String keyPrefix,
+                     AddressNormalizer addressNormalizer) {
+        this(backend, printStatus, cache, keyPrefix, addressNormalizer, DEFAULT_MEMORY_CACHE_CAPACITY,
+                DEFAULT_HIT_TTL, DEFAULT_MISS_TTL);
+    }
+
+    /**
+     * Initialize a service with the given configuration of the in-memory cache.
+     *
+     * @param backend backend geoCoding the addresses.
+     * @param printStatus print status.
+     * @param cache persistent cache of found addresses, or null if results are not persisted.
+     * @param keyPrefix prefix of the cache keys of the backend.
+     * @param addressNormalizer normalizer giving the keys of the addresses.
+     * @param memoryCacheCapacity maximum number of addresses kept in the in-memory cache.
+     * @param hitTtl time to live of a found address in the in-memory cache.
+     * @param missTtl time to live of an unfound address in the in-memory cache, zero to not cache them.
+     */
+    GeocodingService(GeocoderBackend backend, boolean printStatus, GeocodeCache cache, String keyPrefix,
+                     AddressNormalizer addressNormalizer, int memoryCacheCapacity, Duration hitTtl,
+                     Duration missTtl) {
+        if (backend.getMaxBatchSize() < 1 || backend.getMaxConcurrentBatches() < 1)
+            throw new IllegalArgumentException("Invalid Batch Configuration Of " + backend.getName());
+        this.backend = backend;
+        this.printStatus = printStatus;
+        this.cache = cache;
+        this.keyPrefix = keyPrefix;
+        this.addressNormalizer = addressNormalizer;
+        this.memoryCache = new ExpiringLruCache<>(memoryCacheCapacity);
+        this.hitTtlNanos = hitTtl.toNanos();
+        this.missTtlNanos = missTtl.toNanos();
+    }
+
+    /**
+     * Return the name of the backend.
+     *
+     * @return name of the backend.
+     */
+    String getName() {
+        return backend.getName();
+    }
+
+    /**
+     * Return the normalizer giving the keys of the addresses.
+     *
+     * @return the address normalizer.
+     */
+    AddressNormalizer addressNormalizer() {
+        return addressNormalizer;
+    }
+
+    /**
+     * Return a summary of the hit rate of the in-memory cache, and of the addresses whose query was shared
+     * with a concurrent batch query.
+     *
+     * @return a summary of the hit rate of the in-memory cache.
+     */
+    String memoryCacheStats() {
+        return String.format("%d hit(s), %d miss(es), %.1f%% hit rate, %d cached address(es), %d shared with "
+                        + "concurrent queries", memoryCache.hitCount(), memoryCache.missCount(),
+                memoryCache.hitRate() * 100, memoryCache.size(), sharedCount.get());
+    }
+
+    /**
+     * Batch Query given an array of GeoAddress.
+     *
+     * @param addressArray an array of GeoAddress used for batch query.
+     * @param unfounded a set to stored unfound address
+     * @param unresolved a set to store addresses that could not be queried because of failures or cancellation
+     * @param threshold polygon threshold of the boundaries.
+     * @param progress progress of the batch, which also cancels it.
+     * @return a list of Triple of longitude, latitude and polygons.
+     */
+    List<Triple<Double, Double, MultiPolygon>> batchQuery(GeoAddress[] addressArray, Set<String> unfounded,
+                                                          Set<String> unresolved,
+                                                          String threshold, GeoCodeProgress progress) {
+        String fetched = fetchedThreshold(threshold);
+        return simplify(batchQuery(addressArray, unfounded, unresolved, progress,
+                a -> keyPrefix + GeocodeCache.key(addressNormalizer, a, fetched),
+                batch -> backend.geocodeStructured(batch.stream().map(GeocodingService::structured)
+                        .collect(Collectors.toList()), fetched)),
+                threshold, fetched);
+    }
+
+    /**
+     * Batch Query given a string representing the address.
+     *
+     * @param addressArray a string representing the address used for batch query.
+     * @param unfounded a set to stored unfound address
+     * @param unresolved a set to store addresses that could not be queried because of failures or cancellation
+     * @param threshold polygon threshold of the boundaries.
+     * @param progress progress of the batch, which also cancels it.
+     * @return a list of Triple of longitude, latitude and polygons.
+     */
+    List<Triple<Double, Double, MultiPolygon>> batchQuery(String[] addressArray, Set<String> unfounded,
+                                                          Set<String> unresolved,
+                                                          String threshold, GeoCodeProgress progress) {
+        String fetched = fetchedThreshold(threshold);
+        return simplify(batchQuery(addressArray, unfounded, unresolved, progress,
+                a -> keyPrefix + GeocodeCache.key(addressNormalizer, a, fetched),
+                batch -> backend.geocode(batch, fetched)),
+                threshold, fetched);
+    }
+
+    /**
+     * Return the structured form of a GeoAddress given to backends.
+     *
+     * @param address GeoAddress.
+     * @return map from the keys of {@link GeocoderBackend} to the non-empty values of the address.
+     */
+    private static Map<String, String> structured(GeoAddress address) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (address.getCountry() != null)
+            map.put(GeocoderBackend.COUNTRY, address.getCountry());
+        if (address.getState() != null)
+            map.put(GeocoderBackend.STATE, address.getState());
+        if (address.getCity() != null)
+            map.put(GeocoderBackend.CITY, address.getCity());
+        if (address.getCounty() != null)
+            map.put(GeocoderBackend.COUNTY, address.getCounty());
+        if (address.getStreet() != null)
+            map.put(GeocoderBackend.STREET, address.getStreet());
+        return map;
+    }
+
+    /**
+     * Batch Query given an array of addresses. Addresses of the same key are queried once, so that the
+     * different spellings of an address share a single query. Every distinct key is looked up in the
+     * in-memory cache, then in the persistent cache, and only the remaining ones are given to the backend
+     * and then added to the caches if found. Results read from the persistent cache are kept in the
+     * in-memory cache, so that the levels of detail derived from their polygons are kept as well. A batch
+     * that fails doesn't abort the query: its addresses are added to the unresolved set and their rows get
+     * no result, like unfound addresses. Once the query is cancelled, the batches in flight are finished and
+     * the remaining addresses are added to the unresolved set without being queried.
+     *
+     * <p>Addresses missing from the caches are claimed in the in-flight map before being queried. Addresses
+     * already claimed by a concurrent batch query are not queried again: their pending results are awaited
+     * after the own batches, and they are unresolved if the other query fails. Addresses released by a
+     * cancelled query are claimed again.</p>
+     *
+     * @param addressArray an array of addresses used for batch query.
+     * @param unfounded a set to stored unfound address
+     * @param unresolved a set to store addresses that could not be queried because of failures or cancellation
+     * @param progress progress of the batch, which also cancels it.
+     * @param cacheKey function returning the cache key of an address.
+     * @param query function starting the query of a batch of addresses.
+     * @param <T> type of address.
+     * @return a list of Triple of longitude, latitude and polygons.
+     */
+    private <T> List<Triple<Double, Double, MultiPolygon>> batchQuery(T[] addressArray, Set<String> unfounded,
+            Set<String> unresolved, GeoCodeProgress progress, Function<T, String> cacheKey,
+            Function<List<T>, CompletableFuture<List<GeocodeResult>>> query) {
+        Map<String, T> addresses = addressNormalizer.distinctByKey(addressArray, cacheKey);
+        Map<String, Triple<Double, Double, MultiPolygon>> res = new ConcurrentHashMap<>();
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+        progress.start(addresses.size(), () -> {
+            long requests = backend.getRequestCount();
+            return requests >= 0 ? requests : batchesSent.get();
+        });
+        Collection<String> keys = addresses.keySet();
+        boolean firstRound = true;
+        while (!keys.isEmpty()) {
+            List<String> misses = new ArrayList<>();
+            Map<String, CompletableFuture<GeocodeResult>> claimed = new ConcurrentHashMap<>();
+            Map<String, CompletableFuture<GeocodeResult>> shared = new LinkedHashMap<>();
+            for (String key : keys) {
+                Triple<Double, Double, MultiPolygon> cached = cached(key);
+                if (cached != null) {
+                    res.put(key, cached);
+                    continue;
+                }
+                CompletableFuture<GeocodeResult> pending = new CompletableFuture<>();
+                CompletableFuture<GeocodeResult> other = inFlight.putIfAbsent(key, pending);
+                if (other != null) {
+                    shared.put(key, other);
+                    continue;
+                }
+                // Another query may have completed the address between the lookup and the claim.
+                cached = memoryCache.peek(key);
+                if (cached != null) {
+                    inFlight.remove(key, pending);
+                    pending.complete(GeocodeResult.of(cached));
+                    res.put(key, cached);
+                    continue;
+                }
+                claimed.put(key, pending);
+                misses.add(key);
+            }
+            sharedCount.addAndGet(shared.size());
+            int cachedCount = keys.size() - misses.size() - shared.size();
+            if (printStatus && firstRound)
+                System.out.printf("Geocode cache: %d hit(s), %d miss(es), %d shared with concurrent queries%n",
+                        cachedCount, misses.size(), shared.size());
+            progress.addCached(cachedCount);
+
+            int batchSize = backend.getMaxBatchSize();
+            List<List<String>> batches = new ArrayList<>();
+            for (int i = 0; i < misses.size(); i += batchSize)
+                batches.add(misses.subList(i, Math.min(misses.size(), i + batchSize)));
+            try {
+                queryClaimed(batches, addresses, claimed, res, failed, progress, query);
+            } finally {
+                // Release the addresses left unqueried, e.g. after cancellation, so that no other query
+                // waits for them forever.
+                for (Map.Entry<String, CompletableFuture<GeocodeResult>> entry : claimed.entrySet()) {
+                    inFlight.remove(entry.getKey(), entry.getValue());
+                    entry.getValue().completeExceptionally(new CancellationException("Geocoding Cancelled"));
+                }
+            }
+            keys = awaitShared(shared, res, failed, progress);
+            firstRound = false;
+        }
+        if (printStatus && progress.isCancelled())
+            System.out.println("Geocoding cancelled: " + progress);
+        if (printStatus && !failed.isEmpty())
+            System.out.println(failed.size() + " address(es) unresolved because of failures");
+        if (printStatus) {
+            System.out.println("In-memory geocode cache: " + memoryCacheStats());
+            System.out.println("Address normalization: " + addressNormalizer.stats());
+        }
+        return Arrays.stream(addressArray).map(a -> {
+            String key = cacheKey.apply(a);
+            if (failed.contains(key)) {
+                unresolved.add(a.toString());
+                return null;
+            }
+            if (res.get(key).getLeft() == null) {
+                unfounded.add(a.toString());
+                return null;
+            }
+            return res.get(key);
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Look an address up in the in-memory cache, then in the persistent cache. Results read from the
+     * persistent cache are kept in the in-memory cache.
+     *
+     * @param key cache key of the address.
+     * @return the cached result, or null if the address is not cached.
+     */
+    private Triple<Double, Double, MultiPolygon> cached(String key) {
+        Triple<Double, Double, MultiPolygon> cached = memoryCache.get(key);
+        if (cached == null && cache != null) {
+            cached = cache.get(key);
+            if (cached != null)
+                memoryCache.put(key, cached, hitTtlNanos);
+        }
+        return cached;
+    }
+
+    /**
+     * Query the batches of addresses claimed by a batch query, and complete their pending results once
+     * they are cached, so that concurrent queries waiting for them find them in the cache afterwards.
+     *
+     * @param batches batches of keys of the claimed addresses.
+     * @param addresses map from key to address.
+     * @param claimed map from the key of a claimed address to its pending result, from which completed
+     *                addresses are removed.
+     * @param res map to which the results are added by key.
+     * @param failed set to which the keys of the failed addresses are added.
+     * @param progress progress of the batch query, which also cancels it.
+     * @param query function starting the query of a batch of addresses.
+     * @param <T> type of address.
+     */
+    private <T> void queryClaimed(List<List<String>> batches, Map<String, T> addresses,
+                                  Map<String, CompletableFuture<GeocodeResult>> claimed,
+                                  Map<String, Triple<Double, Double, MultiPolygon>> res, Set<String> failed,
+                                  GeoCodeProgress progress,
+                                  Function<List<T>, CompletableFuture<List<GeocodeResult>>> query) {
+        join(forEachBounded(batches, backend.getMaxConcurrentBatches(), batch -> {
+            if (progress.isCancelled()) {
+                failed.addAll(batch);
+                return CompletableFuture.completedFuture(null);
+            }
+            batchesSent.incrementAndGet();
+            CompletableFuture<List<GeocodeResult>> future;
+            try {
+                future = query.apply(batch.stream().map(addresses::get).collect(Collectors.toList()));
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            return future.handle((results, e) -> {
+                if (e != null || results == null || results.size() != batch.size()) {
+                    if (printStatus)
+                        System.out.println("Geocoding failed: " + (e != null ? e : "invalid number of results"));
+                    failed.addAll(batch);
+                    for (String key : batch) {
+                        progress.addFailed();
+                        CompletableFuture<GeocodeResult> pending = claimed.remove(key);
+                        inFlight.remove(key, pending);
+                        pending.completeExceptionally(e != null ? e
+                                : new IllegalStateException("Invalid Number Of Results"));
+                    }
+                    return null;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    String key = batch.get(i);
+                    GeocodeResult result = results.get(i) == null ? GeocodeResult.notFound() : results.get(i);
+                    memoryCache.put(key, result.toTriple(), result.isFound() ? hitTtlNanos : missTtlNanos);
+                    if (cache != null && result.isFound())
+                        cache.put(key, result.toTriple());
+                    res.put(key, result.toTriple());
+                    progress.addCompleted();
+                    CompletableFuture<GeocodeResult> pending = claimed.remove(key);
+                    inFlight.remove(key, pending);
+                    pending.complete(result);
+                }
+                return null;
+            });
+        }));
+    }
+
+    /**
+     * Wait for the addresses queried by concurrent batch queries. Waiting stops once the batch query is
+     * cancelled, and the addresses still pending are then unresolved. Addresses released unqueried because
+     * the other query was cancelled are returned to be claimed again, unless this query is cancelled too.
+     *
+     * @param shared map from the key of an address to the pending result of the query querying it.
+     * @param res map to which the results are added by key.
+     * @param failed set to which the keys of the failed addresses are added.
+     * @param progress progress of the batch query, which also cancels it.
+     * @return keys of the addresses to be claimed again.
+     */
+    private List<String> awaitShared(Map<String, CompletableFuture<GeocodeResult>> shared,
+                             Map<String, Triple<Double, Double, MultiPolygon>> res, Set<String> failed,
+                             GeoCodeProgress progress) {
+        CompletableFuture<Void> all = CompletableFuture.allOf(shared.values().toArray(new CompletableFuture<?>[0]));
+        while (!all.isDone() && !progress.isCancelled()) {
+            try {
+                all.get(SHARED_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // Keep waiting, the failed addresses are sorted out below.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<String> released = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<GeocodeResult>> entry : shared.entrySet()) {
+            CompletableFuture<GeocodeResult> pending = entry.getValue();
+            if (pending.isDone() && !pending.isCompletedExceptionally()) {
+                res.put(entry.getKey(), pending.join().toTriple());
+                progress.addCompleted();
+            } else if (pending.isCancelled() && !progress.isCancelled()) {
+                released.add(entry.getKey());
+            } else {
+                failed.add(entry.getKey());
+                progress.addFailed();
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Return the polygon threshold to fetch geometries at for the given threshold, which is the finest
+     * threshold unless an even finer one is asked for.
+     *
+     * @param threshold polygon threshold asked for.
+     * @return polygon threshold to fetch geometries at.
+     */
+    private static String fetchedThreshold(String threshold) {
+        try {
+            if (Double.parseDouble(threshold) < Double.parseDouble(FINEST_POLYGON_THRESHOLD))
+                return threshold;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid Polygon Threshold");
+        }
+        return FINEST_POLYGON_THRESHOLD;
+    }
+
+    /**
+     * Derive the polygons of the given threshold from results fetched at a finer threshold. Levels are
+     * cached by the fetched MultiPolygons, which are shared through the in-memory cache, so switching
+     * between thresholds only costs the first simplification of every level.
+     *
+     * @param results results fetched at the fetched threshold, null for rows without result.
+     * @param threshold polygon threshold asked for.
+     * @param fetched polygon threshold the results were fetched at.
+     * @return results with polygons of the given threshold.
+     */
+    private static List<Triple<Double, Double, MultiPolygon>> simplify(List<Triple<Double, Double, MultiPolygon>> results,
+                                                                       String threshold, String fetched) {
+        if (threshold.equals(fetched))
+            return results;
+        double tolerance = Double.parseDouble(threshold);
+        return results.stream().map(res -> res == null ? null
+                : Triple.of(res.getLeft(), res.getMiddle(), res.getRight().simplify(tolerance)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Wait for the result of a query, rethrowing the exception it failed with.
+     *
+     * @param future future of the query.
+     * @param <R> type of result.
+     * @return the result of the query.
+     */
+    static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalArgumentException(e.getCause());
+        }
+    }
+
+    /**
+     * Run a task for every item without blocking, with at most maxInFlight tasks running at a time. The
+     * returned future fails with the first failure of a task, after which no more tasks are started.
+     *
+     * @param items items to run the task for.
+     * @param maxInFlight maximum number of tasks running at a time.
+     * @param task function starting the task for an item.
+     * @param <T> type of item.
+     * @return a future completed once the tasks of all items are completed.
+     */
+    static <T> CompletableFuture<Void> forEachBounded(List<T> items, int maxInFlight,
+                                                      Function<T, CompletableFuture<?>> task) {
+        BoundedDispatch<T> dispatch = new BoundedDispatch<>(items, maxInFlight, task);
+        dispatch.drain();
+        return dispatch.done;
+    }
+
+    /**
+     * State of a run of {@link #forEachBounded}. Tasks are started by whichever thread completes a task,
+     * and a work-in-progress counter ensures that only one thread starts tasks at a time without recursion.
+     *
+     * @param <T> type of item.
+     */
+    private static final class BoundedDispatch<T> {
+        private final List<T> items;
+        private final int maxInFlight;
+        private final Function<T, CompletableFuture<?>> task;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private int next;
+
+        BoundedDispatch(List<T> items, int maxInFlight, Function<T, CompletableFuture<?>> task) {
+            this.items = items;
+            this.maxInFlight = maxInFlight;
+            this.task = task;
+            this.remaining = new AtomicInteger(items.size());
+            if (items.isEmpty())
+                done.complete(null);
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0)
+                return;
+            do {
+                while (!done.isDone() && next < items.size() && inFlight.get() < maxInFlight) {
+                    T item = items.get(next++);
+                    inFlight.incrementAndGet();
+                    CompletableFuture<?> future;
+                    try {
+                        future = task.apply(item);
+                    } catch (RuntimeException e) {
+                        future = CompletableFuture.failedFuture(e);
+                    }
+                    future.whenComplete((r, e) -> {
+                        inFlight.decrementAndGet();
+                        if (e != null)
+                            done.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                        else if (remaining.decrementAndGet() == 0)
+                            done.complete(null);
+                        drain();
+                    });
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * GeometryCodec encodes MultiPolygons into a compact binary form, to be stored in files such as the
+ * geoCoding cache or exchanged with other programs. An encoded MultiPolygon is:
+ * <ul>
+ *     <li>the version of the format (1 byte),</li>
+ *     <li>the number of decimals the coordinates are rounded to, or -1 for full precision (1 byte),</li>
+ *     <li>the number of polygons, then the number of points of every polygon (varints), and</li>
+ *     <li>the coordinates of all points in order, as x then y.</li>
+ * </ul>
+ * Rounded coordinates are stored as integers (e.g. 7 decimals, the precision of OpenStreetMap, store about a
+ * centimeter), each as the difference with the same coordinate of the previous point, zigzag-encoded so that
+ * small negative differences are small too, and written as varints: 7 bits per byte, the high bit telling
+ * if more bytes follow. Consecutive points of a boundary are close, so most coordinates take 1 to 3 bytes
+ * instead of 8. Full-precision coordinates are stored as 8-byte doubles.
+ *
+ * <p>Decoding reads the coordinates straight into the packed arrays of the MultiPolygon, without creating
+ * an object per point or per polygon.</p>
+ */
+public final class GeometryCodec {
+
+    /**
+     * Version of the format.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Number of decimals meaning that coordinates are stored at full precision.
+     */
+    public static final int FULL_PRECISION = -1;
+
+    /**
+     * Default number of decimals coordinates are rounded to, the precision of OpenStreetMap.
+     */
+    public static final int DEFAULT_DECIMALS = 7;
+
+    /**
+     * Largest number of decimals, so that rounded coordinates up to 180 fit in a long.
+     */
+    private static final int MAX_DECIMALS = 15;
+
+    /**
+     * GeometryCodec only has static methods.
+     */
+    private GeometryCodec() {
+    }
+
+    /**
+     * Encode a MultiPolygon with coordinates rounded to {@link #DEFAULT_DECIMALS} decimals.
+     *
+     * @param polygons MultiPolygon to encode.
+     * @return the encoded MultiPolygon.
+     */
+    public static byte[] encode(MultiPolygon polygons) {
+        return encode(polygons, DEFAULT_DECIMALS);
+    }
+
+    /**
+     * Encode a MultiPolygon with coordinates rounded to the given number of decimals.
+     *
+     * @param polygons MultiPolygon to encode.
+     * @param decimals number of decimals from 0 to 15, or {@link #FULL_PRECISION}.
+     * @return the encoded MultiPolygon.
+     */
+    public static byte[] encode(MultiPolygon polygons, int decimals) {
+        if (decimals != FULL_PRECISION && (decimals < 0 || decimals > MAX_DECIMALS))
+            throw new IllegalArgumentException("Invalid Precision");
+        int polygonCount = polygons.polygonCount();
+        int pointCount = polygons.pointCount();
+        int coordinateSize = decimals == FULL_PRECISION ? 2 * Double.BYTES : 2 * 3;
+        ByteBuffer out = ByteBuffer.allocate(2 + 5 * (polygonCount + 1) + coordinateSize * pointCount);
+        out.put(VERSION);
+        out.put((byte) decimals);
+        out = putVarint(out, polygonCount);
+        for (int p = 0; p < polygonCount; p++)
+            out = putVarint(out, polygons.polygonLength(p));
+
+        if (decimals == FULL_PRECISION) {
+            for (int i = 0; i < pointCount; i++) {
+                out.putDouble(polygons.x(i));
+                out.putDouble(polygons.y(i));
+            }
+        } else {
+            double scale = Math.pow(10, decimals);
+            long lastX = 0, lastY = 0;
+            for (int i = 0; i < pointCount; i++) {
+                long x = Math.round(polygons.x(i) * scale);
+                long y = Math.round(polygons.y(i) * scale);
+                out = putVarint(out, zigzag(x - lastX));
+                out = putVarint(out, zigzag(y - lastY));
+                lastX = x;
+                lastY = y;
+            }
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Decode a MultiPolygon.
+     *
+     * @param bytes the encoded MultiPolygon.
+     * @return the decoded MultiPolygon.
+     */
+    public static MultiPolygon decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decode a MultiPolygon from the position of a buffer, e.g. from a record of a file, and move the
+     * position of the buffer past it.
+     *
+     * @param in buffer positioned at the encoded MultiPolygon.
+     * @return the decoded MultiPolygon.
+     */
+    public static MultiPolygon decode(ByteBuffer in) {
+        try {
+            if (in.get() != VERSION)
+                throw new IllegalArgumentException("Unsupported Geometry Version");
+            int decimals = in.get();
+            if (decimals != FULL_PRECISION && (decimals < 0 || decimals > MAX_DECIMALS))
+                throw new IllegalArgumentException("Invalid Precision");
+            int polygonCount = (int) getVarint(in);
+            // Every polygon takes at least one byte, so a corrupted count fails before allocating.
+            if (polygonCount < 0 || polygonCount > in.remaining())
+                throw new IllegalArgumentException("Invalid Geometry");
+            int[] offsets = new int[polygonCount + 1];
+            for (int p = 0; p < polygonCount; p++) {
+                long end = offsets[p] + getVarint(in);
+                if (end > in.remaining())
+                    throw new IllegalArgumentException("Invalid Geometry");
+                offsets[p + 1] = (int) end;
+            }
+
+            double[] coordinates = new double[2 * offsets[polygonCount]];
+            if (decimals == FULL_PRECISION) {
+                for (int i = 0; i < coordinates.length; i++)
+                    coordinates[i] = in.getDouble();
+            } else {
+                double scale = Math.pow(10, decimals);
+                long x = 0, y = 0;
+                for (int i = 0; i < coordinates.length; i += 2) {
+                    x += unzigzag(getVarint(in));
+                    y += unzigzag(getVarint(in));
+                    coordinates[i] = x / scale;
+                    coordinates[i + 1] = y / scale;
+                }
+            }
+            return new MultiPolygon(coordinates, offsets);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Invalid Geometry", e);
+        }
+    }
+
+    /**
+     * Write a varint, growing the buffer if needed.
+     *
+     * @param out buffer to write to.
+     * @param value non-negative value, or a zigzag-encoded one.
+     * @return the buffer written to, which is a new one if the buffer was grown.
+     */
+    private static ByteBuffer putVarint(ByteBuffer out, long value) {
+        if (out.remaining() < 10)
+            out = ByteBuffer.allocate(2 * out.capacity() + 10).put(out.flip());
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+        return out;
+    }
+
+    /**
+     * Read a varint.
+     *
+     * @param in buffer to read from.
+     * @return the value read.
+     */
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Invalid Geometry");
+    }
+
+    /**
+     * Map a signed value to an unsigned one, small in magnitude values to small values.
+     *
+     * @param value signed value.
+     * @return zigzag-encoded value.
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Return the signed value of a zigzag-encoded one.
+     *
+     * @param value zigzag-encoded value.
+     * @return signed value.
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
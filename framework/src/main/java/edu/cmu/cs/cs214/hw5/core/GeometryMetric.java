@@ -0,0 +1,110 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * GeometryMetric enumerates the metrics of a POLYGONS column that can be appended as DOUBLE columns. Each
+ * metric is either geodesic, in kilometers on the sphere, or planar, in the units of the coordinates, and is
+ * computed once per MultiPolygon.
+ */
+enum GeometryMetric {
+    AREA("Area", " (km\u00b2)") {
+        @Override
+        double of(MultiPolygon polygons, boolean geodesic) {
+            return geodesic ? polygons.geodesicArea() : polygons.area();
+        }
+    },
+    PERIMETER("Perimeter", " (km)") {
+        @Override
+        double of(MultiPolygon polygons, boolean geodesic) {
+            return geodesic ? polygons.geodesicPerimeter() : polygons.perimeter();
+        }
+    },
+    CENTROID_LONGITUDE("Centroid Longitude", "") {
+        @Override
+        double of(MultiPolygon polygons, boolean geodesic) {
+            return geodesic ? polygons.geodesicCentroid().getX() : polygons.centroid().getX();
+        }
+    },
+    CENTROID_LATITUDE("Centroid Latitude", "") {
+        @Override
+        double of(MultiPolygon polygons, boolean geodesic) {
+            return geodesic ? polygons.geodesicCentroid().getY() : polygons.centroid().getY();
+        }
+    };
+
+    /**
+     * Name of the metric shown to the user.
+     */
+    private final String displayName;
+
+    /**
+     * Unit appended to the label of a geodesic metric.
+     */
+    private final String geodesicUnit;
+
+    /**
+     * Initialize a metric with its display name.
+     *
+     * @param displayName name of the metric shown to the user.
+     * @param geodesicUnit unit appended to the label of a geodesic metric.
+     */
+    GeometryMetric(String displayName, String geodesicUnit) {
+        this.displayName = displayName;
+        this.geodesicUnit = geodesicUnit;
+    }
+
+    /**
+     * Return the name of the metric shown to the user.
+     *
+     * @return name of the metric shown to the user.
+     */
+    String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Return the label of the column of this metric computed on the given column, e.g. "Contour Perimeter (km)".
+     *
+     * @param label label name of the POLYGONS column.
+     * @param geodesic whether the metric is geodesic or planar.
+     * @return label of the new column.
+     */
+    String label(String label, boolean geodesic) {
+        return label + " " + displayName + (geodesic ? geodesicUnit : "");
+    }
+
+    /**
+     * Return the metric of a MultiPolygon.
+     *
+     * @param polygons MultiPolygon to measure.
+     * @param geodesic whether the metric is geodesic or planar.
+     * @return the metric of the MultiPolygon.
+     */
+    abstract double of(MultiPolygon polygons, boolean geodesic);
+
+    /**
+     * Return the display names of all metrics.
+     *
+     * @return display names of all metrics.
+     */
+    static List<String> displayNames() {
+        return Arrays.stream(values()).map(GeometryMetric::getDisplayName).collect(Collectors.toList());
+    }
+
+    /**
+     * Return the metric with the given display name.
+     *
+     * @param displayName name of the metric shown to the user.
+     * @return the metric with the given display name.
+     */
+    static GeometryMetric fromDisplayName(String displayName) {
+        for (GeometryMetric metric : values()) {
+            if (metric.displayName.equals(displayName))
+                return metric;
+        }
+        throw new IllegalArgumentException("Unknown Geometry Metric");
+    }
+}
@@ -0,0 +1,111 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GeometryStore interns the MultiPolygons of the framework, so that a boundary used by several dataSets
+ * (e.g. the one of a country in a dataSet and in all the dataSets derived from it) is kept in memory once.
+ * MultiPolygons are interned by content, whichever geoCoder or plugin produced them, and every interned
+ * MultiPolygon is reference counted: it is dropped from the store once the last dataSet using it releases
+ * it. Interning the canonical MultiPolygon again costs no comparison of coordinates, since its content hash
+ * is cached and it is found by identity. This class is thread safe.
+ */
+final class GeometryStore {
+
+    /**
+     * Map from the content of a MultiPolygon to its canonical instance and reference count.
+     */
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    /**
+     * Number of MultiPolygons acquired that were replaced by an equal canonical one.
+     */
+    private long deduplicated;
+
+    /**
+     * Return the canonical MultiPolygon equal to the given one, and add a reference to it. The given
+     * MultiPolygon becomes the canonical one if no equal MultiPolygon is stored.
+     *
+     * @param geometry MultiPolygon to intern.
+     * @return the canonical MultiPolygon.
+     */
+    synchronized MultiPolygon acquire(MultiPolygon geometry) {
+        Entry entry = entries.computeIfAbsent(new Key(geometry), k -> new Entry(geometry));
+        if (entry.geometry != geometry)
+            deduplicated++;
+        entry.references++;
+        return entry.geometry;
+    }
+
+    /**
+     * Remove a reference to a canonical MultiPolygon, and drop it from the store if it was the last one.
+     *
+     * @param geometry canonical MultiPolygon returned by {@link #acquire}.
+     */
+    synchronized void release(MultiPolygon geometry) {
+        Key key = new Key(geometry);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.geometry != geometry)
+            return;
+        if (--entry.references == 0)
+            entries.remove(key);
+    }
+
+    /**
+     * Return the number of distinct MultiPolygons stored.
+     *
+     * @return number of distinct MultiPolygons stored.
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Return a summary of the MultiPolygons stored and of the copies saved.
+     *
+     * @return a summary of the store.
+     */
+    synchronized String stats() {
+        long references = 0, points = 0;
+        for (Entry entry : entries.values()) {
+            references += entry.references;
+            points += entry.geometry.pointCount();
+        }
+        return String.format("%d geometries (%d points) referenced %d time(s), %d duplicate(s) replaced",
+                entries.size(), points, references, deduplicated);
+    }
+
+    /**
+     * Key comparing MultiPolygons by content.
+     */
+    private static final class Key {
+        private final MultiPolygon geometry;
+
+        Key(MultiPolygon geometry) {
+            this.geometry = geometry;
+        }
+
+        @Override
+        public int hashCode() {
+            return geometry.contentHash();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && geometry.sameContent(((Key) o).geometry);
+        }
+    }
+
+    /**
+     * Canonical MultiPolygon and its reference count.
+     */
+    private static final class Entry {
+        private final MultiPolygon geometry;
+        private int references;
+
+        Entry(MultiPolygon geometry) {
+            this.geometry = geometry;
+        }
+    }
+}
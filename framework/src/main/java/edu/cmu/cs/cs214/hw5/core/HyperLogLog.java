@@ -0,0 +1,105 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+/**
+ * HyperLogLog estimates the number of distinct values added to it with a fixed amount of memory
+ * (2^precision one-byte registers) and a standard error of about 1.04 / sqrt(2^precision).
+ */
+class HyperLogLog {
+
+    /**
+     * Default number of index bits, giving 4096 registers and about 1.6% standard error.
+     */
+    static final int DEFAULT_PRECISION = 12;
+
+    /**
+     * Number of index bits.
+     */
+    private final int precision;
+
+    /**
+     * Registers storing the maximum rank seen for each bucket.
+     */
+    private final byte[] registers;
+
+    /**
+     * Initialize a HyperLogLog with the default precision.
+     */
+    HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Initialize a HyperLogLog with the given precision.
+     *
+     * @param precision number of index bits (4 to 18).
+     */
+    HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18)
+            throw new IllegalArgumentException("Invalid Precision");
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Add a value to the estimator.
+     *
+     * @param o value to be added.
+     */
+    void add(Object o) {
+        long hash = hash64(o);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index])
+            registers[index] = (byte) rank;
+    }
+
+    /**
+     * Return the estimated number of distinct values added to the estimator.
+     *
+     * @return estimated number of distinct values.
+     */
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0)
+            estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+
+    /**
+     * Return a well mixed 64-bit hash of the given value. Strings are hashed over all of their
+     * characters so that distinct strings with colliding hashCode are still told apart.
+     *
+     * @param o value to be hashed.
+     * @return 64-bit hash of the value.
+     */
+    private static long hash64(Object o) {
+        long h;
+        if (o instanceof String) {
+            String s = (String) o;
+            h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        } else if (o instanceof Double) {
+            h = Double.doubleToLongBits((Double) o);
+        } else {
+            h = o == null ? 0 : o.hashCode();
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,12 +1,19 @@
 package edu.cmu.cs.cs214.hw5.core;
 
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * MultiPolygon represents a set of contours.
+ * MultiPolygon represents a set of contours. Points are stored packed in a single array of interleaved x and
+ * y coordinates, and can be read without creating any object with {@link #x(int)} and {@link #y(int)}: the
+ * points of polygon p are the ones from {@link #polygonStart(int)} included to
+ * {@code polygonStart(p) + polygonLength(p)} excluded.
  */
 public final class MultiPolygon {
 
@@ -24,6 +31,21 @@ public final class MultiPolygon {
         }
     }
     
+    /**
+     * Tolerance of the finest level of detail for display, in degrees (about 10 meters).
+     */
+    private static final double FINEST_LEVEL_TOLERANCE = 1e-4;
+
+    /**
+     * Number of levels of detail for display, each simplified with twice the tolerance of the previous one.
+     */
+    private static final int LEVEL_COUNT = 16;
+
+    /**
+     * Number of points below which a MultiPolygon is displayed as is.
+     */
+    private static final int MIN_SIMPLIFIED_POINTS = 64;
+
     /**
      * Right bound and left bound of MultiPolygon.
      */
@@ -35,9 +57,36 @@ public final class MultiPolygon {
     private final double maxY, minY;
 
     /**
-     * List of areas represented points.
+     * Coordinates of all points, interleaved as x and y.
+     */
+    private final double[] coordinates;
+
+    /**
+     * Index of the first point of each polygon, followed by the number of points.
+     */
+    private final int[] polygonOffsets;
+
+    /**
+     * Simplified levels of detail of this MultiPolygon derived so far, by tolerance.
+     */
+    private final Map<Double, MultiPolygon> levels = new ConcurrentHashMap<>();
+
+    /**
+     * Last projected copy of this MultiPolygon by projection, keyed by the parameters of the projection.
+     */
+    private final Map<Projection, Map.Entry<double[], MultiPolygon>> projections = new ConcurrentHashMap<>();
+
+    /**
+     * Hash of the coordinates and offsets, 0 until computed. Like the hash of a String, it may be computed
+     * more than once by concurrent threads, always to the same value.
      */
-    private final List<List<Point2D>> polygons;
+    private int contentHash;
+
+    /**
+     * Area, perimeter and centroid computed by {@link PolygonMetrics}, null until computed. Like the content
+     * hash, they may be computed more than once by concurrent threads, always to the same values.
+     */
+    private volatile double[] metrics;
 
     /**
      * Initialize a MultiPolygon object.
@@ -45,17 +94,29 @@ public final class MultiPolygon {
      * @param points a collection of points composing this polygons.
      */
     MultiPolygon(List<List<Point2D>> points) {
-        if (points == null)
+        this(pack(points), offsets(points));
+    }
+
+    /**
+     * Initialize a MultiPolygon object from packed coordinates. The arrays are owned by the MultiPolygon
+     * afterwards and must not be modified.
+     *
+     * @param coordinates coordinates of all points, interleaved as x and y.
+     * @param polygonOffsets index of the first point of each polygon, followed by the number of points.
+     */
+    MultiPolygon(double[] coordinates, int[] polygonOffsets) {
+        if (coordinates == null || polygonOffsets == null)
             throw new NullPointerException();
-        this.polygons = points;
+        if (polygonOffsets.length == 0 || polygonOffsets[polygonOffsets.length - 1] * 2 != coordinates.length)
+            throw new IllegalArgumentException("Invalid Polygon Offsets");
+        this.coordinates = coordinates;
+        this.polygonOffsets = polygonOffsets;
         double maxX = Integer.MIN_VALUE, minX = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE, minY = Integer.MAX_VALUE;
-        for (List<Point2D> polygon : polygons) {
-            for (Point2D point : polygon) {
-                maxX = Math.max(maxX, point.getX());
-                maxY = Math.max(maxY, point.getY());
-                minX = Math.min(minX, point.getX());
-                minY = Math.min(minY, point.getY());
-            }
+        for (int i = 0; i < coordinates.length; i += 2) {
+            maxX = Math.max(maxX, coordinates[i]);
+            maxY = Math.max(maxY, coordinates[i + 1]);
+            minX = Math.min(minX, coordinates[i]);
+            minY = Math.min(minY, coordinates[i + 1]);
         }
         this.maxX = maxX;
         this.maxY = maxY;
@@ -63,6 +124,40 @@ public final class MultiPolygon {
         this.minY = minY;
     }
 
+    /**
+     * Pack the coordinates of a list of polygons.
+     *
+     * @param points a collection of points composing the polygons.
+     * @return coordinates of all points, interleaved as x and y.
+     */
+    private static double[] pack(List<List<Point2D>> points) {
+        if (points == null)
+            throw new NullPointerException();
+        double[] coordinates = new double[2 * points.stream().mapToInt(List::size).sum()];
+        int i = 0;
+        for (List<Point2D> polygon : points) {
+            for (Point2D point : polygon) {
+                coordinates[i++] = point.getX();
+                coordinates[i++] = point.getY();
+            }
+        }
+        return coordinates;
+    }
+
+    /**
+     * Return the offsets of a list of polygons.
+     *
+     * @param points a collection of points composing the polygons.
+     * @return index of the first point of each polygon, followed by the number of points.
+     */
+    private static int[] offsets(List<List<Point2D>> points) {
+        int[] offsets = new int[points.size() + 1];
+        for (int i = 0; i < points.size(); i++) {
+            offsets[i + 1] = offsets[i] + points.get(i).size();
+        }
+        return offsets;
+    }
+
     /**
      * Return the right bound.
      * 
@@ -100,12 +195,273 @@ public final class MultiPolygon {
     }
 
     /**
-     * Return a list of polygons composing this MultiPolygon. Each polygon is a list of points.
+     * Return a read-only Shape view of this MultiPolygon, which reads the packed coordinates in place. Holes
+     * of the polygons are not filled.
+     *
+     * @return a Shape view of this MultiPolygon.
+     */
+    public Shape asShape() {
+        return new MultiPolygonShape(this, null);
+    }
+
+    /**
+     * Return a read-only Shape view of this MultiPolygon whose points are transformed by the given transform
+     * while being iterated, e.g. from longitude and latitude to pixels. Drawing the view transforms the
+     * points without copying them, unlike {@link AffineTransform#createTransformedShape}, and the stroke
+     * isn't transformed, unlike {@link java.awt.Graphics2D#transform}.
+     *
+     * @param transform transform applied to the points. It is copied.
+     * @return a transformed Shape view of this MultiPolygon.
+     */
+    public Shape asShape(AffineTransform transform) {
+        return new MultiPolygonShape(this, transform);
+    }
+
+    /**
+     * Check if a point is inside this MultiPolygon, outside of its holes. Points outside the bounds are
+     * rejected without reading the coordinates.
+     *
+     * @param x x coordinate (longitude) of the point.
+     * @param y y coordinate (latitude) of the point.
+     * @return true if the point is inside this MultiPolygon and false otherwise.
+     */
+    public boolean contains(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && asShape().contains(x, y);
+    }
+
+    /**
+     * Return a list of polygons composing this MultiPolygon. Each polygon is a list of points, created on
+     * every call, so reading the points with {@link #x(int)} and {@link #y(int)} is cheaper.
      * 
      * @return a list of polygons composing this MultiPolygon.
      */
     public List<List<Point2D>> getPoints() {
-        return polygons.stream().map(ArrayList::new).collect(Collectors.toList());
+        List<List<Point2D>> polygons = new ArrayList<>(polygonOffsets.length - 1);
+        for (int p = 0; p + 1 < polygonOffsets.length; p++) {
+            List<Point2D> polygon = new ArrayList<>(polygonOffsets[p + 1] - polygonOffsets[p]);
+            for (int i = polygonOffsets[p]; i < polygonOffsets[p + 1]; i++) {
+                polygon.add(new ImmutablePoint2D(coordinates[2 * i], coordinates[2 * i + 1]));
+            }
+            polygons.add(polygon);
+        }
+        return polygons;
+    }
+
+    /**
+     * Return the number of polygons composing this MultiPolygon.
+     *
+     * @return number of polygons.
+     */
+    public int polygonCount() {
+        return polygonOffsets.length - 1;
+    }
+
+    /**
+     * Return the index of the first point of a polygon.
+     *
+     * @param polygon index of the polygon.
+     * @return index of the first point of the polygon.
+     */
+    public int polygonStart(int polygon) {
+        return polygonOffsets[polygon];
+    }
+
+    /**
+     * Return the number of points of a polygon.
+     *
+     * @param polygon index of the polygon.
+     * @return number of points of the polygon.
+     */
+    public int polygonLength(int polygon) {
+        return polygonOffsets[polygon + 1] - polygonOffsets[polygon];
+    }
+
+    /**
+     * Return the number of points of all polygons.
+     *
+     * @return number of points.
+     */
+    public int pointCount() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * Return the x coordinate (longitude) of a point.
+     *
+     * @param point index of the point among the points of all polygons.
+     * @return x coordinate of the point.
+     */
+    public double x(int point) {
+        return coordinates[2 * point];
+    }
+
+    /**
+     * Return the y coordinate (latitude) of a point.
+     *
+     * @param point index of the point among the points of all polygons.
+     * @return y coordinate of the point.
+     */
+    public double y(int point) {
+        return coordinates[2 * point + 1];
+    }
+
+    /**
+     * Return a hash of the coordinates and offsets of this MultiPolygon, computed once.
+     *
+     * @return hash of the content.
+     */
+    int contentHash() {
+        int hash = contentHash;
+        if (hash == 0) {
+            hash = 31 * Arrays.hashCode(coordinates) + Arrays.hashCode(polygonOffsets);
+            if (hash == 0)
+                hash = 1;
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Check if this MultiPolygon has the same points and polygons as another one.
+     *
+     * @param other MultiPolygon to compare with.
+     * @return true if both have the same content and false otherwise.
+     */
+    boolean sameContent(MultiPolygon other) {
+        return other == this || (other != null && contentHash() == other.contentHash()
+                && Arrays.equals(polygonOffsets, other.polygonOffsets) && Arrays.equals(coordinates, other.coordinates));
+    }
+
+    /**
+     * Return the planar area of this MultiPolygon, in the units of its coordinates squared, e.g. the area of a
+     * MultiPolygon projected with {@link Projection#ALBERS_EQUAL_AREA}. Holes are subtracted.
+     *
+     * @return planar area.
+     */
+    public double area() {
+        return metrics()[PolygonMetrics.AREA];
+    }
+
+    /**
+     * Return the planar length of all rings of this MultiPolygon, holes included, in the units of its
+     * coordinates.
+     *
+     * @return planar perimeter.
+     */
+    public double perimeter() {
+        return metrics()[PolygonMetrics.PERIMETER];
+    }
+
+    /**
+     * Return the planar centroid of this MultiPolygon, i.e. its center of mass, which may be outside of it.
+     *
+     * @return planar centroid, whose coordinates are NaN if this MultiPolygon has no point.
+     */
+    public Point2D centroid() {
+        double[] metrics = metrics();
+        return new ImmutablePoint2D(metrics[PolygonMetrics.CENTROID_X], metrics[PolygonMetrics.CENTROID_Y]);
+    }
+
+    /**
+     * Return the area of this MultiPolygon of longitudes and latitudes on the sphere, e.g. to compute a
+     * density per square kilometer. Holes are subtracted.
+     *
+     * @return geodesic area, in square kilometers.
+     */
+    public double geodesicArea() {
+        return metrics()[PolygonMetrics.GEODESIC_AREA];
+    }
+
+    /**
+     * Return the length of all rings of this MultiPolygon of longitudes and latitudes along great circles,
+     * holes included.
+     *
+     * @return geodesic perimeter, in kilometers.
+     */
+    public double geodesicPerimeter() {
+        return metrics()[PolygonMetrics.GEODESIC_PERIMETER];
+    }
+
+    /**
+     * Return the centroid of this MultiPolygon of longitudes and latitudes on the sphere.
+     *
+     * @return geodesic centroid as longitude (x) and latitude (y), which are NaN if this MultiPolygon has no
+     * point.
+     */
+    public Point2D geodesicCentroid() {
+        double[] metrics = metrics();
+        return new ImmutablePoint2D(metrics[PolygonMetrics.GEODESIC_CENTROID_X],
+                metrics[PolygonMetrics.GEODESIC_CENTROID_Y]);
+    }
+
+    /**
+     * Return the metrics of this MultiPolygon, computed once.
+     *
+     * @return the metrics indexed as in {@link PolygonMetrics}.
+     */
+    private double[] metrics() {
+        double[] result = metrics;
+        if (result == null) {
+            result = PolygonMetrics.compute(coordinates, polygonOffsets);
+            metrics = result;
+        }
+        return result;
+    }
+
+    /**
+     * Return a coarser level of detail of this MultiPolygon, simplified with the given tolerance by
+     * {@link PolygonSimplifier}. Levels are derived once and cached, so asking for the same level again
+     * returns the same MultiPolygon.
+     *
+     * @param tolerance maximum distance between a removed point and the simplified polygons, in degrees.
+     * @return the simplified MultiPolygon, or this MultiPolygon if the tolerance isn't positive.
+     */
+    MultiPolygon simplify(double tolerance) {
+        if (!(tolerance > 0))
+            return this;
+        return levels.computeIfAbsent(tolerance, t -> PolygonSimplifier.simplify(coordinates, polygonOffsets, t));
+    }
+
+    /**
+     * Return a copy of this MultiPolygon projected with the given projection, whose polygons share the offsets
+     * of this MultiPolygon. The last copy of every projection is cached, so that projecting this MultiPolygon
+     * again with the same parameters, e.g. to draw another view of the same dataSet, returns the same copy
+     * along with its levels of detail.
+     *
+     * @param projection projection of the points.
+     * @param params parameters of the projection fitted by {@link Projection#fit}.
+     * @return the projected MultiPolygon.
+     */
+    MultiPolygon project(Projection projection, double[] params) {
+        Map.Entry<double[], MultiPolygon> cached = projections.get(projection);
+        if (cached != null && Arrays.equals(cached.getKey(), params))
+            return cached.getValue();
+        double[] projected = new double[coordinates.length];
+        for (int i = 0; i < coordinates.length; i += 2)
+            projection.forward(params, coordinates[i], coordinates[i + 1], projected, i);
+        MultiPolygon copy = new MultiPolygon(projected, polygonOffsets);
+        projections.put(projection, Map.entry(params.clone(), copy));
+        return copy;
+    }
+
+    /**
+     * Return the level of detail of this MultiPolygon to be displayed at the given resolution, which drops
+     * the details smaller than half a pixel. Levels form a pyramid of tolerances doubling from about 10
+     * meters, so the levels derived for a few resolutions are reused for all resolutions in between, and
+     * the number of points drawn depends on the resolution rather than on the detail of the MultiPolygon.
+     * Levels are derived lazily and cached like the ones of {@link #simplify(double)}.
+     *
+     * @param pixelsPerDegree number of pixels a degree is drawn with, the largest of both axes.
+     * @return the level of detail to be displayed, or this MultiPolygon if it has no coarser level.
+     */
+    public MultiPolygon levelOfDetail(double pixelsPerDegree) {
+        if (!(pixelsPerDegree > 0) || pointCount() < MIN_SIMPLIFIED_POINTS)
+            return this;
+        double maxTolerance = 0.5 / pixelsPerDegree;
+        if (maxTolerance < FINEST_LEVEL_TOLERANCE)
+            return this;
+        int level = Math.min(LEVEL_COUNT - 1, Math.getExponent(maxTolerance / FINEST_LEVEL_TOLERANCE));
+        return simplify(Math.scalb(FINEST_LEVEL_TOLERANCE, level));
     }
 
     /**
@@ -115,6 +471,6 @@ public final class MultiPolygon {
      */
     @Override
     public String toString() {
-        return polygons.toString();
+        return getPoints().toString();
     }
 }
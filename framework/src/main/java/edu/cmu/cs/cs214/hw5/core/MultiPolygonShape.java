@@ -0,0 +1,273 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * MultiPolygonShape is a read-only {@link Shape} view of a MultiPolygon, optionally transformed, which
+ * iterates over the packed coordinates of the MultiPolygon without copying them. Every polygon is split
+ * into its rings, a ring ending where its first point is repeated (or at the end of the polygon), and
+ * every ring is a closed subpath. The even-odd winding rule is used, so the holes of a polygon are not
+ * filled.
+ */
+final class MultiPolygonShape implements Shape {
+
+    /**
+     * MultiPolygon viewed.
+     */
+    private final MultiPolygon polygons;
+
+    /**
+     * Transform applied to the points, or null for the identity.
+     */
+    private final AffineTransform transform;
+
+    /**
+     * Initialize a view of the given MultiPolygon.
+     *
+     * @param polygons MultiPolygon viewed.
+     * @param transform transform applied to the points, or null for the identity. It is copied.
+     */
+    MultiPolygonShape(MultiPolygon polygons, AffineTransform transform) {
+        this.polygons = polygons;
+        this.transform = transform == null || transform.isIdentity() ? null : new AffineTransform(transform);
+    }
+
+    /**
+     * Return the integer bounds of the shape.
+     *
+     * @return the integer bounds of the shape.
+     */
+    @Override
+    public Rectangle getBounds() {
+        return getBounds2D().getBounds();
+    }
+
+    /**
+     * Return the bounds of the shape, from the bounds of the MultiPolygon.
+     *
+     * @return the bounds of the shape.
+     */
+    @Override
+    public Rectangle2D getBounds2D() {
+        Rectangle2D bounds = new Rectangle2D.Double(polygons.getMinX(), polygons.getMinY(),
+                polygons.getMaxX() - polygons.getMinX(), polygons.getMaxY() - polygons.getMinY());
+        return transform == null ? bounds : transform.createTransformedShape(bounds).getBounds2D();
+    }
+
+    /**
+     * Check if a point is inside the shape.
+     *
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @return true if the point is inside the shape and false otherwise.
+     */
+    @Override
+    public boolean contains(double x, double y) {
+        return Path2D.contains(getPathIterator(null), x, y);
+    }
+
+    /**
+     * Check if a point is inside the shape.
+     *
+     * @param p the point.
+     * @return true if the point is inside the shape and false otherwise.
+     */
+    @Override
+    public boolean contains(Point2D p) {
+        return contains(p.getX(), p.getY());
+    }
+
+    /**
+     * Check if the shape intersects a rectangle.
+     *
+     * @param x x coordinate of the rectangle.
+     * @param y y coordinate of the rectangle.
+     * @param w width of the rectangle.
+     * @param h height of the rectangle.
+     * @return true if the shape intersects the rectangle and false otherwise.
+     */
+    @Override
+    public boolean intersects(double x, double y, double w, double h) {
+        return Path2D.intersects(getPathIterator(null), x, y, w, h);
+    }
+
+    /**
+     * Check if the shape intersects a rectangle.
+     *
+     * @param r the rectangle.
+     * @return true if the shape intersects the rectangle and false otherwise.
+     */
+    @Override
+    public boolean intersects(Rectangle2D r) {
+        return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    /**
+     * Check if the shape contains a rectangle.
+     *
+     * @param x x coordinate of the rectangle.
+     * @param y y coordinate of the rectangle.
+     * @param w width of the rectangle.
+     * @param h height of the rectangle.
+     * @return true if the shape contains the rectangle and false otherwise.
+     */
+    @Override
+    public boolean contains(double x, double y, double w, double h) {
+        return Path2D.contains(getPathIterator(null), x, y, w, h);
+    }
+
+    /**
+     * Check if the shape contains a rectangle.
+     *
+     * @param r the rectangle.
+     * @return true if the shape contains the rectangle and false otherwise.
+     */
+    @Override
+    public boolean contains(Rectangle2D r) {
+        return contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    /**
+     * Return an iterator over the rings of the shape, reading the coordinates of the MultiPolygon in place.
+     *
+     * @param at transform applied after the transform of the view, or null.
+     * @return an iterator over the rings.
+     */
+    @Override
+    public PathIterator getPathIterator(AffineTransform at) {
+        if (transform == null)
+            return new Iterator(at);
+        if (at == null || at.isIdentity())
+            return new Iterator(transform);
+        AffineTransform combined = new AffineTransform(at);
+        combined.concatenate(transform);
+        return new Iterator(combined);
+    }
+
+    /**
+     * Return an iterator over the rings of the shape, which has no curve to flatten.
+     *
+     * @param at transform applied after the transform of the view, or null.
+     * @param flatness ignored.
+     * @return an iterator over the rings.
+     */
+    @Override
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return getPathIterator(at);
+    }
+
+    /**
+     * Iterator over the rings of the MultiPolygon, which only keeps the index of the current point.
+     */
+    private final class Iterator implements PathIterator {
+        /**
+         * Transform applied to the points, or null for the identity.
+         */
+        private final AffineTransform at;
+
+        /**
+         * Index of the current polygon.
+         */
+        private int polygon = -1;
+
+        /**
+         * Index of the current point.
+         */
+        private int point;
+
+        /**
+         * Index of the first point of the current ring.
+         */
+        private int ringStart;
+
+        /**
+         * Whether the current segment closes a ring whose first point isn't repeated.
+         */
+        private boolean implicitClose;
+
+        Iterator(AffineTransform at) {
+            this.at = at == null || at.isIdentity() ? null : at;
+            nextPolygon();
+        }
+
+        /**
+         * Move to the first point of the next non-empty polygon.
+         */
+        private void nextPolygon() {
+            do {
+                polygon++;
+            } while (polygon < polygons.polygonCount() && polygons.polygonLength(polygon) == 0);
+            if (polygon < polygons.polygonCount()) {
+                point = polygons.polygonStart(polygon);
+                ringStart = point;
+            }
+        }
+
+        /**
+         * Check if the current point repeats the first point of its ring.
+         *
+         * @return true if the current point closes its ring and false otherwise.
+         */
+        private boolean closesRing() {
+            return point != ringStart && polygons.x(point) == polygons.x(ringStart)
+                    && polygons.y(point) == polygons.y(ringStart);
+        }
+
+        @Override
+        public int getWindingRule() {
+            return WIND_EVEN_ODD;
+        }
+
+        @Override
+        public boolean isDone() {
+            return polygon >= polygons.polygonCount();
+        }
+
+        @Override
+        public void next() {
+            if (implicitClose) {
+                implicitClose = false;
+                nextPolygon();
+                return;
+            }
+            boolean closed = closesRing();
+            point++;
+            if (closed)
+                ringStart = point;
+            if (point >= polygons.polygonStart(polygon) + polygons.polygonLength(polygon)) {
+                if (closed)
+                    nextPolygon();
+                else
+                    implicitClose = true;
+            }
+        }
+
+        @Override
+        public int currentSegment(float[] coords) {
+            if (implicitClose || closesRing())
+                return SEG_CLOSE;
+            coords[0] = (float) polygons.x(point);
+            coords[1] = (float) polygons.y(point);
+            if (at != null)
+                at.transform(coords, 0, coords, 0, 1);
+            return point == ringStart ? SEG_MOVETO : SEG_LINETO;
+        }
+
+        @Override
+        public int currentSegment(double[] coords) {
+            if (implicitClose || closesRing())
+                return SEG_CLOSE;
+            coords[0] = polygons.x(point);
+            coords[1] = polygons.y(point);
+            if (at != null)
+                at.transform(coords, 0, coords, 0, 1);
+            return point == ringStart ? SEG_MOVETO : SEG_LINETO;
+        }
+    }
+}
@@ -1,34 +1,41 @@
 package edu.cmu.cs.cs214.hw5.core;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
 import org.apache.commons.lang3.tuple.Triple;
 
-import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
- * Utility functions of OpenStreetMap API.
+ * Utility functions of OpenStreetMap API, and the default {@link GeocoderBackend}. Requests are sent
+ * asynchronously over a single HTTP/2 client, paced by a token-bucket rate limiter, with a bounded number
+ * of queries in flight. The search endpoint defaults to Nominatim and can be any server answering the
+ * Nominatim search API, e.g. {@link StubGeocodingServer}.
  */
-class OpenStreetMapClient {
-    
+class OpenStreetMapClient implements GeocoderBackend {
+
     /**
-     * Gson used to convert between JSON and Objects.
+     * Search endpoint of Nominatim.
      */
-    private static final Gson GSON = new Gson();
+    static final String DEFAULT_SEARCH_URL = "https://nominatim.openstreetmap.org/search";
 
     /**
      * Http Client Object.
@@ -37,52 +44,198 @@ class OpenStreetMapClient {
 
     private final boolean printStatus;
 
+    /**
+     * Prefix of the uris of the queries, made of the search endpoint and the common parameters.
+     */
+    private final String uriPrefix;
+
+    /**
+     * Default number of requests per second, which is the limit of the Nominatim usage policy.
+     */
+    static final double DEFAULT_REQUESTS_PER_SECOND = 1.0;
+
+    /**
+     * Default maximum number of queries in flight at a time.
+     */
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * Timeout of a request.
+     */
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * User agent identifying the application, as required by the Nominatim usage policy.
+     */
+    private static final String USER_AGENT = "GeoDataFramework/1.0";
+
+    /**
+     * Maximum number of retries of a failed request.
+     */
+    private static final int MAX_RETRIES = 3;
+
+    /**
+     * Backoff before the first retry in milliseconds, doubled at every retry.
+     */
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    /**
+     * Maximum backoff before a retry in milliseconds.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 16000;
+
+    /**
+     * Circuit breaker rejecting requests while OpenStreetMap keeps failing.
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Rate limiter pacing the requests sent.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Maximum number of queries in flight at a time.
+     */
+    private final int maxInFlight;
+
+    /**
+     * Number of requests sent to OpenStreetMap, including retries.
+     */
+    private final AtomicLong requestsSent = new AtomicLong();
+
+    /**
+     * Initialize a client of Nominatim.
+     *
+     * @param client http client.
+     * @param printStatus print status.
+     */
     OpenStreetMapClient(HttpClient client, boolean printStatus) {
+        this(client, printStatus, DEFAULT_SEARCH_URL);
+    }
+
+    /**
+     * Initialize a client of the given search endpoint with the request rate of the Nominatim usage policy.
+     *
+     * @param client http client.
+     * @param printStatus print status.
+     * @param searchUrl url of the search endpoint.
+     */
+    OpenStreetMapClient(HttpClient client, boolean printStatus, String searchUrl) {
+        this(client, printStatus, searchUrl, new RateLimiter(DEFAULT_REQUESTS_PER_SECOND, 1), DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Initialize a client of the given search endpoint with the given request rate.
+     *
+     * @param client http client.
+     * @param printStatus print status.
+     * @param searchUrl url of the search endpoint.
+     * @param rateLimiter rate limiter pacing the requests sent.
+     * @param maxInFlight maximum number of queries in flight at a time.
+     */
+    OpenStreetMapClient(HttpClient client, boolean printStatus, String searchUrl, RateLimiter rateLimiter,
+                        int maxInFlight) {
+        this(client, printStatus, searchUrl, rateLimiter, maxInFlight, new CircuitBreaker(5, Duration.ofSeconds(30)));
+    }
+
+    /**
+     * Initialize a client of the given search endpoint with the given request rate and circuit breaker.
+     *
+     * @param client http client.
+     * @param printStatus print status.
+     * @param searchUrl url of the search endpoint.
+     * @param rateLimiter rate limiter pacing the requests sent.
+     * @param maxInFlight maximum number of queries in flight at a time.
+     * @param circuitBreaker circuit breaker rejecting requests while the endpoint keeps failing.
+     */
+    OpenStreetMapClient(HttpClient client, boolean printStatus, String searchUrl, RateLimiter rateLimiter,
+                        int maxInFlight, CircuitBreaker circuitBreaker) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("Invalid Number Of Requests In Flight");
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.maxInFlight = maxInFlight;
         this.client = client;
         this.printStatus = printStatus;
+        this.uriPrefix = searchUrl + "?format=json&limit=1&polygon_geojson=1";
     }
 
-    private static final String URI_PREFIX =
-            "https://nominatim.openstreetmap.org/search?format=json&limit=1&polygon_geojson=1";
+    /**
+     * Fetch the name of the backend.
+     *
+     * @return name of the backend.
+     */
+    @Override
+    public String getName() {
+        return "OpenStreetMap";
+    }
 
     /**
-     * Batch Query given an array of GeoAddress.
-     * 
-     * @param addressArray an array of GeoAddress used for batch query.
-     * @param unfounded a set to stored unfound address
-     * @return a list of Triple of longitude, latitude and polygons.
-     */
-    List<Triple<Double, Double, MultiPolygon>> batchQuery(GeoAddress[] addressArray, Set unfounded, String threshold) {
-        List<GeoAddress> addresses = Arrays.stream(addressArray).distinct().collect(Collectors.toList());
-        Map<GeoAddress, Triple<Double, Double, MultiPolygon>> res = new ConcurrentHashMap<>();
-        addresses.parallelStream().forEach(a -> res.put(a, queryByAdress(a, threshold)));
-        return Arrays.stream(addressArray).map(a -> {
-            if (res.get(a).getLeft() == null) {
-                unfounded.add(a);
-                return null;
-            }
-            return res.get(a);
-        }).collect(Collectors.toList());
+     * GeoCode a batch of free-form addresses. Every address is queried on its own since Nominatim has no
+     * batch API, and the queries are paced by the rate limiter.
+     *
+     * @param addresses free-form addresses.
+     * @param polygonThreshold tolerance in degrees the boundaries may be simplified with.
+     * @return a future of the results of the addresses.
+     */
+    @Override
+    public CompletableFuture<List<GeocodeResult>> geocode(List<String> addresses, String polygonThreshold) {
+        return allResults(addresses.stream().map(a -> queryByAdressAsync(a, polygonThreshold))
+                .collect(Collectors.toList()));
     }
 
     /**
-     * Batch Query given a string representing the address.
-     * 
-     * @param addressArray a string representing the address used for batch query.
-     * @param unfounded a set to stored unfound address
-     * @return a list of Triple of longitude, latitude and polygons.
-     */
-    List<Triple<Double, Double, MultiPolygon>> batchQuery(String[] addressArray, Set unfounded, String threshold) {
-        List<String> addresses = Arrays.stream(addressArray).distinct().collect(Collectors.toList());
-        Map<String, Triple<Double, Double, MultiPolygon>> res = new ConcurrentHashMap<>();
-        addresses.parallelStream().forEach(a -> res.put(a, queryByAdress(a, threshold)));
-        return Arrays.stream(addressArray).map(a -> {
-            if (res.get(a).getLeft() == null) {
-                unfounded.add(a);
-                return null;
-            }
-            return res.get(a);
-        }).collect(Collectors.toList());
+     * GeoCode a batch of structured addresses with structured queries, falling back to free-form queries
+     * for the addresses that are not found.
+     *
+     * @param addresses structured addresses.
+     * @param polygonThreshold tolerance in degrees the boundaries may be simplified with.
+     * @return a future of the results of the addresses.
+     */
+    @Override
+    public CompletableFuture<List<GeocodeResult>> geocodeStructured(List<Map<String, String>> addresses,
+                                                                    String polygonThreshold) {
+        return allResults(addresses.stream().map(a -> queryByAdressAsync(new GeoAddress(a.get(COUNTRY),
+                a.get(STATE), a.get(CITY), a.get(COUNTY), a.get(STREET)), polygonThreshold))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Return a future of the results of all given queries, which fails if any of them fails.
+     *
+     * @param queries futures of the queries.
+     * @return a future of the results of the queries, in the same order.
+     */
+    private static CompletableFuture<List<GeocodeResult>> allResults(
+            List<CompletableFuture<Triple<Double, Double, MultiPolygon>>> queries) {
+        return CompletableFuture.allOf(queries.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<GeocodeResult> results = new ArrayList<>(queries.size());
+            for (CompletableFuture<Triple<Double, Double, MultiPolygon>> query : queries)
+                results.add(GeocodeResult.of(query.join()));
+            return results;
+        });
+    }
+
+    /**
+     * Return the maximum number of batches in flight, i.e. the maximum number of queries in flight since
+     * every batch holds a single address.
+     *
+     * @return maximum number of batches in flight.
+     */
+    @Override
+    public int getMaxConcurrentBatches() {
+        return maxInFlight;
+    }
+
+    /**
+     * Return the number of requests sent, including retries.
+     *
+     * @return number of requests sent.
+     */
+    @Override
+    public long getRequestCount() {
+        return requestsSent.get();
     }
 
     /**
@@ -92,7 +245,18 @@ class OpenStreetMapClient {
      * @return a Triple of longitude, latitude and polygons.
      */
     Triple<Double, Double, MultiPolygon> queryByAdress(GeoAddress addr, String threshold) {
-        StringBuilder sb = new StringBuilder(URI_PREFIX);
+        return GeocodingService.join(queryByAdressAsync(addr, threshold));
+    }
+
+    /**
+     * Query given a GeoAddress with a structured query, falling back to a free-form query if the address
+     * is not found.
+     *
+     * @param addr GeoAddress representation of address.
+     * @return a future of a Triple of longitude, latitude and polygons.
+     */
+    CompletableFuture<Triple<Double, Double, MultiPolygon>> queryByAdressAsync(GeoAddress addr, String threshold) {
+        StringBuilder sb = new StringBuilder(uriPrefix);
         if (addr.getCountry() != null)
             sb.append("&country=" + addr.getCountry());
         if (addr.getState() != null)
@@ -104,11 +268,9 @@ class OpenStreetMapClient {
         if (addr.getStreet() != null)
             sb.append("&street=" + addr.getStreet());
         sb.append("&polygon_threshold=" + threshold);
-        Triple<Double, Double, MultiPolygon> res = queryByUri(sb.toString());
-        if (res.getLeft() != null)
-            return res;
-        else
-            return queryByAdress(addr.toString(), threshold);
+        return queryByUriAsync(sb.toString()).thenCompose(res -> res.getLeft() != null
+                ? CompletableFuture.completedFuture(res)
+                : queryByAdressAsync(addr.toString(), threshold));
     }
 
     /**
@@ -118,9 +280,17 @@ class OpenStreetMapClient {
      * @return a Triple of longitude, latitude and polygons.
      */
     Triple<Double, Double, MultiPolygon> queryByAdress(String s, String threshold) {
-        String uri = URI_PREFIX + "&q=" + s + "&polygon_threshold=" + threshold;
-        return queryByUri(uri);
+        return GeocodingService.join(queryByAdressAsync(s, threshold));
+    }
 
+    /**
+     * Query given a string representation of address without blocking.
+     *
+     * @param s a string representation of address.
+     * @return a future of a Triple of longitude, latitude and polygons.
+     */
+    CompletableFuture<Triple<Double, Double, MultiPolygon>> queryByAdressAsync(String s, String threshold) {
+        return queryByUriAsync(uriPrefix + "&q=" + s + "&polygon_threshold=" + threshold);
     }
 
     /**
@@ -130,94 +300,221 @@ class OpenStreetMapClient {
      * @return a Triple of longitude, latitude and polygons.
      */
     Triple<Double, Double, MultiPolygon> queryByUri(String uri) {
-        uri = uri.replaceAll(" ", "%20");
-        uri = uri.replaceAll(",", "%2C");
-        System.out.println("Connecting to " + uri + "...: \t");
-        String responseBody;
-        QueryResult[] results;
+        return GeocodingService.join(queryByUriAsync(uri));
+    }
+
+    /**
+     * Query by using OpenStreetMap API with given uri without blocking. The request is sent once the rate
+     * limiter grants it, and the response is parsed on the thread receiving it. A request failing transiently
+     * (network error, timeout, HTTP 429 or 5xx) is retried with exponential backoff and jitter and counts as a
+     * failure of the circuit breaker, and requests are rejected without being sent while the circuit breaker is
+     * open. Any other failure (e.g. HTTP 400 or 404, malformed response) fails the query right away.
+     *
+     * @param uri uri used to query.
+     * @return a future of a Triple of longitude, latitude and polygons.
+     */
+    CompletableFuture<Triple<Double, Double, MultiPolygon>> queryByUriAsync(String uri) {
+        String encodedUri = uri.replaceAll(" ", "%20").replaceAll(",", "%2C");
+        System.out.println("Connecting to " + encodedUri + "...: \t");
+        HttpRequest request;
         try {
-            HttpRequest request = HttpRequest.newBuilder(new URI(uri)).build();
-            responseBody = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
-            results = GSON.fromJson(responseBody, QueryResult[].class);
-        } catch (URISyntaxException | IOException | InterruptedException | JsonSyntaxException e) {
-            if (printStatus)
-                System.out.println("Failed to connect to " + uri);
-            throw new IllegalArgumentException(String.format(
-                    "Unable to connect to OpenStreetMap. Please Retry. %n%s",
-                    URI_PREFIX));
+            request = HttpRequest.newBuilder(new URI(encodedUri))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("User-Agent", USER_AGENT)
+                    .build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(connectionFailure(encodedUri));
         }
-        if (printStatus)
-            System.out.println("Connected to " + uri);
-        if (results.length == 0) {
-            System.out.println("Address Not Found: " + uri.substring(URI_PREFIX.length() + 1));
-            return Triple.of(null, null, null);
-        }
-        GeoGson geojson = results[0].geojson;
-        String type = geojson.type;
-        List<List<Point2D>> boundaries = new ArrayList<>();
-        if (type.equals("MultiPolygon")) {
-            double[][][][] coordinates = GSON.fromJson(geojson.coordinates, double[][][][].class);
-            for (double[][][] polygon : coordinates) {
-                boundaries.add(parsePolygon(polygon));
-            }
-        } else if (type.equals("Polygon")) {
-            double[][][] polygon = GSON.fromJson(geojson.coordinates, double[][][].class);
-            boundaries.add(parsePolygon(polygon));
-        }
-        if (boundaries.size() == 0)
-            boundaries.add(List.of(new Point2D.Double(results[0].lon, results[0].lat)));
+        return attempt(encodedUri, request, 0);
+    }
 
-        return Triple.of(results[0].lon, results[0].lat, new MultiPolygon(boundaries));
+    /**
+     * Send a request and parse its response, retrying it if it fails.
+     *
+     * @param uri uri used to query.
+     * @param request request to be sent.
+     * @param retry number of retries done so far.
+     * @return a future of a Triple of longitude, latitude and polygons.
+     */
+    private CompletableFuture<Triple<Double, Double, MultiPolygon>> attempt(String uri, HttpRequest request,
+                                                                            int retry) {
+        if (!circuitBreaker.allowRequest()) {
+            if (printStatus)
+                System.out.println("OpenStreetMap is unavailable, skipped " + uri);
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "OpenStreetMap Is Unavailable. Please Retry Later."));
+        }
+        return rateLimiter.acquire()
+                .thenCompose(v -> {
+                    requestsSent.incrementAndGet();
+                    return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+                })
+                .thenApply(response -> {
+                    if (response.statusCode() != 200)
+                        throw new HttpStatusException(response.statusCode(),
+                                response.headers().firstValueAsLong("Retry-After").orElse(0));
+                    return parseResponse(uri, response.body());
+                })
+                .handle((res, e) -> {
+                    if (e == null) {
+                        circuitBreaker.recordSuccess();
+                        return CompletableFuture.completedFuture(res);
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (!isTransient(cause)) {
+                        // OpenStreetMap answered, so the failure says nothing about its availability.
+                        circuitBreaker.recordSuccess();
+                        return CompletableFuture.<Triple<Double, Double, MultiPolygon>>failedFuture(
+                                cause instanceof IllegalArgumentException ? cause : connectionFailure(uri));
+                    }
+                    circuitBreaker.recordFailure();
+                    if (retry >= MAX_RETRIES || circuitBreaker.getState() == CircuitBreaker.State.OPEN)
+                        return CompletableFuture.<Triple<Double, Double, MultiPolygon>>failedFuture(
+                                connectionFailure(uri));
+                    long delay = backoffMillis(retry, cause);
+                    if (printStatus)
+                        System.out.printf("Request failed (%s), retrying in %d ms: %s%n", cause, delay, uri);
+                    return CompletableFuture.runAsync(() -> { },
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(v -> attempt(uri, request, retry + 1));
+                })
+                .thenCompose(Function.identity());
     }
 
     /**
-     * Parse 2-D array representation of polygon to List representation.
-     * 
-     * @param polygon 2-D array representation of polygon.
-     * @return List representation of polygon.
-     */
-    private static List<Point2D> parsePolygon(double[][][] polygon) {
-        List<Point2D> res = new ArrayList<>();
-        for (double[][] c1 : polygon) {
-            for (double[] c : c1) {
-                res.add(new MultiPolygon.ImmutablePoint2D(c[0], c[1]));
-            }
+     * Check if a failed attempt may succeed when retried, i.e. if it failed with a network error, a timeout,
+     * HTTP 429 (too many requests) or a server error.
+     *
+     * @param cause failure of the attempt.
+     * @return true if the attempt should be retried and false otherwise.
+     */
+    private static boolean isTransient(Throwable cause) {
+        if (cause instanceof HttpStatusException) {
+            int statusCode = ((HttpStatusException) cause).statusCode;
+            return statusCode == 429 || statusCode >= 500;
         }
-        return res;
+        return cause instanceof IOException;
+    }
+
+    /**
+     * Return the time to wait before a retry, which grows exponentially with the number of retries and is
+     * randomized to spread out the retries of concurrent requests. The time asked by a Retry-After header
+     * is respected.
+     *
+     * @param retry number of retries done so far.
+     * @param cause failure of the last attempt.
+     * @return the time to wait in milliseconds.
+     */
+    private static long backoffMillis(int retry, Throwable cause) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << retry);
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        if (cause instanceof HttpStatusException)
+            delay = Math.max(delay, TimeUnit.SECONDS.toMillis(((HttpStatusException) cause).retryAfterSeconds));
+        return delay;
     }
 
     /**
-     * Object representing the query result.
+     * Exception of a response whose status is not OK.
      */
-    private static class QueryResult {
+    private static final class HttpStatusException extends RuntimeException {
         /**
-         * Longitude.
+         * Version of the serialized form.
          */
-        private double lon;
+        private static final long serialVersionUID = 1L;
 
         /**
-         * Latitude.
+         * Status code of the response.
          */
-        private double lat;
-        
+        private final int statusCode;
+
         /**
-         * GeoGson representation of polygons.
+         * Seconds to wait before retrying asked by the Retry-After header, 0 if there is none.
          */
-        private GeoGson geojson;
+        private final long retryAfterSeconds;
+
+        HttpStatusException(int statusCode, long retryAfterSeconds) {
+            super("HTTP " + statusCode);
+            this.statusCode = statusCode;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
     }
 
     /**
-     * GeoGson representation of polygon.
+     * Return the exception thrown when OpenStreetMap cannot be reached.
+     *
+     * @param uri uri used to query.
+     * @return the exception to be thrown.
      */
-    private static class GeoGson {
-        /**
-         * Type of polygon.
-         */
-        private String type;
+    private IllegalArgumentException connectionFailure(String uri) {
+        if (printStatus)
+            System.out.println("Failed to connect to " + uri);
+        return new IllegalArgumentException(String.format(
+                "Unable to connect to OpenStreetMap. Please Retry. %n%s",
+                uriPrefix));
+    }
 
-        /**
-         * Coordinates composing the polygon.
-         */
-        private JsonElement coordinates;
+    /**
+     * Parse the response of OpenStreetMap API. The response is read token by token, and the coordinates of
+     * the boundary are read straight into a packed buffer without building any intermediate tree or
+     * object per point.
+     *
+     * @param uri uri used to query.
+     * @param responseBody body of the response.
+     * @return a Triple of longitude, latitude and polygons.
+     */
+    private Triple<Double, Double, MultiPolygon> parseResponse(String uri, byte[] responseBody) {
+        double lon = Double.NaN, lat = Double.NaN;
+        String type = null;
+        int depth = 0;
+        PolygonBuffer boundaries = new PolygonBuffer();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(responseBody), StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            if (!reader.hasNext()) {
+                if (printStatus)
+                    System.out.println("Connected to " + uri);
+                System.out.println("Address Not Found: " + uri.substring(uriPrefix.length() + 1));
+                return Triple.of(null, null, null);
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "lon":
+                        lon = reader.nextDouble();
+                        break;
+                    case "lat":
+                        lat = reader.nextDouble();
+                        break;
+                    case "geojson":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String field = reader.nextName();
+                            if (field.equals("type"))
+                                type = reader.nextString();
+                            else if (field.equals("coordinates"))
+                                depth = boundaries.readGeoJsonCoordinates(reader);
+                            else
+                                reader.skipValue();
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw connectionFailure(uri);
+        }
+        if (Double.isNaN(lon) || Double.isNaN(lat))
+            throw connectionFailure(uri);
+        if (printStatus)
+            System.out.println("Connected to " + uri);
+
+        boolean polygonal = type == null ? depth >= 3 : type.equals("Polygon") || type.equals("MultiPolygon");
+        if (!polygonal || boundaries.partCount() == 0)
+            return Triple.of(lon, lat, new MultiPolygon(new double[] {lon, lat}, new int[] {0, 1}));
+        return Triple.of(lon, lat, boundaries.toMultiPolygon(0, boundaries.partCount()));
     }
 }
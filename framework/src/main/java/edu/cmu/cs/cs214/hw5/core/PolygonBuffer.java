@@ -0,0 +1,194 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * PolygonBuffer is a growable buffer of polygon coordinates in packed form: the x and y of all points are
+ * interleaved in a single array, and every polygon (part) is given by the index of its first point. It is
+ * used to read geometries point by point without allocating an object per point, and to build
+ * MultiPolygons from any range of its parts.
+ */
+class PolygonBuffer {
+
+    /**
+     * Coordinates of the points, interleaved as x and y.
+     */
+    private double[] coordinates = new double[256];
+
+    /**
+     * Number of points in the buffer.
+     */
+    private int pointCount;
+
+    /**
+     * Index of the first point of each part.
+     */
+    private int[] parts = new int[16];
+
+    /**
+     * Number of parts in the buffer.
+     */
+    private int partCount;
+
+    /**
+     * Start a new part at the given point.
+     *
+     * @param firstPoint index of the first point of the part.
+     */
+    void startPart(int firstPoint) {
+        if (partCount == parts.length)
+            parts = Arrays.copyOf(parts, parts.length * 2);
+        parts[partCount++] = firstPoint;
+    }
+
+    /**
+     * Start a new part at the next point added.
+     */
+    void startPart() {
+        startPart(pointCount);
+    }
+
+    /**
+     * Add a point to the last part.
+     *
+     * @param x x coordinate (longitude).
+     * @param y y coordinate (latitude).
+     */
+    void addPoint(double x, double y) {
+        if (2 * pointCount + 2 > coordinates.length)
+            coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+        coordinates[2 * pointCount] = x;
+        coordinates[2 * pointCount + 1] = y;
+        pointCount++;
+    }
+
+    /**
+     * Return the number of points in the buffer.
+     *
+     * @return number of points.
+     */
+    int pointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Return the number of parts in the buffer.
+     *
+     * @return number of parts.
+     */
+    int partCount() {
+        return partCount;
+    }
+
+    /**
+     * Return the x coordinate of a point.
+     *
+     * @param point index of the point.
+     * @return x coordinate of the point.
+     */
+    double x(int point) {
+        return coordinates[2 * point];
+    }
+
+    /**
+     * Return the y coordinate of a point.
+     *
+     * @param point index of the point.
+     * @return y coordinate of the point.
+     */
+    double y(int point) {
+        return coordinates[2 * point + 1];
+    }
+
+    /**
+     * Discard the parts and points added after the given counts.
+     *
+     * @param parts number of parts to keep.
+     * @param points number of points to keep.
+     */
+    void truncate(int parts, int points) {
+        partCount = parts;
+        pointCount = points;
+    }
+
+    /**
+     * Return a trimmed copy of the coordinates.
+     *
+     * @return coordinates of the points, interleaved as x and y.
+     */
+    double[] coordinates() {
+        return Arrays.copyOf(coordinates, 2 * pointCount);
+    }
+
+    /**
+     * Return the index of the first point of every part, followed by the number of points.
+     *
+     * @return offsets of the parts.
+     */
+    int[] partOffsets() {
+        int[] offsets = Arrays.copyOf(parts, partCount + 1);
+        offsets[partCount] = pointCount;
+        return offsets;
+    }
+
+    /**
+     * Build a MultiPolygon of a range of parts.
+     *
+     * @param fromPart index of the first part.
+     * @param toPart index after the last part.
+     * @return MultiPolygon of the parts.
+     */
+    MultiPolygon toMultiPolygon(int fromPart, int toPart) {
+        int firstPoint = fromPart < partCount ? parts[fromPart] : pointCount;
+        int endPoint = toPart < partCount ? parts[toPart] : pointCount;
+        int[] offsets = new int[toPart - fromPart + 1];
+        for (int i = fromPart; i < toPart; i++) {
+            offsets[i - fromPart] = parts[i] - firstPoint;
+        }
+        offsets[toPart - fromPart] = endPoint - firstPoint;
+        return new MultiPolygon(Arrays.copyOfRange(coordinates, 2 * firstPoint, 2 * endPoint), offsets);
+    }
+
+    /**
+     * Read the "coordinates" of a GeoJSON geometry into the buffer without building any intermediate tree.
+     * All positions are added as points, and every polygon (an array of rings) becomes one part made of all
+     * of its rings, the same way as the polygons returned by OpenStreetMap. The nesting depth of the
+     * coordinates tells the kind of geometry: 1 for a Point, 2 for a LineString or MultiPoint, 3 for a
+     * Polygon or MultiLineString and 4 for a MultiPolygon.
+     *
+     * @param reader reader positioned at the coordinates.
+     * @return the nesting depth of the coordinates.
+     * @throws IOException if the coordinates cannot be read.
+     */
+    int readGeoJsonCoordinates(JsonReader reader) throws IOException {
+        int firstPoint = pointCount;
+        reader.beginArray();
+        if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+            double x = reader.nextDouble();
+            double y = reader.nextDouble();
+            while (reader.hasNext())
+                reader.skipValue();
+            reader.endArray();
+            addPoint(x, y);
+            return 1;
+        }
+        int depth = 0;
+        boolean partStarted = false;
+        while (reader.hasNext()) {
+            int childDepth = readGeoJsonCoordinates(reader);
+            // Empty rings have depth 0, so the part starts at the first ring with points, from the polygon
+            // start. An array already holding polygons is a MultiPolygon, never a polygon.
+            if (!partStarted && childDepth == 2 && depth < 4) {
+                startPart(firstPoint);
+                partStarted = true;
+            }
+            depth = Math.max(depth, childDepth + 1);
+        }
+        reader.endArray();
+        return depth;
+    }
+}
@@ -0,0 +1,295 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.Arrays;
+
+/**
+ * PolygonMetrics computes the area, perimeter and centroid of packed polygons, both planar, in the units of
+ * the coordinates, and geodesic, on a sphere of the mean radius of the Earth with longitudes and latitudes
+ * in degrees. Polygons are split into rings like in {@link PolygonSimplifier}, and a ring inside an odd
+ * number of other rings is a hole, like the even-odd winding rule of {@link MultiPolygon#asShape()}, so the
+ * area of a hole is subtracted whichever the orientation of its ring. The perimeter is the length of all
+ * rings, holes included.
+ *
+ * <p>Geodesic areas and centroids are computed by splitting each ring into a fan of spherical triangles from
+ * its first point. The signed area of a triangle is its spherical excess, computed from the unit vectors of
+ * its points with the formula of Van Oosterom and Strackee, which stays accurate for tiny triangles, and
+ * the centroid is the sum of the directions of the triangles weighted by their areas.</p>
+ */
+final class PolygonMetrics {
+
+    /**
+     * Index of the planar area in the metrics.
+     */
+    static final int AREA = 0;
+
+    /**
+     * Index of the planar perimeter in the metrics.
+     */
+    static final int PERIMETER = 1;
+
+    /**
+     * Index of the x coordinate of the planar centroid in the metrics.
+     */
+    static final int CENTROID_X = 2;
+
+    /**
+     * Index of the y coordinate of the planar centroid in the metrics.
+     */
+    static final int CENTROID_Y = 3;
+
+    /**
+     * Index of the geodesic area, in square kilometers, in the metrics.
+     */
+    static final int GEODESIC_AREA = 4;
+
+    /**
+     * Index of the geodesic perimeter, in kilometers, in the metrics.
+     */
+    static final int GEODESIC_PERIMETER = 5;
+
+    /**
+     * Index of the longitude of the geodesic centroid in the metrics.
+     */
+    static final int GEODESIC_CENTROID_X = 6;
+
+    /**
+     * Index of the latitude of the geodesic centroid in the metrics.
+     */
+    static final int GEODESIC_CENTROID_Y = 7;
+
+    /**
+     * Number of metrics.
+     */
+    private static final int METRIC_COUNT = 8;
+
+    private PolygonMetrics() {
+    }
+
+    /**
+     * Compute the metrics of packed polygons. The centroids of polygons without area are the mean of their
+     * points, and the metrics of polygons without points are 0, with a NaN centroid.
+     *
+     * @param coordinates coordinates of all points, interleaved as x and y.
+     * @param polygonOffsets index of the first point of each polygon, followed by the number of points.
+     * @return the metrics, indexed by {@link #AREA}, {@link #PERIMETER}, etc.
+     */
+    static double[] compute(double[] coordinates, int[] polygonOffsets) {
+        double[] metrics = new double[METRIC_COUNT];
+        int pointCount = coordinates.length / 2;
+        if (pointCount == 0) {
+            Arrays.fill(metrics, CENTROID_X, CENTROID_Y + 1, Double.NaN);
+            Arrays.fill(metrics, GEODESIC_CENTROID_X, GEODESIC_CENTROID_Y + 1, Double.NaN);
+            return metrics;
+        }
+
+        int[] rings = rings(coordinates, polygonOffsets);
+        int ringCount = rings.length / 2;
+        double[] bounds = new double[4 * ringCount];
+        for (int r = 0; r < ringCount; r++)
+            ringBounds(coordinates, rings[2 * r], rings[2 * r + 1], bounds, 4 * r);
+
+        double[] unit = new double[3 * pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            double lambda = Math.toRadians(coordinates[2 * i]);
+            double phi = Math.toRadians(coordinates[2 * i + 1]);
+            unit[3 * i] = Math.cos(phi) * Math.cos(lambda);
+            unit[3 * i + 1] = Math.cos(phi) * Math.sin(lambda);
+            unit[3 * i + 2] = Math.sin(phi);
+        }
+
+        double area = 0, momentX = 0, momentY = 0, perimeter = 0;
+        double geodesicArea = 0, geodesicPerimeter = 0;
+        double[] direction = new double[3];
+        double[] ringDirection = new double[3];
+        for (int r = 0; r < ringCount; r++) {
+            int first = rings[2 * r], last = rings[2 * r + 1];
+            double sign = isHole(coordinates, rings, bounds, r) ? -1 : 1;
+
+            double x0 = coordinates[2 * first], y0 = coordinates[2 * first + 1];
+            double twiceArea = 0, ringMomentX = 0, ringMomentY = 0;
+            for (int i = first; i <= last; i++) {
+                int j = i == last ? first : i + 1;
+                double xi = coordinates[2 * i] - x0, yi = coordinates[2 * i + 1] - y0;
+                double xj = coordinates[2 * j] - x0, yj = coordinates[2 * j + 1] - y0;
+                double cross = xi * yj - xj * yi;
+                twiceArea += cross;
+                ringMomentX += (xi + xj) * cross;
+                ringMomentY += (yi + yj) * cross;
+                perimeter += Math.hypot(xj - xi, yj - yi);
+                geodesicPerimeter += angle(unit, i, j);
+            }
+            // Orient the ring so that its area has the sign of its contribution.
+            double orientation = twiceArea < 0 ? -sign : sign;
+            area += orientation * twiceArea / 2;
+            momentX += orientation * (ringMomentX / 6 + x0 * twiceArea / 2);
+            momentY += orientation * (ringMomentY / 6 + y0 * twiceArea / 2);
+
+            double excess = 0;
+            Arrays.fill(ringDirection, 0);
+            for (int i = first + 1; i < last; i++) {
+                double triangle = excess(unit, first, i, i + 1);
+                excess += triangle;
+                double dx = unit[3 * first] + unit[3 * i] + unit[3 * i + 3];
+                double dy = unit[3 * first + 1] + unit[3 * i + 1] + unit[3 * i + 4];
+                double dz = unit[3 * first + 2] + unit[3 * i + 2] + unit[3 * i + 5];
+                double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                if (norm > 0) {
+                    ringDirection[0] += triangle * dx / norm;
+                    ringDirection[1] += triangle * dy / norm;
+                    ringDirection[2] += triangle * dz / norm;
+                }
+            }
+            double geodesicOrientation = excess < 0 ? -sign : sign;
+            geodesicArea += geodesicOrientation * excess;
+            for (int k = 0; k < 3; k++)
+                direction[k] += geodesicOrientation * ringDirection[k];
+        }
+
+        double radius = SpatialRegion.EARTH_RADIUS_KM;
+        metrics[AREA] = Math.max(0, area);
+        metrics[PERIMETER] = perimeter;
+        metrics[GEODESIC_AREA] = Math.max(0, geodesicArea) * radius * radius;
+        metrics[GEODESIC_PERIMETER] = geodesicPerimeter * radius;
+        if (area > 0) {
+            metrics[CENTROID_X] = momentX / area;
+            metrics[CENTROID_Y] = momentY / area;
+        } else {
+            double sumX = 0, sumY = 0;
+            for (int i = 0; i < pointCount; i++) {
+                sumX += coordinates[2 * i];
+                sumY += coordinates[2 * i + 1];
+            }
+            metrics[CENTROID_X] = sumX / pointCount;
+            metrics[CENTROID_Y] = sumY / pointCount;
+        }
+        if (!(geodesicArea > 0) || direction[0] == 0 && direction[1] == 0 && direction[2] == 0) {
+            Arrays.fill(direction, 0);
+            for (int i = 0; i < pointCount; i++) {
+                for (int k = 0; k < 3; k++)
+                    direction[k] += unit[3 * i + k];
+            }
+        }
+        metrics[GEODESIC_CENTROID_X] = Math.toDegrees(Math.atan2(direction[1], direction[0]));
+        metrics[GEODESIC_CENTROID_Y] = Math.toDegrees(Math.atan2(direction[2], Math.hypot(direction[0], direction[1])));
+        return metrics;
+    }
+
+    /**
+     * Split packed polygons into rings.
+     *
+     * @param coordinates coordinates of all points.
+     * @param polygonOffsets index of the first point of each polygon, followed by the number of points.
+     * @return the index of the first and last point of every ring, interleaved.
+     */
+    private static int[] rings(double[] coordinates, int[] polygonOffsets) {
+        int[] rings = new int[2 * (polygonOffsets.length - 1)];
+        int count = 0;
+        for (int p = 0; p + 1 < polygonOffsets.length; p++) {
+            int end = polygonOffsets[p + 1];
+            int start = polygonOffsets[p];
+            while (start < end) {
+                int last = PolygonSimplifier.ringEnd(coordinates, start, end);
+                if (2 * count + 2 > rings.length)
+                    rings = Arrays.copyOf(rings, 2 * rings.length);
+                rings[2 * count] = start;
+                rings[2 * count + 1] = last;
+                count++;
+                start = last + 1;
+            }
+        }
+        return Arrays.copyOf(rings, 2 * count);
+    }
+
+    /**
+     * Compute the bounds of a ring.
+     *
+     * @param coordinates coordinates of all points.
+     * @param first index of the first point of the ring.
+     * @param last index of the last point of the ring.
+     * @param bounds array receiving the bounds as min x, min y, max x and max y.
+     * @param offset index of the min x in bounds.
+     */
+    private static void ringBounds(double[] coordinates, int first, int last, double[] bounds, int offset) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = first; i <= last; i++) {
+            minX = Math.min(minX, coordinates[2 * i]);
+            minY = Math.min(minY, coordinates[2 * i + 1]);
+            maxX = Math.max(maxX, coordinates[2 * i]);
+            maxY = Math.max(maxY, coordinates[2 * i + 1]);
+        }
+        bounds[offset] = minX;
+        bounds[offset + 1] = minY;
+        bounds[offset + 2] = maxX;
+        bounds[offset + 3] = maxY;
+    }
+
+    /**
+     * Check if a ring is a hole, i.e. if its first point is inside an odd number of other rings.
+     *
+     * @param coordinates coordinates of all points.
+     * @param rings the index of the first and last point of every ring, interleaved.
+     * @param bounds bounds of every ring.
+     * @param ring index of the ring.
+     * @return true if the ring is a hole and false otherwise.
+     */
+    private static boolean isHole(double[] coordinates, int[] rings, double[] bounds, int ring) {
+        double x = coordinates[2 * rings[2 * ring]], y = coordinates[2 * rings[2 * ring] + 1];
+        boolean hole = false;
+        for (int r = 0; r < rings.length / 2; r++) {
+            if (r == ring || x < bounds[4 * r] || y < bounds[4 * r + 1] || x > bounds[4 * r + 2] || y > bounds[4 * r + 3])
+                continue;
+            int first = rings[2 * r], last = rings[2 * r + 1];
+            boolean inside = false;
+            for (int i = first; i <= last; i++) {
+                int j = i == last ? first : i + 1;
+                double yi = coordinates[2 * i + 1], yj = coordinates[2 * j + 1];
+                if ((yi > y) != (yj > y)) {
+                    double xi = coordinates[2 * i], xj = coordinates[2 * j];
+                    if (x < xi + (y - yi) * (xj - xi) / (yj - yi))
+                        inside = !inside;
+                }
+            }
+            if (inside)
+                hole = !hole;
+        }
+        return hole;
+    }
+
+    /**
+     * Return the angle between two points on the unit sphere.
+     *
+     * @param unit unit vectors of all points.
+     * @param i index of the first point.
+     * @param j index of the second point.
+     * @return the angle between the points, in radians.
+     */
+    private static double angle(double[] unit, int i, int j) {
+        double ax = unit[3 * i], ay = unit[3 * i + 1], az = unit[3 * i + 2];
+        double bx = unit[3 * j], by = unit[3 * j + 1], bz = unit[3 * j + 2];
+        double cx = ay * bz - az * by, cy = az * bx - ax * bz, cz = ax * by - ay * bx;
+        return Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), ax * bx + ay * by + az * bz);
+    }
+
+    /**
+     * Return the signed spherical excess of a triangle on the unit sphere, positive if its points are
+     * counterclockwise seen from outside the sphere.
+     *
+     * @param unit unit vectors of all points.
+     * @param a index of the first point.
+     * @param b index of the second point.
+     * @param c index of the third point.
+     * @return the signed area of the triangle, in steradians.
+     */
+    private static double excess(double[] unit, int a, int b, int c) {
+        double ax = unit[3 * a], ay = unit[3 * a + 1], az = unit[3 * a + 2];
+        double bx = unit[3 * b], by = unit[3 * b + 1], bz = unit[3 * b + 2];
+        double cx = unit[3 * c], cy = unit[3 * c + 1], cz = unit[3 * c + 2];
+        // Differences to a keep the triple product accurate for tiny triangles.
+        double ux = bx - ax, uy = by - ay, uz = bz - az;
+        double vx = cx - ax, vy = cy - ay, vz = cz - az;
+        double triple = ax * (uy * vz - uz * vy) + ay * (uz * vx - ux * vz) + az * (ux * vy - uy * vx);
+        double dots = 1 + (ax * bx + ay * by + az * bz) + (bx * cx + by * cy + bz * cz) + (cx * ax + cy * ay + cz * az);
+        return 2 * Math.atan2(triple, dots);
+    }
+}
@@ -0,0 +1,384 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.Arrays;
+
+/**
+ * PolygonSimplifier derives coarser levels of detail of polygons locally, with the Douglas-Peucker
+ * algorithm, so that polygons fetched once at the finest resolution can be shown at any coarser one.
+ * A part of a MultiPolygon may hold several rings (e.g. an outer ring and its holes), each closed by
+ * repeating its first point. Rings are simplified one by one and keep their closing point, and the
+ * topology of every ring is preserved:
+ * <ul>
+ *     <li>a closed ring never collapses below a triangle, so no ring disappears, and</li>
+ *     <li>a simplified ring that would cross itself is simplified again with a smaller tolerance, down to
+ *     the original ring if needed.</li>
+ * </ul>
+ * Crossings between different rings are not checked.
+ */
+final class PolygonSimplifier {
+
+    /**
+     * Minimum number of points of a closed ring, i.e. a triangle and its closing point.
+     */
+    private static final int MIN_RING_SIZE = 4;
+
+    /**
+     * Number of times the tolerance of a self-crossing ring is halved before the ring is kept as is.
+     */
+    private static final int MAX_TOLERANCE_REDUCTIONS = 4;
+
+    /**
+     * Number of edges from which crossings are searched with a grid instead of comparing all pairs of edges.
+     */
+    private static final int GRID_MIN_EDGES = 64;
+
+    private PolygonSimplifier() {
+    }
+
+    /**
+     * Simplify packed polygons with the given tolerance.
+     *
+     * @param coordinates coordinates of all points, interleaved as x and y.
+     * @param polygonOffsets index of the first point of each polygon, followed by the number of points.
+     * @param tolerance maximum distance between a removed point and the simplified ring, in degrees.
+     * @return the simplified polygons.
+     */
+    static MultiPolygon simplify(double[] coordinates, int[] polygonOffsets, double tolerance) {
+        boolean[] keep = new boolean[coordinates.length / 2];
+        for (int p = 0; p + 1 < polygonOffsets.length; p++) {
+            int end = polygonOffsets[p + 1];
+            int start = polygonOffsets[p];
+            while (start < end) {
+                int last = ringEnd(coordinates, start, end);
+                simplifyRing(coordinates, start, last, tolerance, keep);
+                start = last + 1;
+            }
+        }
+
+        PolygonBuffer buffer = new PolygonBuffer();
+        for (int p = 0; p + 1 < polygonOffsets.length; p++) {
+            buffer.startPart();
+            for (int i = polygonOffsets[p]; i < polygonOffsets[p + 1]; i++) {
+                if (keep[i])
+                    buffer.addPoint(coordinates[2 * i], coordinates[2 * i + 1]);
+            }
+        }
+        return buffer.toMultiPolygon(0, buffer.partCount());
+    }
+
+    /**
+     * Return the index of the last point of the ring starting at the given point, i.e. the next point equal
+     * to the first one, or the last point of the part if the ring isn't closed.
+     *
+     * @param coordinates coordinates of all points.
+     * @param start index of the first point of the ring.
+     * @param end index after the last point of the part.
+     * @return index of the last point of the ring.
+     */
+    static int ringEnd(double[] coordinates, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            if (coordinates[2 * i] == coordinates[2 * start] && coordinates[2 * i + 1] == coordinates[2 * start + 1])
+                return i;
+        }
+        return end - 1;
+    }
+
+    /**
+     * Mark the points of a ring to keep.
+     *
+     * @param coordinates coordinates of all points.
+     * @param first index of the first point of the ring.
+     * @param last index of the last point of the ring.
+     * @param tolerance maximum distance between a removed point and the simplified ring.
+     * @param keep flags of the points to keep.
+     */
+    private static void simplifyRing(double[] coordinates, int first, int last, double tolerance, boolean[] keep) {
+        boolean closed = last > first && coordinates[2 * first] == coordinates[2 * last]
+                && coordinates[2 * first + 1] == coordinates[2 * last + 1];
+        if (last - first + 1 <= MIN_RING_SIZE || !(tolerance > 0)) {
+            for (int i = first; i <= last; i++)
+                keep[i] = true;
+            return;
+        }
+        for (int attempt = 0; attempt <= MAX_TOLERANCE_REDUCTIONS; attempt++, tolerance /= 2) {
+            for (int i = first; i <= last; i++)
+                keep[i] = false;
+            keep[first] = true;
+            keep[last] = true;
+            if (closed) {
+                // The first and last points are the same, so split the ring at its farthest point.
+                int far = first;
+                double farthest = -1;
+                for (int i = first + 1; i < last; i++) {
+                    double d = distance(coordinates, i, first, first);
+                    if (d > farthest) {
+                        farthest = d;
+                        far = i;
+                    }
+                }
+                keep[far] = true;
+                douglasPeucker(coordinates, first, far, tolerance, keep);
+                douglasPeucker(coordinates, far, last, tolerance, keep);
+                if (count(keep, first, last) < MIN_RING_SIZE)
+                    keepFarthest(coordinates, first, far, last, keep);
+            } else {
+                douglasPeucker(coordinates, first, last, tolerance, keep);
+            }
+            if (!crossesItself(coordinates, first, last, keep))
+                return;
+        }
+        for (int i = first; i <= last; i++)
+            keep[i] = true;
+    }
+
+    /**
+     * Mark the points to keep between two kept points with the Douglas-Peucker algorithm.
+     *
+     * @param coordinates coordinates of all points.
+     * @param first index of the first kept point.
+     * @param last index of the last kept point.
+     * @param tolerance maximum distance between a removed point and the simplified ring.
+     * @param keep flags of the points to keep.
+     */
+    private static void douglasPeucker(double[] coordinates, int first, int last, double tolerance, boolean[] keep) {
+        int[] stack = new int[64];
+        int size = 0;
+        stack[size++] = first;
+        stack[size++] = last;
+        while (size > 0) {
+            int to = stack[--size];
+            int from = stack[--size];
+            int far = -1;
+            double farthest = tolerance;
+            for (int i = from + 1; i < to; i++) {
+                double d = distance(coordinates, i, from, to);
+                if (d > farthest) {
+                    farthest = d;
+                    far = i;
+                }
+            }
+            if (far < 0)
+                continue;
+            keep[far] = true;
+            if (size + 4 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[size++] = from;
+            stack[size++] = far;
+            stack[size++] = far;
+            stack[size++] = to;
+        }
+    }
+
+    /**
+     * Keep the point farthest from the chords of the two halves of a closed ring, so that the ring stays
+     * a triangle at least.
+     *
+     * @param coordinates coordinates of all points.
+     * @param first index of the first point of the ring.
+     * @param far index of the point splitting the ring.
+     * @param last index of the last point of the ring.
+     * @param keep flags of the points to keep.
+     */
+    private static void keepFarthest(double[] coordinates, int first, int far, int last, boolean[] keep) {
+        int best = -1;
+        double farthest = -1;
+        for (int i = first + 1; i < last; i++) {
+            if (i == far)
+                continue;
+            double d = i < far ? distance(coordinates, i, first, far) : distance(coordinates, i, far, last);
+            if (d > farthest) {
+                farthest = d;
+                best = i;
+            }
+        }
+        if (best >= 0)
+            keep[best] = true;
+    }
+
+    /**
+     * Return the number of points kept in a range.
+     *
+     * @param keep flags of the points to keep.
+     * @param first index of the first point.
+     * @param last index of the last point.
+     * @return number of points kept.
+     */
+    private static int count(boolean[] keep, int first, int last) {
+        int count = 0;
+        for (int i = first; i <= last; i++) {
+            if (keep[i])
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Return the distance between a point and a segment.
+     *
+     * @param coordinates coordinates of all points.
+     * @param point index of the point.
+     * @param from index of the start of the segment.
+     * @param to index of the end of the segment.
+     * @return distance between the point and the segment.
+     */
+    private static double distance(double[] coordinates, int point, int from, int to) {
+        double x = coordinates[2 * point], y = coordinates[2 * point + 1];
+        double x1 = coordinates[2 * from], y1 = coordinates[2 * from + 1];
+        double dx = coordinates[2 * to] - x1, dy = coordinates[2 * to + 1] - y1;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / length));
+        return Math.hypot(x - x1 - t * dx, y - y1 - t * dy);
+    }
+
+    /**
+     * Check if the kept points of a ring form edges that cross each other. Edges that only touch, e.g. at
+     * a shared end point, are not considered crossing. Large rings are checked with a uniform grid of about
+     * one cell per edge, so that only the edges sharing a cell are compared, which takes linear time for
+     * the rings of real boundaries instead of quadratic time.
+     *
+     * @param coordinates coordinates of all points.
+     * @param first index of the first point of the ring.
+     * @param last index of the last point of the ring.
+     * @param keep flags of the points to keep.
+     * @return true if two edges cross and false otherwise.
+     */
+    private static boolean crossesItself(double[] coordinates, int first, int last, boolean[] keep) {
+        int[] kept = new int[count(keep, first, last)];
+        int n = 0;
+        for (int i = first; i <= last; i++) {
+            if (keep[i])
+                kept[n++] = i;
+        }
+        if (n - 1 >= GRID_MIN_EDGES)
+            return crossesInGrid(coordinates, kept, n);
+        for (int i = 0; i + 1 < n; i++) {
+            for (int j = i + 2; j + 1 < n; j++) {
+                if (segmentsCross(coordinates, kept[i], kept[i + 1], kept[j], kept[j + 1]))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if edges of a ring cross each other, comparing only the edges whose bounding boxes share a cell
+     * of a uniform grid over the ring.
+     *
+     * @param coordinates coordinates of all points.
+     * @param kept indexes of the points of the ring.
+     * @param n number of points of the ring.
+     * @return true if two edges cross and false otherwise.
+     */
+    private static boolean crossesInGrid(double[] coordinates, int[] kept, int n) {
+        int edges = n - 1;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, coordinates[2 * kept[i]]);
+            maxX = Math.max(maxX, coordinates[2 * kept[i]]);
+            minY = Math.min(minY, coordinates[2 * kept[i] + 1]);
+            maxY = Math.max(maxY, coordinates[2 * kept[i] + 1]);
+        }
+        int side = (int) Math.ceil(Math.sqrt(edges));
+        double cellWidth = (maxX - minX) / side, cellHeight = (maxY - minY) / side;
+
+        // Bucket the edges by cell, counting them first to fill a compact array.
+        int[] cellRanges = new int[4 * edges];
+        int[] cellStart = new int[side * side + 1];
+        for (int e = 0; e < edges; e++) {
+            cellRange(coordinates, kept[e], kept[e + 1], minX, minY, cellWidth, cellHeight, side, cellRanges, 4 * e);
+            for (int cx = cellRanges[4 * e]; cx <= cellRanges[4 * e + 1]; cx++) {
+                for (int cy = cellRanges[4 * e + 2]; cy <= cellRanges[4 * e + 3]; cy++)
+                    cellStart[cx * side + cy + 1]++;
+            }
+        }
+        for (int cell = 0; cell < side * side; cell++)
+            cellStart[cell + 1] += cellStart[cell];
+        int[] cellEdges = new int[cellStart[side * side]];
+        int[] fill = Arrays.copyOf(cellStart, side * side);
+        for (int e = 0; e < edges; e++) {
+            for (int cx = cellRanges[4 * e]; cx <= cellRanges[4 * e + 1]; cx++) {
+                for (int cy = cellRanges[4 * e + 2]; cy <= cellRanges[4 * e + 3]; cy++)
+                    cellEdges[fill[cx * side + cy]++] = e;
+            }
+        }
+
+        for (int cell = 0; cell < side * side; cell++) {
+            for (int a = cellStart[cell]; a < cellStart[cell + 1]; a++) {
+                for (int b = a + 1; b < cellStart[cell + 1]; b++) {
+                    int i = Math.min(cellEdges[a], cellEdges[b]), j = Math.max(cellEdges[a], cellEdges[b]);
+                    if (j > i + 1 && segmentsCross(coordinates, kept[i], kept[i + 1], kept[j], kept[j + 1]))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compute the range of grid cells covered by the bounding box of an edge.
+     *
+     * @param coordinates coordinates of all points.
+     * @param from index of the start of the edge.
+     * @param to index of the end of the edge.
+     * @param minX left bound of the grid.
+     * @param minY lower bound of the grid.
+     * @param cellWidth width of a cell.
+     * @param cellHeight height of a cell.
+     * @param side number of cells along each axis.
+     * @param range array receiving the first and last columns, then the first and last rows.
+     * @param offset index in the array of the first value.
+     */
+    private static void cellRange(double[] coordinates, int from, int to, double minX, double minY,
+                                  double cellWidth, double cellHeight, int side, int[] range, int offset) {
+        range[offset] = cell(Math.min(coordinates[2 * from], coordinates[2 * to]), minX, cellWidth, side);
+        range[offset + 1] = cell(Math.max(coordinates[2 * from], coordinates[2 * to]), minX, cellWidth, side);
+        range[offset + 2] = cell(Math.min(coordinates[2 * from + 1], coordinates[2 * to + 1]), minY, cellHeight, side);
+        range[offset + 3] = cell(Math.max(coordinates[2 * from + 1], coordinates[2 * to + 1]), minY, cellHeight, side);
+    }
+
+    /**
+     * Return the index of the grid cell of a coordinate along an axis.
+     *
+     * @param value coordinate.
+     * @param min lower bound of the grid along the axis.
+     * @param size size of a cell along the axis.
+     * @param side number of cells along the axis.
+     * @return index of the cell.
+     */
+    private static int cell(double value, double min, double size, int side) {
+        if (!(size > 0))
+            return 0;
+        return Math.max(0, Math.min(side - 1, (int) ((value - min) / size)));
+    }
+
+    /**
+     * Check if two segments properly cross each other.
+     *
+     * @param coordinates coordinates of all points.
+     * @param a start of the first segment.
+     * @param b end of the first segment.
+     * @param c start of the second segment.
+     * @param d end of the second segment.
+     * @return true if the segments cross at a point inside both of them.
+     */
+    private static boolean segmentsCross(double[] coordinates, int a, int b, int c, int d) {
+        double d1 = cross(coordinates, c, d, a), d2 = cross(coordinates, c, d, b);
+        double d3 = cross(coordinates, a, b, c), d4 = cross(coordinates, a, b, d);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    /**
+     * Return the cross product of (b - a) and (p - a).
+     *
+     * @param coordinates coordinates of all points.
+     * @param a index of the origin.
+     * @param b index of the end of the first vector.
+     * @param p index of the end of the second vector.
+     * @return the cross product.
+     */
+    private static double cross(double[] coordinates, int a, int b, int p) {
+        return (coordinates[2 * b] - coordinates[2 * a]) * (coordinates[2 * p + 1] - coordinates[2 * a + 1])
+                - (coordinates[2 * b + 1] - coordinates[2 * a + 1]) * (coordinates[2 * p] - coordinates[2 * a]);
+    }
+}
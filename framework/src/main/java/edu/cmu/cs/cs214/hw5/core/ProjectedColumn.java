@@ -0,0 +1,166 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+/**
+ * ProjectedColumn is a POLYGONS column of a DataSet projected once with a {@link Projection}. Every row is a
+ * MultiPolygon whose packed coordinates are projected, so that drawing the column again only transforms
+ * the projected points to pixels with an affine transform, e.g. through
+ * {@code get(row).levelOfDetail(pixelsPerUnit).asShape(toPixels)}. The projection is fitted to the bounds of
+ * the column. Projected MultiPolygons are cached by their source MultiPolygon, so MultiPolygons shared by
+ * several rows, or by the dataSets filtered from the same dataSet to be displayed, are projected once as
+ * long as the fitted parameters are the same. This class is immutable.
+ */
+public final class ProjectedColumn {
+
+    /**
+     * Projection of the column.
+     */
+    private final Projection projection;
+
+    /**
+     * Parameters of the projection fitted to the column.
+     */
+    private final double[] params;
+
+    /**
+     * Projected MultiPolygons by row.
+     */
+    private final MultiPolygon[] rows;
+
+    /**
+     * Bounds of the projected MultiPolygons.
+     */
+    private final double minX, minY, maxX, maxY;
+
+    /**
+     * Project the MultiPolygons of a column.
+     *
+     * @param column MultiPolygons of the column, by row.
+     * @param projection projection of the column.
+     */
+    ProjectedColumn(List<MultiPolygon> column, Projection projection) {
+        this.projection = projection;
+        double minLon = Double.POSITIVE_INFINITY, minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (MultiPolygon polygons : column) {
+            if (polygons.pointCount() == 0)
+                continue;
+            minLon = Math.min(minLon, polygons.getMinX());
+            minLat = Math.min(minLat, polygons.getMinY());
+            maxLon = Math.max(maxLon, polygons.getMaxX());
+            maxLat = Math.max(maxLat, polygons.getMaxY());
+        }
+        this.params = minLon <= maxLon ? projection.fit(minLon, minLat, maxLon, maxLat)
+                : projection.fit(-180, -90, 180, 90);
+
+        rows = new MultiPolygon[column.size()];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = column.get(i).project(projection, params);
+            if (rows[i].pointCount() == 0)
+                continue;
+            minX = Math.min(minX, rows[i].getMinX());
+            minY = Math.min(minY, rows[i].getMinY());
+            maxX = Math.max(maxX, rows[i].getMaxX());
+            maxY = Math.max(maxY, rows[i].getMaxY());
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Return the projection of the column.
+     *
+     * @return projection of the column.
+     */
+    public Projection getProjection() {
+        return projection;
+    }
+
+    /**
+     * Return the number of rows.
+     *
+     * @return number of rows.
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Return the projected MultiPolygon of a row.
+     *
+     * @param row row number.
+     * @return the projected MultiPolygon of the row.
+     */
+    public MultiPolygon get(int row) {
+        return rows[row];
+    }
+
+    /**
+     * Return the left bound of the projected column.
+     *
+     * @return the left bound of the projected column.
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Return the lower bound of the projected column.
+     *
+     * @return the lower bound of the projected column.
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Return the right bound of the projected column.
+     *
+     * @return the right bound of the projected column.
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Return the upper bound of the projected column.
+     *
+     * @return the upper bound of the projected column.
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Project a point with the projection fitted to the column.
+     *
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @return the projected point.
+     */
+    public Point2D project(double longitude, double latitude) {
+        double[] out = new double[2];
+        projection.forward(params, longitude, latitude, out, 0);
+        return new Point2D.Double(out[0], out[1]);
+    }
+
+    /**
+     * Return a projected point to longitude and latitude, e.g. to find the rows under the mouse with
+     * {@link DataSet#rowsContaining(String, double, double)}.
+     *
+     * @param x projected x of the point.
+     * @param y projected y of the point.
+     * @return the point as longitude (x) and latitude (y).
+     */
+    public Point2D unproject(double x, double y) {
+        double[] out = new double[2];
+        projection.inverse(params, x, y, out);
+        return new Point2D.Double(out[0], out[1]);
+    }
+}
@@ -0,0 +1,206 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Projection enumerates the map projections a POLYGONS column can be displayed with. Projected coordinates
+ * are in degrees of a great circle, so that they are in the same range as longitudes and latitudes and
+ * the levels of detail of {@link MultiPolygon#levelOfDetail(double)} apply to them. A projection is fitted
+ * to the bounds of the column it projects, e.g. the standard parallels of the Albers projection are at
+ * one sixth and five sixths of the range of latitudes, and its parameters are kept in a double array.
+ * Columns are projected with {@link DataSet#project(String, Projection)}.
+ */
+public enum Projection {
+    /**
+     * Longitude and latitude used as x and y, which stretches areas away from the equator.
+     */
+    EQUIRECTANGULAR("Equirectangular") {
+        @Override
+        void forward(double[] params, double longitude, double latitude, double[] out, int offset) {
+            out[offset] = longitude;
+            out[offset + 1] = latitude;
+        }
+
+        @Override
+        void inverse(double[] params, double x, double y, double[] out) {
+            out[0] = x;
+            out[1] = y;
+        }
+    },
+
+    /**
+     * Spherical Mercator used by web maps, which preserves angles and clamps latitudes to the square
+     * of web tiles (about 85 degrees).
+     */
+    WEB_MERCATOR("Web Mercator") {
+        @Override
+        void forward(double[] params, double longitude, double latitude, double[] out, int offset) {
+            double phi = Math.toRadians(Math.max(-MAX_MERCATOR_LATITUDE, Math.min(MAX_MERCATOR_LATITUDE, latitude)));
+            out[offset] = longitude;
+            out[offset + 1] = Math.toDegrees(Math.log(Math.tan(Math.PI / 4 + phi / 2)));
+        }
+
+        @Override
+        void inverse(double[] params, double x, double y, double[] out) {
+            out[0] = x;
+            out[1] = Math.toDegrees(2 * Math.atan(Math.exp(Math.toRadians(y))) - Math.PI / 2);
+        }
+    },
+
+    /**
+     * Albers conic projection on the sphere, which preserves areas, so that the regions of a choropleth map
+     * are compared fairly. The parameters are the central meridian, the cone constant n, C and rho0. A
+     * range of latitudes symmetric around the equator gives a cone constant of 0, in which case the
+     * cylindrical equal-area projection, the limit of the conic one, is used.
+     */
+    ALBERS_EQUAL_AREA("Albers Equal-Area") {
+        @Override
+        double[] fit(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude) {
+            double phi1 = Math.toRadians(minLatitude + (maxLatitude - minLatitude) / 6);
+            double phi2 = Math.toRadians(maxLatitude - (maxLatitude - minLatitude) / 6);
+            double phi0 = Math.toRadians((minLatitude + maxLatitude) / 2);
+            double n = (Math.sin(phi1) + Math.sin(phi2)) / 2;
+            double c = Math.cos(phi1) * Math.cos(phi1) + 2 * n * Math.sin(phi1);
+            double rho0 = Math.abs(n) < MIN_CONE_CONSTANT ? 0 : Math.sqrt(c - 2 * n * Math.sin(phi0)) / n;
+            return new double[] {(minLongitude + maxLongitude) / 2, n, c, rho0};
+        }
+
+        @Override
+        void forward(double[] params, double longitude, double latitude, double[] out, int offset) {
+            double lambda = Math.toRadians(wrap(longitude - params[0]));
+            double phi = Math.toRadians(latitude);
+            double n = params[1];
+            if (Math.abs(n) < MIN_CONE_CONSTANT) {
+                out[offset] = Math.toDegrees(lambda);
+                out[offset + 1] = Math.toDegrees(Math.sin(phi));
+                return;
+            }
+            double rho = Math.sqrt(Math.max(0, params[2] - 2 * n * Math.sin(phi))) / n;
+            double theta = n * lambda;
+            out[offset] = Math.toDegrees(rho * Math.sin(theta));
+            out[offset + 1] = Math.toDegrees(params[3] - rho * Math.cos(theta));
+        }
+
+        @Override
+        void inverse(double[] params, double x, double y, double[] out) {
+            double n = params[1];
+            x = Math.toRadians(x);
+            y = Math.toRadians(y);
+            if (Math.abs(n) < MIN_CONE_CONSTANT) {
+                out[0] = params[0] + Math.toDegrees(x);
+                out[1] = Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, y))));
+                return;
+            }
+            double dy = params[3] - y;
+            double rho = Math.copySign(Math.hypot(x, dy), n);
+            double theta = n > 0 ? Math.atan2(x, dy) : Math.atan2(-x, -dy);
+            double sin = (params[2] - rho * rho * n * n) / (2 * n);
+            out[0] = params[0] + Math.toDegrees(theta / n);
+            out[1] = Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, sin))));
+        }
+    };
+
+    /**
+     * Largest latitude of the Web Mercator projection, where the map is square.
+     */
+    private static final double MAX_MERCATOR_LATITUDE = 85.05112878;
+
+    /**
+     * Cone constant below which the Albers projection is replaced by the cylindrical equal-area one.
+     */
+    private static final double MIN_CONE_CONSTANT = 1e-6;
+
+    /**
+     * Name of the projection shown to the user.
+     */
+    private final String displayName;
+
+    /**
+     * Initialize a projection with its display name.
+     *
+     * @param displayName name of the projection shown to the user.
+     */
+    Projection(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Return the name of the projection shown to the user.
+     *
+     * @return name of the projection shown to the user.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Return the display names of all projections.
+     *
+     * @return display names of all projections.
+     */
+    public static List<String> displayNames() {
+        return Arrays.stream(values()).map(Projection::getDisplayName).collect(Collectors.toList());
+    }
+
+    /**
+     * Return the projection with the given display name.
+     *
+     * @param displayName name of the projection shown to the user.
+     * @return the projection with the given display name.
+     */
+    public static Projection fromDisplayName(String displayName) {
+        for (Projection projection : values()) {
+            if (projection.displayName.equals(displayName))
+                return projection;
+        }
+        throw new IllegalArgumentException("Unknown Projection");
+    }
+
+    /**
+     * Return the parameters of this projection fitted to the given bounds.
+     *
+     * @param minLongitude left bound.
+     * @param minLatitude lower bound.
+     * @param maxLongitude right bound.
+     * @param maxLatitude upper bound.
+     * @return the parameters of this projection.
+     */
+    double[] fit(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude) {
+        return new double[0];
+    }
+
+    /**
+     * Project a point.
+     *
+     * @param params parameters returned by {@link #fit}.
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @param out array receiving the projected x and y.
+     * @param offset index of the projected x in out.
+     */
+    abstract void forward(double[] params, double longitude, double latitude, double[] out, int offset);
+
+    /**
+     * Return a projected point to longitude and latitude.
+     *
+     * @param params parameters returned by {@link #fit}.
+     * @param x projected x of the point.
+     * @param y projected y of the point.
+     * @param out array receiving the longitude and latitude.
+     */
+    abstract void inverse(double[] params, double x, double y, double[] out);
+
+    /**
+     * Wrap a difference of longitudes to [-180, 180].
+     *
+     * @param longitude difference of longitudes.
+     * @return the difference wrapped to [-180, 180].
+     */
+    private static double wrap(double longitude) {
+        if (longitude > 180)
+            return longitude - 360;
+        return longitude < -180 ? longitude + 360 : longitude;
+    }
+}
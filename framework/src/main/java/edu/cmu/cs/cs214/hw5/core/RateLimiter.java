@@ -0,0 +1,110 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * RateLimiter is a non-blocking token bucket. Tokens are added at a fixed rate up to the burst size, and
+ * {@link #acquire()} returns a future that completes once a token is available instead of blocking the
+ * caller, so that requests can be paced without tying up threads.
+ */
+class RateLimiter {
+
+    /**
+     * Scheduler completing the futures of delayed acquisitions, shared by all rate limiters.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rate-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Interval between two tokens in nanoseconds.
+     */
+    private final long intervalNanos;
+
+    /**
+     * Time in nanoseconds it takes to fill the bucket from empty.
+     */
+    private final long burstNanos;
+
+    /**
+     * Source of the current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Time in nanoseconds at which the next token is granted, which is in the past while tokens are left.
+     */
+    private long nextFree;
+
+    /**
+     * Initialize a rate limiter.
+     *
+     * @param permitsPerSecond number of tokens added per second.
+     * @param burst maximum number of tokens that can be acquired at once after being idle.
+     */
+    RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * Initialize a rate limiter with the given clock.
+     *
+     * @param permitsPerSecond number of tokens added per second.
+     * @param burst maximum number of tokens that can be acquired at once after being idle.
+     * @param clock source of the current time in nanoseconds.
+     */
+    RateLimiter(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (!(permitsPerSecond > 0) || burst < 1)
+            throw new IllegalArgumentException("Invalid Rate Limit");
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstNanos = intervalNanos * burst;
+        this.clock = clock;
+        this.nextFree = clock.getAsLong() - burstNanos;
+    }
+
+    /**
+     * Return a rate limiter that never delays.
+     *
+     * @return an unlimited rate limiter.
+     */
+    static RateLimiter unlimited() {
+        return new RateLimiter(Double.MAX_VALUE, 1) {
+            @Override
+            CompletableFuture<Void> acquire() {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+    }
+
+    /**
+     * Acquire a token.
+     *
+     * @return a future completed once the token is granted.
+     */
+    CompletableFuture<Void> acquire() {
+        long delay = reserve();
+        if (delay <= 0)
+            return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> granted = new CompletableFuture<>();
+        SCHEDULER.schedule(() -> granted.complete(null), delay, TimeUnit.NANOSECONDS);
+        return granted;
+    }
+
+    /**
+     * Reserve the next token and return how long to wait for it.
+     *
+     * @return waiting time in nanoseconds, zero or negative if the token is available now.
+     */
+    synchronized long reserve() {
+        long now = clock.getAsLong();
+        long slot = Math.max(nextFree, now - burstNanos);
+        nextFree = slot + intervalNanos;
+        return nextFree - now;
+    }
+}
@@ -0,0 +1,76 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RowSource is a source of rows that is read batch by batch, so that the framework can filter, project
+ * or aggregate the rows while they are being read without holding the whole data in memory. It is returned
+ * by {@link DataPlugin#openRowSource} and closed by the framework once all rows have been read.
+ *
+ * The labels and data types follow the same rules as the ones used to create a {@link DataSet}, and
+ * every row in a batch is a list of objects in positions corresponding to the labels.
+ */
+public interface RowSource extends AutoCloseable {
+
+    /**
+     * Return the list of column labels of the rows.
+     *
+     * @return list of column labels.
+     */
+    List<String> getLabels();
+
+    /**
+     * Return the list of data types of the rows.
+     *
+     * @return list of data types.
+     */
+    List<DataType> getDataTypes();
+
+    /**
+     * Read and return the next batch of rows.
+     *
+     * @return the next batch of rows, or an empty list if all rows have been read.
+     */
+    List<List<Object>> nextBatch();
+
+    /**
+     * Release the resources held by this source.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Return a row source that reads all rows of a data set in one batch.
+     *
+     * @param dataSet data set to be read.
+     * @return a row source reading the data set.
+     */
+    static RowSource of(DataSet dataSet) {
+        return new RowSource() {
+            /**
+             * Whether the rows have been read.
+             */
+            private boolean read;
+
+            @Override
+            public List<String> getLabels() {
+                return dataSet.getLabels();
+            }
+
+            @Override
+            public List<DataType> getDataTypes() {
+                return dataSet.getDataTypes();
+            }
+
+            @Override
+            public List<List<Object>> nextBatch() {
+                if (read)
+                    return new ArrayList<>();
+                read = true;
+                return dataSet.toLists();
+            }
+        };
+    }
+}
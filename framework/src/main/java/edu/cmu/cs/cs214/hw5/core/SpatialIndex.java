@@ -0,0 +1,305 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SpatialIndex is a static R-tree over the bounding boxes of the MultiPolygons of a POLYGONS column, or over
+ * the points of a longitude and a latitude column, which finds the rows near a rectangle or a point without
+ * testing every row. The tree is bulk loaded with the Sort-Tile-Recursive algorithm: the boxes of a level
+ * are sorted by the x of their center into vertical slices, each slice is sorted by the y of the center,
+ * and every run of {@link #NODE_SIZE} consecutive boxes becomes a node of the next level, up to a single
+ * root. The tree is packed in two arrays and has no node object: level after level from the leaves to the
+ * root, a node is four doubles of {@link #boxes} and an int of {@link #indices}, which is the row of a leaf
+ * or the position of the first child of an inner node. The index is immutable and thread safe.
+ */
+final class SpatialIndex {
+
+    /**
+     * Maximum number of children of a node.
+     */
+    static final int NODE_SIZE = 16;
+
+    /**
+     * MultiPolygons indexed, by row, or null if points are indexed.
+     */
+    private final MultiPolygon[] polygons;
+
+    /**
+     * Bounding boxes of the nodes as minX, minY, maxX, maxY, from the leaves to the root.
+     */
+    private final double[] boxes;
+
+    /**
+     * Row of every leaf, followed by the position of the first child of every inner node.
+     */
+    private final int[] indices;
+
+    /**
+     * Position of the end of every level, from the leaves to the root.
+     */
+    private final int[] levelEnds;
+
+    /**
+     * Bulk load an index over the given MultiPolygons, one per row.
+     *
+     * @param rows MultiPolygons to index, by row.
+     */
+    SpatialIndex(List<MultiPolygon> rows) {
+        this(rows.toArray(new MultiPolygon[0]), rows.size());
+        for (int i = 0; i < polygons.length; i++) {
+            MultiPolygon p = polygons[i];
+            setNode(i, p.getMinX(), p.getMinY(), p.getMaxX(), p.getMaxY(), i);
+        }
+        load(polygons.length);
+    }
+
+    /**
+     * Bulk load an index over the given points, one per row. Points with a NaN coordinate are never found.
+     *
+     * @param xs x coordinates (longitudes) of the points, by row.
+     * @param ys y coordinates (latitudes) of the points, by row.
+     */
+    SpatialIndex(double[] xs, double[] ys) {
+        this(null, xs.length);
+        if (ys.length != xs.length)
+            throw new IllegalArgumentException("Invalid Size");
+        for (int i = 0; i < xs.length; i++)
+            setNode(i, xs[i], ys[i], xs[i], ys[i], i);
+        load(xs.length);
+    }
+
+    /**
+     * Allocate the arrays of a tree over the given number of rows.
+     *
+     * @param polygons MultiPolygons indexed, or null if points are indexed.
+     * @param count number of rows.
+     */
+    private SpatialIndex(MultiPolygon[] polygons, int count) {
+        this.polygons = polygons;
+        int levels = 1;
+        int nodes = count;
+        for (int n = count; n > 1; levels++) {
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+            nodes += n;
+        }
+        boxes = new double[4 * nodes];
+        indices = new int[nodes];
+        levelEnds = new int[levels];
+    }
+
+    /**
+     * Build the levels of the tree above the leaves, which must be set.
+     *
+     * @param count number of leaves.
+     */
+    private void load(int count) {
+        int start = 0;
+        int end = count;
+        for (int level = 0; ; level++) {
+            sortTiles(start, end);
+            levelEnds[level] = end;
+            if (end - start <= 1)
+                break;
+            int parent = end;
+            for (int child = start; child < end; child += NODE_SIZE, parent++) {
+                int last = Math.min(child + NODE_SIZE, end);
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                // Comparisons skip the NaN bounds of the points which are never found.
+                for (int c = child; c < last; c++) {
+                    if (boxes[4 * c] < minX)
+                        minX = boxes[4 * c];
+                    if (boxes[4 * c + 1] < minY)
+                        minY = boxes[4 * c + 1];
+                    if (boxes[4 * c + 2] > maxX)
+                        maxX = boxes[4 * c + 2];
+                    if (boxes[4 * c + 3] > maxY)
+                        maxY = boxes[4 * c + 3];
+                }
+                setNode(parent, minX, minY, maxX, maxY, child);
+            }
+            start = end;
+            end = parent;
+        }
+    }
+
+    /**
+     * Set the bounding box and the index of a node.
+     *
+     * @param node position of the node.
+     * @param minX left bound of the node.
+     * @param minY lower bound of the node.
+     * @param maxX right bound of the node.
+     * @param maxY upper bound of the node.
+     * @param index row of a leaf or position of the first child of an inner node.
+     */
+    private void setNode(int node, double minX, double minY, double maxX, double maxY, int index) {
+        boxes[4 * node] = minX;
+        boxes[4 * node + 1] = minY;
+        boxes[4 * node + 2] = maxX;
+        boxes[4 * node + 3] = maxY;
+        indices[node] = index;
+    }
+
+    /**
+     * Reorder the nodes of a level in Sort-Tile-Recursive order: sorted by the x of their center into
+     * vertical slices of whole parent nodes, then by the y of their center within each slice.
+     *
+     * @param start position of the first node of the level.
+     * @param end position of the end of the level.
+     */
+    private void sortTiles(int start, int end) {
+        int count = end - start;
+        if (count <= 1)
+            return;
+        int parents = (count + NODE_SIZE - 1) / NODE_SIZE;
+        int sliceSize = NODE_SIZE * (int) Math.ceil((double) parents / Math.ceil(Math.sqrt(parents)));
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = start + i;
+        sortByCenter(order, 0, count, 0);
+        for (int slice = 0; slice < count; slice += sliceSize)
+            sortByCenter(order, slice, Math.min(slice + sliceSize, count), 1);
+
+        double[] sortedBoxes = new double[4 * count];
+        int[] sortedIndices = new int[count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(boxes, 4 * order[i], sortedBoxes, 4 * i, 4);
+            sortedIndices[i] = indices[order[i]];
+        }
+        System.arraycopy(sortedBoxes, 0, boxes, 4 * start, 4 * count);
+        System.arraycopy(sortedIndices, 0, indices, start, count);
+    }
+
+    /**
+     * Sort a range of nodes by the center of their bounding box along an axis. The centers are quantized to
+     * 31 bits over the range of the centers, and sorted with the position of the node as longs, which is
+     * much faster than sorting boxed positions with a comparator on large columns.
+     *
+     * @param order positions of the nodes, sorted in place.
+     * @param from first index of the range in order.
+     * @param to end of the range in order.
+     * @param axis 0 to sort by x and 1 to sort by y.
+     */
+    private void sortByCenter(int[] order, int from, int to, int axis) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            double center = center(order[i], axis);
+            if (center < min)
+                min = center;
+            if (center > max)
+                max = center;
+        }
+        double scale = max > min ? Integer.MAX_VALUE / (max - min) : 0;
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            double center = center(order[i], axis);
+            long quantized = center >= min ? (long) ((center - min) * scale) : 0;
+            keys[i - from] = quantized << 32 | order[i];
+        }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++)
+            order[i] = (int) keys[i - from];
+    }
+
+    /**
+     * Return twice the center of the bounding box of a node along an axis.
+     *
+     * @param node position of the node.
+     * @param axis 0 for x and 1 for y.
+     * @return sum of the bounds of the node along the axis.
+     */
+    private double center(int node, int axis) {
+        return boxes[4 * node + axis] + boxes[4 * node + 2 + axis];
+    }
+
+    /**
+     * Return the number of rows indexed.
+     *
+     * @return number of rows indexed.
+     */
+    int size() {
+        return levelEnds[0];
+    }
+
+    /**
+     * Return the rows whose MultiPolygon contains the given point, e.g. the rows under the mouse, or whose
+     * point is the given point.
+     *
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @return the rows in ascending order.
+     */
+    int[] containing(double x, double y) {
+        int[] candidates = search(x, y, x, y);
+        if (polygons == null)
+            return candidates;
+        int count = 0;
+        for (int row : candidates) {
+            if (polygons[row].contains(x, y))
+                candidates[count++] = row;
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Return the rows whose bounding box intersects the given rectangle, e.g. the rows to draw in a
+     * viewport, or whose point is inside it. The MultiPolygons of the rows may not intersect the rectangle
+     * themselves. The tree is traversed from the root down to the leaves intersecting the rectangle.
+     *
+     * @param minX left bound of the rectangle.
+     * @param minY lower bound of the rectangle.
+     * @param maxX right bound of the rectangle.
+     * @param maxY upper bound of the rectangle.
+     * @return the rows in ascending order.
+     */
+    int[] search(double minX, double minY, double maxX, double maxY) {
+        if (indices.length == 0 || !(minX <= maxX && minY <= maxY))
+            return new int[0];
+        int[] rows = new int[16];
+        int count = 0;
+        int[] stack = new int[2 * NODE_SIZE * levelEnds.length];
+        int top = 0;
+        int root = levelEnds[levelEnds.length - 1] - 1;
+        stack[top++] = root;
+        stack[top++] = levelEnds.length - 1;
+        while (top > 0) {
+            int level = stack[--top];
+            int node = stack[--top];
+            if (!overlaps(node, minX, minY, maxX, maxY))
+                continue;
+            if (level == 0) {
+                if (count == rows.length)
+                    rows = Arrays.copyOf(rows, 2 * count);
+                rows[count++] = indices[node];
+                continue;
+            }
+            int first = indices[node];
+            int last = Math.min(first + NODE_SIZE, levelEnds[level - 1]);
+            for (int child = first; child < last; child++) {
+                stack[top++] = child;
+                stack[top++] = level - 1;
+            }
+        }
+        rows = Arrays.copyOf(rows, count);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Check if the bounding box of a node intersects a rectangle, boundaries included.
+     *
+     * @param node position of the node.
+     * @param minX left bound of the rectangle.
+     * @param minY lower bound of the rectangle.
+     * @param maxX right bound of the rectangle.
+     * @param maxY upper bound of the rectangle.
+     * @return true if the bounding box intersects the rectangle and false otherwise.
+     */
+    private boolean overlaps(int node, double minX, double minY, double maxX, double maxY) {
+        return boxes[4 * node] <= maxX && boxes[4 * node + 1] <= maxY
+                && boxes[4 * node + 2] >= minX && boxes[4 * node + 3] >= minY;
+    }
+}
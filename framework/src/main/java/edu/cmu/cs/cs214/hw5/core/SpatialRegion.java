@@ -0,0 +1,369 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * SpatialRegion is a region of the map that rows are filtered by: a bounding box, the points within a
+ * distance of a center, or a polygon. Coordinates are longitudes and latitudes in degrees. The bounds of a
+ * region select the candidate rows in a {@link SpatialIndex}, and the exact tests are run on the candidates
+ * only.
+ */
+abstract class SpatialRegion {
+
+    /**
+     * Mean radius of the Earth in kilometers.
+     */
+    static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /**
+     * Bounds of the region.
+     */
+    final double minX, minY, maxX, maxY;
+
+    /**
+     * Initialize a region with its bounds.
+     *
+     * @param minX left bound of the region.
+     * @param minY lower bound of the region.
+     * @param maxX right bound of the region.
+     * @param maxY upper bound of the region.
+     */
+    private SpatialRegion(double minX, double minY, double maxX, double maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Return the region inside a bounding box.
+     *
+     * @param minX left bound of the box.
+     * @param minY lower bound of the box.
+     * @param maxX right bound of the box.
+     * @param maxY upper bound of the box.
+     * @return the region inside the box.
+     */
+    static SpatialRegion box(double minX, double minY, double maxX, double maxY) {
+        if (!(minX < maxX && minY < maxY))
+            throw new IllegalArgumentException("Invalid Bounding Box");
+        return new Box(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Return the region within a great-circle distance of a center.
+     *
+     * @param longitude longitude of the center.
+     * @param latitude latitude of the center.
+     * @param radiusKm distance to the center in kilometers.
+     * @return the region within the distance of the center.
+     */
+    static SpatialRegion circle(double longitude, double latitude, double radiusKm) {
+        if (!(Math.abs(longitude) <= 180 && Math.abs(latitude) <= 90))
+            throw new IllegalArgumentException("Invalid Coordinates");
+        if (!(radiusKm >= 0))
+            throw new IllegalArgumentException("Invalid Radius");
+        return new Circle(longitude, latitude, radiusKm);
+    }
+
+    /**
+     * Return the region inside a polygon, by the even-odd rule.
+     *
+     * @param vertices coordinates of the vertices, interleaved as x and y. The polygon is closed implicitly.
+     * @return the region inside the polygon.
+     */
+    static SpatialRegion polygon(double[] vertices) {
+        if (vertices.length < 6 || vertices.length % 2 != 0)
+            throw new IllegalArgumentException("Polygon Needs At Least 3 Points");
+        return new Polygon(vertices);
+    }
+
+    /**
+     * Check if a point is inside the region.
+     *
+     * @param x x coordinate (longitude) of the point.
+     * @param y y coordinate (latitude) of the point.
+     * @return true if the point is inside the region and false otherwise.
+     */
+    abstract boolean contains(double x, double y);
+
+    /**
+     * Check if a MultiPolygon intersects the region.
+     *
+     * @param polygons the MultiPolygon.
+     * @return true if the MultiPolygon intersects the region and false otherwise.
+     */
+    abstract boolean intersects(MultiPolygon polygons);
+
+    /**
+     * Check if the bounds of a MultiPolygon intersect the bounds of the region.
+     *
+     * @param polygons the MultiPolygon.
+     * @return true if the bounds intersect and false otherwise.
+     */
+    final boolean boundsIntersect(MultiPolygon polygons) {
+        return polygons.getMinX() <= maxX && polygons.getMaxX() >= minX
+                && polygons.getMinY() <= maxY && polygons.getMaxY() >= minY;
+    }
+
+    /**
+     * Return the candidate rows of an index, whose bounds intersect the bounds of the region. Bounds of the
+     * region beyond the antimeridian are wrapped around.
+     *
+     * @param index index of the rows.
+     * @return the candidate rows in ascending order.
+     */
+    final int[] candidates(SpatialIndex index) {
+        int[] rows = index.search(minX, minY, maxX, maxY);
+        if (minX < -180)
+            rows = union(rows, index.search(minX + 360, minY, 180, maxY));
+        if (maxX > 180)
+            rows = union(rows, index.search(-180, minY, maxX - 360, maxY));
+        return rows;
+    }
+
+    /**
+     * Return the union of two sorted arrays of rows.
+     *
+     * @param rows1 rows in ascending order.
+     * @param rows2 rows in ascending order.
+     * @return the rows of both arrays in ascending order, without duplicates.
+     */
+    private static int[] union(int[] rows1, int[] rows2) {
+        return IntStream.concat(Arrays.stream(rows1), Arrays.stream(rows2)).sorted().distinct().toArray();
+    }
+
+    /**
+     * Region inside a bounding box.
+     */
+    private static final class Box extends SpatialRegion {
+
+        Box(double minX, double minY, double maxX, double maxY) {
+            super(minX, minY, maxX, maxY);
+        }
+
+        @Override
+        boolean contains(double x, double y) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        }
+
+        @Override
+        boolean intersects(MultiPolygon polygons) {
+            if (!boundsIntersect(polygons))
+                return false;
+            if (polygons.getMinX() >= minX && polygons.getMaxX() <= maxX
+                    && polygons.getMinY() >= minY && polygons.getMaxY() <= maxY)
+                return true;
+            return polygons.asShape().intersects(minX, minY, maxX - minX, maxY - minY);
+        }
+    }
+
+    /**
+     * Region within a great-circle distance of a center. Points are tested with the haversine formula,
+     * compared without the inverse sine and square root. MultiPolygons are tested in an equirectangular
+     * projection centered on the center, which is accurate for distances much smaller than the radius of
+     * the Earth.
+     */
+    private static final class Circle extends SpatialRegion {
+        private final double longitude, latitude;
+        private final double cosLatitude;
+
+        /**
+         * Haversine of the angular radius of the region.
+         */
+        private final double maxHaversine;
+
+        /**
+         * Angular radius of the region in degrees.
+         */
+        private final double radiusDegrees;
+
+        Circle(double longitude, double latitude, double radiusKm) {
+            super(longitude - longitudeExtent(latitude, radiusKm / EARTH_RADIUS_KM),
+                    Math.max(-90, latitude - Math.toDegrees(radiusKm / EARTH_RADIUS_KM)),
+                    longitude + longitudeExtent(latitude, radiusKm / EARTH_RADIUS_KM),
+                    Math.min(90, latitude + Math.toDegrees(radiusKm / EARTH_RADIUS_KM)));
+            this.longitude = longitude;
+            this.latitude = latitude;
+            this.cosLatitude = Math.cos(Math.toRadians(latitude));
+            double angle = Math.min(radiusKm / EARTH_RADIUS_KM, Math.PI);
+            double sin = Math.sin(angle / 2);
+            this.maxHaversine = sin * sin;
+            this.radiusDegrees = Math.toDegrees(angle);
+        }
+
+        /**
+         * Return the largest difference of longitude between the center and a point of the region, or a
+         * difference covering all longitudes if the region contains a pole.
+         *
+         * @param latitude latitude of the center.
+         * @param angle angular radius of the region in radians.
+         * @return the largest difference of longitude in degrees.
+         */
+        private static double longitudeExtent(double latitude, double angle) {
+            double cos = Math.cos(Math.toRadians(latitude));
+            if (Math.abs(latitude) + Math.toDegrees(angle) >= 90 || Math.sin(angle) >= cos)
+                return 360;
+            return Math.toDegrees(Math.asin(Math.sin(angle) / cos));
+        }
+
+        @Override
+        boolean contains(double x, double y) {
+            double sinLat = Math.sin(Math.toRadians(y - latitude) / 2);
+            double sinLon = Math.sin(Math.toRadians(x - longitude) / 2);
+            return sinLat * sinLat + cosLatitude * Math.cos(Math.toRadians(y)) * sinLon * sinLon <= maxHaversine;
+        }
+
+        @Override
+        boolean intersects(MultiPolygon polygons) {
+            if (!boundsIntersect(polygons) && !boundsIntersect(polygons, 360) && !boundsIntersect(polygons, -360))
+                return false;
+            if (polygons.contains(longitude, latitude))
+                return true;
+            double maxDistanceSq = radiusDegrees * radiusDegrees;
+            double[] coords = new double[6];
+            double firstX = 0, firstY = 0, lastX = 0, lastY = 0;
+            for (PathIterator it = polygons.asShape().getPathIterator(null); !it.isDone(); it.next()) {
+                int type = it.currentSegment(coords);
+                double x = type == PathIterator.SEG_CLOSE ? firstX : project(coords[0]);
+                double y = type == PathIterator.SEG_CLOSE ? firstY : coords[1] - latitude;
+                if (type == PathIterator.SEG_MOVETO) {
+                    firstX = x;
+                    firstY = y;
+                    if (x * x + y * y <= maxDistanceSq)
+                        return true;
+                } else if (Line2D.ptSegDistSq(lastX, lastY, x, y, 0, 0) <= maxDistanceSq) {
+                    return true;
+                }
+                lastX = x;
+                lastY = y;
+            }
+            return false;
+        }
+
+        /**
+         * Check if the bounds of a MultiPolygon shifted by a longitude intersect the bounds of the region,
+         * for regions crossing the antimeridian.
+         *
+         * @param polygons the MultiPolygon.
+         * @param shift longitude added to the bounds of the MultiPolygon.
+         * @return true if the bounds intersect and false otherwise.
+         */
+        private boolean boundsIntersect(MultiPolygon polygons, double shift) {
+            return polygons.getMinX() + shift <= maxX && polygons.getMaxX() + shift >= minX
+                    && polygons.getMinY() <= maxY && polygons.getMaxY() >= minY;
+        }
+
+        /**
+         * Return the x of a longitude in the equirectangular projection centered on the center, in degrees of
+         * a great circle.
+         *
+         * @param x longitude.
+         * @return the projected x.
+         */
+        private double project(double x) {
+            double dx = x - longitude;
+            if (dx > 180)
+                dx -= 360;
+            else if (dx < -180)
+                dx += 360;
+            return dx * cosLatitude;
+        }
+    }
+
+    /**
+     * Region inside a polygon, by the even-odd rule. Points are tested by counting the crossings of a ray
+     * with the edges, reading the packed vertices in place.
+     */
+    private static final class Polygon extends SpatialRegion {
+        /**
+         * Coordinates of the vertices, interleaved as x and y.
+         */
+        private final double[] vertices;
+
+        Polygon(double[] vertices) {
+            super(min(vertices, 0), min(vertices, 1), max(vertices, 0), max(vertices, 1));
+            this.vertices = vertices.clone();
+        }
+
+        private static double min(double[] vertices, int axis) {
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = axis; i < vertices.length; i += 2)
+                min = Math.min(min, vertices[i]);
+            return min;
+        }
+
+        private static double max(double[] vertices, int axis) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = axis; i < vertices.length; i += 2)
+                max = Math.max(max, vertices[i]);
+            return max;
+        }
+
+        @Override
+        boolean contains(double x, double y) {
+            if (!(x >= minX && x <= maxX && y >= minY && y <= maxY))
+                return false;
+            boolean inside = false;
+            int n = vertices.length;
+            for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+                double yi = vertices[i + 1], yj = vertices[j + 1];
+                if ((yi > y) != (yj > y)
+                        && x < (vertices[j] - vertices[i]) * (y - yi) / (yj - yi) + vertices[i])
+                    inside = !inside;
+            }
+            return inside;
+        }
+
+        @Override
+        boolean intersects(MultiPolygon polygons) {
+            if (!boundsIntersect(polygons))
+                return false;
+            if (polygons.contains(vertices[0], vertices[1]))
+                return true;
+            double[] coords = new double[6];
+            double firstX = 0, firstY = 0, lastX = 0, lastY = 0;
+            for (PathIterator it = polygons.asShape().getPathIterator(null); !it.isDone(); it.next()) {
+                int type = it.currentSegment(coords);
+                double x = type == PathIterator.SEG_CLOSE ? firstX : coords[0];
+                double y = type == PathIterator.SEG_CLOSE ? firstY : coords[1];
+                if (type == PathIterator.SEG_MOVETO) {
+                    // A ring crossing no edge is inside the region if any of its points is.
+                    firstX = x;
+                    firstY = y;
+                    if (contains(x, y))
+                        return true;
+                } else if (crossesEdge(lastX, lastY, x, y)) {
+                    return true;
+                }
+                lastX = x;
+                lastY = y;
+            }
+            return false;
+        }
+
+        /**
+         * Check if a segment crosses an edge of the polygon.
+         *
+         * @param x1 x coordinate of the start of the segment.
+         * @param y1 y coordinate of the start of the segment.
+         * @param x2 x coordinate of the end of the segment.
+         * @param y2 y coordinate of the end of the segment.
+         * @return true if the segment crosses an edge and false otherwise.
+         */
+        private boolean crossesEdge(double x1, double y1, double x2, double y2) {
+            if (Math.max(x1, x2) < minX || Math.min(x1, x2) > maxX
+                    || Math.max(y1, y2) < minY || Math.min(y1, y2) > maxY)
+                return false;
+            int n = vertices.length;
+            for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+                if (Line2D.linesIntersect(x1, y1, x2, y2, vertices[j], vertices[j + 1], vertices[i], vertices[i + 1]))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
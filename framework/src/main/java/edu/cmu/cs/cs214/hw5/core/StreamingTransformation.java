@@ -0,0 +1,252 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * StreamingTransformation represents a pipeline of filtering, projection and aggregation operators over a
+ * RowSource. Rows flow through the operators batch by batch as they are read from the source, and only the
+ * rows coming out of the pipeline are materialized into a new DataSet.
+ */
+class StreamingTransformation {
+
+    private static final String LABEL_NOT_FOUND_MSG = "Label Not Found";
+
+    /**
+     * Source of the rows.
+     */
+    private final RowSource source;
+
+    /**
+     * List of label names of rows coming out of the pipeline.
+     */
+    private List<String> labels;
+
+    /**
+     * List of data types of rows coming out of the pipeline.
+     */
+    private List<DataType> dataTypes;
+
+    /**
+     * Operators applied to each row in order. An operator returns null to drop the row.
+     */
+    private final List<Function<List<Object>, List<Object>>> operators;
+
+    /**
+     * Column index of the group key if the rows are aggregated, -1 if not.
+     */
+    private int groupIdx = -1;
+
+    /**
+     * Column index of the aggregated value if the rows are aggregated.
+     */
+    private int valueIdx;
+
+    /**
+     * Function computing the aggregated value if the rows are aggregated.
+     */
+    private AggregateFunction aggregateFunction;
+
+    /**
+     * Initialize a StreamingTransformation object reading rows from the given source.
+     *
+     * @param source source of the rows.
+     */
+    StreamingTransformation(RowSource source) {
+        this.source = source;
+        this.labels = new ArrayList<>(source.getLabels());
+        this.dataTypes = new ArrayList<>(source.getDataTypes());
+        this.operators = new ArrayList<>();
+    }
+
+    /**
+     * Keep rows whose value in the specified column satisfies the filtering rule.
+     *
+     * @param label label name of column to be filtered.
+     * @param operator operator in the filtering rule.
+     * @param value value in the filtering rule.
+     * @return this StreamingTransformation object after adding the filter.
+     */
+    StreamingTransformation filter(String label, String operator, String value) {
+        checkNotAggregated();
+        addFilter(Transformation.rowPredicate(labels, dataTypes, label, operator, value));
+        return this;
+    }
+
+    /**
+     * Keep rows whose value in the specified column is one of the given values.
+     *
+     * @param label label name of column to be filtered.
+     * @param values value in column that will remain specified in the filtering rule.
+     * @return this StreamingTransformation object after adding the filter.
+     */
+    StreamingTransformation filter(String label, List<String> values) {
+        checkNotAggregated();
+        addFilter(Transformation.rowPredicate(labels, dataTypes, label, values));
+        return this;
+    }
+
+    /**
+     * Keep only the specified columns in the given order.
+     *
+     * @param keptLabels label names of the columns to keep.
+     * @return this StreamingTransformation object after adding the projection.
+     */
+    StreamingTransformation project(List<String> keptLabels) {
+        checkNotAggregated();
+        int[] indexes = new int[keptLabels.size()];
+        List<DataType> keptTypes = new ArrayList<>();
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = labels.indexOf(keptLabels.get(i));
+            if (indexes[i] < 0)
+                throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG + ": " + keptLabels.get(i));
+            keptTypes.add(dataTypes.get(indexes[i]));
+        }
+        operators.add(row -> {
+            List<Object> projected = new ArrayList<>(indexes.length);
+            for (int index : indexes) {
+                projected.add(row.get(index));
+            }
+            return projected;
+        });
+        labels = new ArrayList<>(keptLabels);
+        dataTypes = keptTypes;
+        return this;
+    }
+
+    /**
+     * Group rows by the specified column and compute the aggregate function over a numeric column within
+     * each group. The result has one row per group with the group key and the aggregated value, and groups
+     * are kept in the order they are first seen. The aggregation must be the last operator of the pipeline.
+     *
+     * @param groupLabel label name of the column to group by.
+     * @param valueLabel label name of the numeric column to aggregate, ignored by COUNT.
+     * @param function aggregate function.
+     * @return this StreamingTransformation object after adding the aggregation.
+     */
+    StreamingTransformation aggregate(String groupLabel, String valueLabel, AggregateFunction function) {
+        checkNotAggregated();
+        int group = labels.indexOf(groupLabel);
+        if (group < 0)
+            throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
+        if (dataTypes.get(group) == DataType.POLYGONS)
+            throw new IllegalArgumentException("Aggregate Operation Doesn't Support This Data Type: "
+                    + DataType.POLYGONS);
+        int value = -1;
+        if (function != AggregateFunction.COUNT) {
+            value = labels.indexOf(valueLabel);
+            if (value < 0)
+                throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
+            if (dataTypes.get(value) != DataType.INTEGER && dataTypes.get(value) != DataType.DOUBLE)
+                throw new IllegalArgumentException("Aggregate Operation Doesn't Support This Data Type: "
+                        + dataTypes.get(value));
+        }
+        this.groupIdx = group;
+        this.valueIdx = value;
+        this.aggregateFunction = function;
+        return this;
+    }
+
+    /**
+     * Read all rows from the source through the pipeline and return a new DataSet of the result.
+     * The source is closed afterwards.
+     *
+     * @return a new DataSet of the rows coming out of the pipeline.
+     */
+    DataSet toDataSet() {
+        List<List<Object>> result = new ArrayList<>();
+        Map<Object, double[]> groups = new LinkedHashMap<>();
+        try (RowSource rows = source) {
+            for (List<List<Object>> batch = rows.nextBatch(); !batch.isEmpty(); batch = rows.nextBatch()) {
+                for (List<Object> row : batch) {
+                    for (int i = 0; i < operators.size() && row != null; i++) {
+                        row = operators.get(i).apply(row);
+                    }
+                    if (row == null)
+                        continue;
+                    if (groupIdx < 0) {
+                        result.add(row);
+                    } else {
+                        double v = valueIdx < 0 ? 0 : ((Number) row.get(valueIdx)).doubleValue();
+                        accumulate(groups.computeIfAbsent(row.get(groupIdx),
+                                k -> new double[] {0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}), v);
+                    }
+                }
+            }
+        }
+        if (groupIdx < 0)
+            return new DataSet(labels, dataTypes, result);
+
+        for (Map.Entry<Object, double[]> group : groups.entrySet()) {
+            List<Object> row = new ArrayList<>();
+            row.add(group.getKey());
+            row.add(aggregatedValue(group.getValue()));
+            result.add(row);
+        }
+        List<String> newLabels = new ArrayList<>();
+        newLabels.add(labels.get(groupIdx));
+        newLabels.add(aggregateFunction.getDisplayName()
+                + (valueIdx < 0 ? "" : "(" + labels.get(valueIdx) + ")"));
+        List<DataType> newTypes = new ArrayList<>();
+        newTypes.add(dataTypes.get(groupIdx));
+        newTypes.add(aggregateFunction == AggregateFunction.COUNT ? DataType.INTEGER : DataType.DOUBLE);
+        return new DataSet(newLabels, newTypes, result);
+    }
+
+    /**
+     * Add a filtering operator to the pipeline.
+     *
+     * @param predicate predicate which is true for rows to keep.
+     */
+    private void addFilter(Predicate<List<Object>> predicate) {
+        operators.add(row -> predicate.test(row) ? row : null);
+    }
+
+    /**
+     * Check that no aggregation has been added, since it must be the last operator.
+     */
+    private void checkNotAggregated() {
+        if (groupIdx >= 0)
+            throw new IllegalStateException("Aggregation Must Be The Last Operation");
+    }
+
+    /**
+     * Add a value to the accumulator of a group, which stores count, sum, min and max.
+     *
+     * @param acc accumulator of the group.
+     * @param v value to be added.
+     */
+    private static void accumulate(double[] acc, double v) {
+        acc[0]++;
+        acc[1] += v;
+        acc[2] = Math.min(acc[2], v);
+        acc[3] = Math.max(acc[3], v);
+    }
+
+    /**
+     * Return the aggregated value of a group from its accumulator.
+     *
+     * @param acc accumulator of the group.
+     * @return the aggregated value of the group.
+     */
+    private Object aggregatedValue(double[] acc) {
+        switch (aggregateFunction) {
+            case COUNT:
+                return (int) acc[0];
+            case SUM:
+                return acc[1];
+            case AVERAGE:
+                return acc[1] / acc[0];
+            case MIN:
+                return acc[2];
+            case MAX:
+                return acc[3];
+            default:
+                throw new IllegalArgumentException("Unknown Aggregate Function");
+        }
+    }
+}
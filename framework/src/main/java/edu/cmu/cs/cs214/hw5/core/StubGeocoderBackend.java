@@ -0,0 +1,142 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * GeoCoder backend replaying recorded Nominatim responses from a local {@link StubGeocodingServer}, used to
+ * benchmark the geoCoding throughput offline. The backend is available only if the system property
+ * "geodata.stub.responses" names the file of recorded responses, and is configured by these optional
+ * system properties:
+ * <ul>
+ *     <li>"geodata.stub.latencyMillis": delay of every response in milliseconds, 0 by default,</li>
+ *     <li>"geodata.stub.requestsPerSecond": requests served per second before answering HTTP 429, 0 (unlimited)
+ *     by default, and</li>
+ *     <li>"geodata.stub.maxInFlight": maximum number of queries in flight, 16 by default.</li>
+ * </ul>
+ * The server is started on the first query. Requests are not paced by the client, and the simulated HTTP 429
+ * responses never open its circuit breaker, so that the rate limit of the server and the retries of the client
+ * are measured. Results are not kept in the persistent geoCoding cache, so every run of a benchmark queries
+ * the server again.
+ */
+public class StubGeocoderBackend implements GeocoderBackend {
+
+    /**
+     * System property naming the file of recorded responses.
+     */
+    private static final String RESPONSES_PROPERTY = "geodata.stub.responses";
+
+    /**
+     * Default maximum number of queries in flight.
+     */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    /**
+     * Client of the stub server, null until the server is started.
+     */
+    private OpenStreetMapClient client;
+
+    /**
+     * Return the name of the backend.
+     *
+     * @return name of the backend.
+     */
+    @Override
+    public String getName() {
+        return "Local Stub";
+    }
+
+    /**
+     * Check if the file of recorded responses is configured.
+     *
+     * @return true if the file of recorded responses is configured and false otherwise.
+     */
+    @Override
+    public boolean isAvailable() {
+        return System.getProperty(RESPONSES_PROPERTY) != null;
+    }
+
+    /**
+     * Keep the simulated results out of the persistent geoCoding cache.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean isPersistentlyCached() {
+        return false;
+    }
+
+    /**
+     * Return the client of the stub server, starting the server if needed.
+     *
+     * @return the client of the stub server.
+     */
+    private synchronized OpenStreetMapClient client() {
+        if (client == null) {
+            StubGeocodingServer server;
+            try {
+                server = new StubGeocodingServer(
+                        StubGeocodingServer.readResponses(Paths.get(System.getProperty(RESPONSES_PROPERTY))),
+                        new AddressNormalizer(), Long.getLong("geodata.stub.latencyMillis", 0),
+                        Integer.getInteger("geodata.stub.requestsPerSecond", 0));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable To Start Stub Server", e);
+            }
+            System.out.println("Stub geocoding server listening on " + server.searchUrl());
+            client = new OpenStreetMapClient(HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(),
+                    false, server.searchUrl(), RateLimiter.unlimited(), getMaxConcurrentBatches(),
+                    CircuitBreaker.disabled());
+        }
+        return client;
+    }
+
+    /**
+     * GeoCode a batch of free-form addresses with the stub server.
+     *
+     * @param addresses free-form addresses.
+     * @param polygonThreshold tolerance in degrees the boundaries may be simplified with.
+     * @return a future of the results of the addresses.
+     */
+    @Override
+    public CompletableFuture<List<GeocodeResult>> geocode(List<String> addresses, String polygonThreshold) {
+        return client().geocode(addresses, polygonThreshold);
+    }
+
+    /**
+     * GeoCode a batch of structured addresses with the stub server.
+     *
+     * @param addresses structured addresses.
+     * @param polygonThreshold tolerance in degrees the boundaries may be simplified with.
+     * @return a future of the results of the addresses.
+     */
+    @Override
+    public CompletableFuture<List<GeocodeResult>> geocodeStructured(List<Map<String, String>> addresses,
+                                                                    String polygonThreshold) {
+        return client().geocodeStructured(addresses, polygonThreshold);
+    }
+
+    /**
+     * Return the maximum number of queries in flight.
+     *
+     * @return maximum number of queries in flight.
+     */
+    @Override
+    public int getMaxConcurrentBatches() {
+        return Integer.getInteger("geodata.stub.maxInFlight", DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Return the number of requests sent to the stub server, including retries.
+     *
+     * @return number of requests sent.
+     */
+    @Override
+    public synchronized long getRequestCount() {
+        return client == null ? 0 : client.getRequestCount();
+    }
+}
@@ -0,0 +1,278 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StubGeocodingServer is an embedded HTTP server answering the Nominatim search API with recorded
+ * responses, so that geoCoding can be load tested offline without hitting the usage limits of Nominatim.
+ * The recorded responses are a JSON object mapping addresses to the response arrays Nominatim returned for
+ * them, e.g. {"Pittsburgh, PA": [{"lon": "-79.99", "lat": "40.44", "geojson": {...}}]}. Addresses are
+ * matched after normalization, structured queries are matched as their fields joined from the most to the
+ * least general, and unknown addresses are answered with an empty array, i.e. not found.
+ *
+ * <p>Every request is delayed by a configurable latency, and requests above a configurable rate are
+ * rejected with HTTP 429 like Nominatim does, so that the retries of the client are exercised too.</p>
+ */
+final class StubGeocodingServer implements AutoCloseable {
+
+    /**
+     * Path of the search endpoint.
+     */
+    private static final String SEARCH_PATH = "/search";
+
+    /**
+     * Fields of a structured query, from the most to the least general.
+     */
+    private static final String[] STRUCTURED_FIELDS = {GeocoderBackend.COUNTRY, GeocoderBackend.STATE,
+            GeocoderBackend.CITY, GeocoderBackend.COUNTY, GeocoderBackend.STREET};
+
+    /**
+     * Response of an unknown address.
+     */
+    private static final byte[] NOT_FOUND = "[]".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Map from normalized address to the recorded response.
+     */
+    private final Map<String, byte[]> responses;
+
+    /**
+     * Normalizer matching the queried addresses with the recorded ones.
+     */
+    private final AddressNormalizer addressNormalizer;
+
+    /**
+     * Delay of every response in milliseconds.
+     */
+    private final long latencyMillis;
+
+    /**
+     * Maximum number of requests served per second, 0 if unlimited.
+     */
+    private final int requestsPerSecond;
+
+    /**
+     * Start of the current one-second window of the rate limit, in nanoseconds.
+     */
+    private long windowStart = System.nanoTime();
+
+    /**
+     * Number of requests served in the current window.
+     */
+    private int windowCount;
+
+    /**
+     * Number of requests received, including the rejected ones.
+     */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * Number of requests rejected by the rate limit.
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Underlying HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Threads handling the requests, which sleep for the latency.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Start a server on an ephemeral port of the loopback interface.
+     *
+     * @param responses map from address to the recorded response, as raw JSON.
+     * @param addressNormalizer normalizer matching the queried addresses with the recorded ones.
+     * @param latencyMillis delay of every response in milliseconds.
+     * @param requestsPerSecond maximum number of requests served per second, 0 if unlimited.
+     * @throws IOException if the server cannot be started.
+     */
+    StubGeocodingServer(Map<String, String> responses, AddressNormalizer addressNormalizer, long latencyMillis,
+                        int requestsPerSecond) throws IOException {
+        if (latencyMillis < 0 || requestsPerSecond < 0)
+            throw new IllegalArgumentException("Invalid Stub Server Configuration");
+        this.addressNormalizer = addressNormalizer;
+        this.responses = new HashMap<>();
+        for (Map.Entry<String, String> entry : responses.entrySet())
+            this.responses.put(addressNormalizer.key(entry.getKey()), entry.getValue().getBytes(StandardCharsets.UTF_8));
+        this.latencyMillis = latencyMillis;
+        this.requestsPerSecond = requestsPerSecond;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "stub-geocoding-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(SEARCH_PATH, this::handle);
+        server.setExecutor(executor);
+        // The dispatcher thread inherits the daemon status of the thread starting the server, so start it
+        // from a daemon thread to not keep the application running.
+        Thread starter = new Thread(server::start, "stub-geocoding-server-start");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read recorded responses from a JSON object mapping addresses to response arrays.
+     *
+     * @param path path of the file of recorded responses.
+     * @return map from address to the recorded response, as raw JSON.
+     * @throws IOException if the file cannot be read.
+     */
+    static Map<String, String> readResponses(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JsonObject object = JsonParser.parseReader(reader).getAsJsonObject();
+            Map<String, String> responses = new HashMap<>();
+            for (Map.Entry<String, JsonElement> entry : object.entrySet())
+                responses.put(entry.getKey(), entry.getValue().toString());
+            return responses;
+        }
+    }
+
+    /**
+     * Return the url of the search endpoint.
+     *
+     * @return url of the search endpoint.
+     */
+    String searchUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + SEARCH_PATH;
+    }
+
+    /**
+     * Return the number of requests received, including the rejected ones.
+     *
+     * @return number of requests received.
+     */
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Return the number of requests rejected by the rate limit.
+     *
+     * @return number of requests rejected.
+     */
+    long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Answer a search request.
+     *
+     * @param exchange request and response.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            if (!admit()) {
+                rejectedCount.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            if (latencyMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+            }
+            byte[] body = responses.getOrDefault(key(exchange.getRequestURI().getRawQuery()), NOT_FOUND);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Check if a request is within the rate limit of the current one-second window, and count it if so.
+     *
+     * @return true if the request is served and false if it is rejected.
+     */
+    private synchronized boolean admit() {
+        if (requestsPerSecond == 0)
+            return true;
+        long now = System.nanoTime();
+        if (now - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+            windowStart = now;
+            windowCount = 0;
+        }
+        if (windowCount >= requestsPerSecond)
+            return false;
+        windowCount++;
+        return true;
+    }
+
+    /**
+     * Return the normalized address of the query of a request, which is the free-form address if any and
+     * the structured fields joined otherwise.
+     *
+     * @param rawQuery raw query string of the request.
+     * @return the normalized address.
+     */
+    private String key(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq > 0)
+                    params.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        if (params.containsKey("q"))
+            return addressNormalizer.key(params.get("q"));
+        List<String> parts = new ArrayList<>();
+        for (String field : STRUCTURED_FIELDS) {
+            if (params.get(field) != null)
+                parts.add(params.get(field));
+        }
+        return addressNormalizer.key(String.join(", ", parts));
+    }
+
+    /**
+     * Stop the server.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -1,13 +1,19 @@
 package edu.cmu.cs.cs214.hw5.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -35,6 +41,11 @@ class Transformation {
      */
     private List<List<Object>> data;
 
+    /**
+     * DataSet transformed, whose spatial indexes find the rows of spatial filters.
+     */
+    private final DataSet source;
+
     /**
      * Stream storing the dataSet.
      */
@@ -111,6 +122,7 @@ class Transformation {
      * @param dataSet dataSet to be transformed.
      */
     Transformation(DataSet dataSet) {
+        source = dataSet;
         data = dataSet.toLists();
         dataTypes = new ArrayList<>(dataSet.getDataTypes());
         labels = new ArrayList<>(dataSet.getLabels());
@@ -126,6 +138,123 @@ class Transformation {
      * @return a new Transformation object after applying filtering rule.
      */
     Transformation filter(String label, String operator, String value) {
+        rowStream = rowStream.filter(rowPredicate(labels, dataTypes, label, operator, value));
+        return this;
+    }
+
+    /**
+     * Filter dataSet by string typed columns selected by user.
+     *
+     * @param label label name of column to be filtered.
+     * @param values value in column that will remain specified in the filtering rule.
+     * @return a new Transformation object after applying filtering rule.
+     */
+    Transformation filter(String label, List<String> values) {
+        rowStream = rowStream.filter(rowPredicate(labels, dataTypes, label, values));
+        return this;
+    }
+
+    /**
+     * Filter dataSet by a longitude and a latitude column, keeping the rows whose point is inside the given
+     * region. The candidate rows are found with the spatial index of the points, and only they are tested.
+     *
+     * @param longitudeLabel label name of the longitude column.
+     * @param latitudeLabel label name of the latitude column.
+     * @param region region the points are kept inside.
+     * @return a new Transformation object after applying filtering rule.
+     */
+    Transformation filterPoints(String longitudeLabel, String latitudeLabel, SpatialRegion region) {
+        int xCol = numericColumn(longitudeLabel);
+        int yCol = numericColumn(latitudeLabel);
+        double[] xs = source.doubleColumn(xCol);
+        double[] ys = source.doubleColumn(yCol);
+        int[] rows = region.candidates(source.pointIndex(xCol, yCol));
+        int count = 0;
+        for (int row : rows) {
+            if (region.contains(xs[row], ys[row]))
+                rows[count++] = row;
+        }
+        return filterRows(Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Filter dataSet by a POLYGONS column, keeping the rows whose MultiPolygon intersects the given region.
+     * The candidate rows are found with the spatial index of the column, and only they are tested.
+     *
+     * @param label label name of column to be filtered.
+     * @param region region the MultiPolygons are kept intersecting.
+     * @return a new Transformation object after applying filtering rule.
+     */
+    Transformation filterPolygons(String label, SpatialRegion region) {
+        int colIdx = polygonColumn(label);
+        int[] rows = region.candidates(source.spatialIndex(colIdx));
+        int count = 0;
+        for (int row : rows) {
+            if (region.intersects((MultiPolygon) source.getCell(row, colIdx)))
+                rows[count++] = row;
+        }
+        return filterRows(Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Return the index of a numeric column of the dataSet transformed.
+     *
+     * @param label label name of the column.
+     * @return index of the column.
+     */
+    private int numericColumn(String label) {
+        int colIdx = source.getLabels().indexOf(label);
+        if (colIdx < 0)
+            throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
+        if (dataTypes.get(colIdx) != DataType.INTEGER && dataTypes.get(colIdx) != DataType.DOUBLE)
+            throw new IllegalArgumentException("Spatial Filter Doesn't Support This Data Type: "
+                    + dataTypes.get(colIdx));
+        return colIdx;
+    }
+
+    /**
+     * Return the index of a POLYGONS column of the dataSet transformed.
+     *
+     * @param label label name of the column.
+     * @return index of the column.
+     */
+    private int polygonColumn(String label) {
+        int colIdx = source.getLabels().indexOf(label);
+        if (colIdx < 0)
+            throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
+        if (dataTypes.get(colIdx) != DataType.POLYGONS)
+            throw new IllegalArgumentException("Spatial Filter Doesn't Support This Data Type: "
+                    + dataTypes.get(colIdx));
+        return colIdx;
+    }
+
+    /**
+     * Keep the rows among the given rows of the dataSet transformed. Rows are matched by identity, so that
+     * the previous transformations may have reordered or dropped rows.
+     *
+     * @param rows indexes of the rows to keep in the dataSet transformed.
+     * @return a new Transformation object after applying filtering rule.
+     */
+    private Transformation filterRows(int[] rows) {
+        Set<List<Object>> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int row : rows)
+            kept.add(data.get(row));
+        rowStream = rowStream.filter(kept::contains);
+        return this;
+    }
+
+    /**
+     * Return a predicate on rows comparing the value in the specified column with the given value.
+     *
+     * @param labels list of label names of the rows.
+     * @param dataTypes list of data types of the rows.
+     * @param label label name of column to be filtered.
+     * @param operator operator in the filtering rule.
+     * @param value value in the filtering rule.
+     * @return a predicate on rows which is true if the row satisfies the filtering rule.
+     */
+    static Predicate<List<Object>> rowPredicate(List<String> labels, List<DataType> dataTypes,
+                                                String label, String operator, String value) {
         int colIdx = labels.indexOf(label);
         if (colIdx < 0)
             throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
@@ -139,31 +268,32 @@ class Transformation {
         if (predicate == null)
             throw new IllegalArgumentException(UNKNOWN_OPERATOR_MSG);
 
+        final Object operand;
         switch (dataTypes.get(colIdx)) {
             case INTEGER:
-                rowStream = rowStream.filter(row -> predicate.test(comparator.compare(row.get(colIdx), Integer.valueOf(value))));
+                operand = Integer.valueOf(value);
                 break;
             case DOUBLE:
-                rowStream = rowStream.filter(row -> predicate.test(comparator.compare(row.get(colIdx), Double.valueOf(value))));
-                break;
-            case STRING:
-                rowStream = rowStream.filter(row -> predicate.test(comparator.compare(row.get(colIdx), value)));
+                operand = Double.valueOf(value);
                 break;
             default:
+                operand = value;
                 break;
         }
-
-        return this;
+        return row -> predicate.test(comparator.compare(row.get(colIdx), operand));
     }
 
     /**
-     * Filter dataSet by string typed columns selected by user.
+     * Return a predicate on rows checking if the value in the specified column is one of the given values.
      *
+     * @param labels list of label names of the rows.
+     * @param dataTypes list of data types of the rows.
      * @param label label name of column to be filtered.
      * @param values value in column that will remain specified in the filtering rule.
-     * @return a new Transformation object after applying filtering rule.
+     * @return a predicate on rows which is true if the row satisfies the filtering rule.
      */
-    Transformation filter(String label, List<String> values) {
+    static Predicate<List<Object>> rowPredicate(List<String> labels, List<DataType> dataTypes,
+                                                String label, List<String> values) {
         int colIdx = labels.indexOf(label);
         if (colIdx < 0)
             throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
@@ -184,8 +314,7 @@ class Transformation {
                 throw new IllegalArgumentException("Filter Operation Doesn't Support This Data Type: "
                         + dataTypes.get(colIdx));
         }
-        rowStream = rowStream.filter(r -> set.contains(r.get(colIdx)));
-        return this;
+        return r -> set.contains(r.get(colIdx));
     }
 
     /**
@@ -222,6 +351,218 @@ class Transformation {
         return this;
     }
 
+    /**
+     * Compute a window function over the dataSet and append the result as a new DOUBLE column. Rows are
+     * partitioned by one column and ordered by another column within each partition, and the function is
+     * computed in a single pass over the primitive values of the numeric column. For DELTA, LAG and LEAD,
+     * rows whose offset row lies outside the partition (e.g. the first row of LAG) get NaN. ROLLING_AVERAGE
+     * averages the rows of the partition the window covers, so its first rows are partial averages, and
+     * CUMULATIVE_SUM sums every row of the partition up to the current one.
+     *
+     * @param partitionLabel label name of the column to partition by, or null to treat the dataSet as one partition.
+     * @param orderLabel label name of the column to order by within a partition.
+     * @param valueLabel label name of the numeric column the function is computed on.
+     * @param function window function to compute.
+     * @param frameSize width of the rolling window or row offset of the function.
+     * @param newLabel label name of the new column.
+     * @return a new Transformation object after applying the window function.
+     */
+    Transformation window(String partitionLabel, String orderLabel, String valueLabel,
+                          WindowFunction function, int frameSize, String newLabel) {
+        int partitionIdx = partitionLabel == null ? -1 : labels.indexOf(partitionLabel);
+        int orderIdx = labels.indexOf(orderLabel);
+        int valueIdx = labels.indexOf(valueLabel);
+        if ((partitionLabel != null && partitionIdx < 0) || orderIdx < 0 || valueIdx < 0)
+            throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
+        if (dataTypes.get(valueIdx) != DataType.INTEGER && dataTypes.get(valueIdx) != DataType.DOUBLE)
+            throw new IllegalArgumentException("Window Operation Doesn't Support This Data Type: "
+                    + dataTypes.get(valueIdx));
+        if (frameSize <= 0)
+            throw new IllegalArgumentException("Frame Size Should Be Positive");
+
+        Comparator<Object> partitionComparator = partitionIdx < 0 ? (o1, o2) -> 0
+                : COMPARATOR_MAP.get(dataTypes.get(partitionIdx));
+        Comparator<Object> orderComparator = COMPARATOR_MAP.get(dataTypes.get(orderIdx));
+        if (partitionComparator == null || orderComparator == null)
+            throw new IllegalArgumentException("Window Operation Doesn't Support This Data Type");
+
+        Comparator<List<Object>> rowComparator = (row1, row2) -> {
+            int cmp = partitionIdx < 0 ? 0 : partitionComparator.compare(row1.get(partitionIdx), row2.get(partitionIdx));
+            return cmp != 0 ? cmp : orderComparator.compare(row1.get(orderIdx), row2.get(orderIdx));
+        };
+        List<List<Object>> rows = rowStream.sorted(rowComparator).collect(Collectors.toList());
+
+        int n = rows.size();
+        double[] values = new double[n];
+        int[] partitionStart = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = ((Number) rows.get(i).get(valueIdx)).doubleValue();
+            boolean newPartition = i == 0 || (partitionIdx >= 0
+                    && partitionComparator.compare(rows.get(i - 1).get(partitionIdx), rows.get(i).get(partitionIdx)) != 0);
+            partitionStart[i] = newPartition ? i : partitionStart[i - 1];
+        }
+
+        double running = 0;
+        for (int i = 0; i < n; i++) {
+            int start = partitionStart[i];
+            if (start == i)
+                running = 0;
+            double result;
+            switch (function) {
+                case ROLLING_AVERAGE:
+                    running += values[i];
+                    if (i - frameSize >= start)
+                        running -= values[i - frameSize];
+                    result = running / Math.min(frameSize, i - start + 1);
+                    break;
+                case CUMULATIVE_SUM:
+                    running += values[i];
+                    result = running;
+                    break;
+                case DELTA:
+                    result = i - frameSize >= start ? values[i] - values[i - frameSize] : Double.NaN;
+                    break;
+                case LAG:
+                    result = i - frameSize >= start ? values[i - frameSize] : Double.NaN;
+                    break;
+                case LEAD:
+                    result = i + frameSize < n && partitionStart[i + frameSize] == start
+                            ? values[i + frameSize] : Double.NaN;
+                    break;
+                default:
+                    throw new IllegalArgumentException(UNKNOWN_OPERATOR_MSG);
+            }
+            rows.get(i).add(result);
+        }
+
+        labels.add(newLabel);
+        dataTypes.add(DataType.DOUBLE);
+        rowStream = rows.stream();
+        return this;
+    }
+
+    /**
+     * Compute metrics of a POLYGONS column (e.g. area or centroid) and append each one as a new DOUBLE column.
+     * Rows are measured in parallel, and every MultiPolygon caches its metrics, so MultiPolygons shared by
+     * several rows, or measured again later, are only computed once.
+     *
+     * @param label label name of the POLYGONS column.
+     * @param metrics metrics to compute, one new column each.
+     * @param geodesic whether the metrics are geodesic, in kilometers, or planar, in the units of the coordinates.
+     * @return a new Transformation object after appending the metrics.
+     */
+    Transformation geometryMetrics(String label, List<GeometryMetric> metrics, boolean geodesic) {
+        int colIdx = labels.indexOf(label);
+        if (colIdx < 0)
+            throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
+        if (dataTypes.get(colIdx) != DataType.POLYGONS)
+            throw new IllegalArgumentException("Geometry Metrics Don't Support This Data Type: "
+                    + dataTypes.get(colIdx));
+        if (metrics.isEmpty())
+            throw new IllegalArgumentException("Select At Least One Metric");
+
+        List<List<Object>> rows = rowStream.collect(Collectors.toList());
+        double[][] values = new double[metrics.size()][rows.size()];
+        IntStream.range(0, rows.size()).parallel().forEach(i -> {
+            MultiPolygon polygons = (MultiPolygon) rows.get(i).get(colIdx);
+            for (int m = 0; m < values.length; m++)
+                values[m][i] = metrics.get(m).of(polygons, geodesic);
+        });
+        for (int i = 0; i < rows.size(); i++) {
+            for (double[] column : values)
+                rows.get(i).add(column[i]);
+        }
+
+        for (GeometryMetric metric : metrics) {
+            labels.add(metric.label(label, geodesic));
+            dataTypes.add(DataType.DOUBLE);
+        }
+        rowStream = rows.stream();
+        return this;
+    }
+
+    /**
+     * Sample a fixed number of rows uniformly by reservoir sampling in a single pass. The sampled rows keep
+     * their original order.
+     *
+     * @param size number of rows in the sample.
+     * @param random random number generator.
+     * @return a new Transformation object after applying sampling.
+     */
+    Transformation sampleReservoir(int size, Random random) {
+        if (size < 0)
+            throw new IllegalArgumentException("Sample Size Should Not Be Negative");
+        List<List<Object>> rows = rowStream.collect(Collectors.toList());
+        int[] reservoir = new int[Math.min(size, rows.size())];
+        for (int i = 0; i < rows.size(); i++) {
+            if (i < reservoir.length) {
+                reservoir[i] = i;
+            } else {
+                int j = random.nextInt(i + 1);
+                if (j < reservoir.length)
+                    reservoir[j] = i;
+            }
+        }
+        Arrays.sort(reservoir);
+        rowStream = Arrays.stream(reservoir).mapToObj(rows::get);
+        return this;
+    }
+
+    /**
+     * Sample each row independently with the given probability.
+     *
+     * @param probability probability of keeping a row.
+     * @param random random number generator.
+     * @return a new Transformation object after applying sampling.
+     */
+    Transformation sampleBernoulli(double probability, Random random) {
+        if (!(probability >= 0 && probability <= 1))
+            throw new IllegalArgumentException("Sample Rate Should Be Between 0 And 1");
+        rowStream = rowStream.filter(row -> random.nextDouble() < probability);
+        return this;
+    }
+
+    /**
+     * Sample a fixed number of rows uniformly within each category of the specified column by keeping one
+     * reservoir per category. The sampled rows keep their original order.
+     *
+     * @param label label name of the category column.
+     * @param sizePerStratum number of rows sampled in each category.
+     * @param random random number generator.
+     * @return a new Transformation object after applying sampling.
+     */
+    Transformation sampleStratified(String label, int sizePerStratum, Random random) {
+        int colIdx = labels.indexOf(label);
+        if (colIdx < 0)
+            throw new IllegalArgumentException(LABEL_NOT_FOUND_MSG);
+        if (dataTypes.get(colIdx) == DataType.POLYGONS)
+            throw new IllegalArgumentException("Sample Operation Doesn't Support This Data Type: "
+                    + dataTypes.get(colIdx));
+        if (sizePerStratum < 0)
+            throw new IllegalArgumentException("Sample Size Should Not Be Negative");
+
+        List<List<Object>> rows = rowStream.collect(Collectors.toList());
+        Map<Object, int[]> reservoirs = new HashMap<>();
+        Map<Object, Integer> seen = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Object key = rows.get(i).get(colIdx);
+            int[] reservoir = reservoirs.computeIfAbsent(key, k -> new int[sizePerStratum]);
+            int count = seen.merge(key, 1, Integer::sum);
+            if (count <= sizePerStratum) {
+                reservoir[count - 1] = i;
+            } else {
+                int j = random.nextInt(count);
+                if (j < sizePerStratum)
+                    reservoir[j] = i;
+            }
+        }
+        int[] sampled = reservoirs.entrySet().stream()
+                .flatMapToInt(e -> Arrays.stream(e.getValue(), 0, Math.min(sizePerStratum, seen.get(e.getKey()))))
+                .sorted().toArray();
+        rowStream = Arrays.stream(sampled).mapToObj(rows::get);
+        return this;
+    }
+
     /**
      * Return a new DataSet converted from the transformation object.
      *
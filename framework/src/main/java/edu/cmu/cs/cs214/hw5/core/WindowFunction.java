@@ -0,0 +1,64 @@
+package edu.cmu.cs.cs214.hw5.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * WindowFunction enumerates the functions that can be computed by the window transformation over
+ * an ordered partition of a numeric column. The frame size parameter is the width of the rolling
+ * window for ROLLING_AVERAGE and the row offset for DELTA, LAG and LEAD.
+ */
+enum WindowFunction {
+    ROLLING_AVERAGE("Rolling Average"),
+    DELTA("Delta"),
+    LAG("Lag"),
+    LEAD("Lead"),
+    CUMULATIVE_SUM("Cumulative Sum");
+
+    /**
+     * Name of the function shown to the user.
+     */
+    private final String displayName;
+
+    /**
+     * Initialize a window function with its display name.
+     *
+     * @param displayName name of the function shown to the user.
+     */
+    WindowFunction(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Return the name of the function shown to the user.
+     *
+     * @return name of the function shown to the user.
+     */
+    String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Return the display names of all window functions.
+     *
+     * @return display names of all window functions.
+     */
+    static List<String> displayNames() {
+        return Arrays.stream(values()).map(WindowFunction::getDisplayName).collect(Collectors.toList());
+    }
+
+    /**
+     * Return the window function with the given display name.
+     *
+     * @param displayName name of the function shown to the user.
+     * @return the window function with the given display name.
+     */
+    static WindowFunction fromDisplayName(String displayName) {
+        for (WindowFunction function : values()) {
+            if (function.displayName.equals(displayName))
+                return function;
+        }
+        throw new IllegalArgumentException("Unknown Window Function");
+    }
+}
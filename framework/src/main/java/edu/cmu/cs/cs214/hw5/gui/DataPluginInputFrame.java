@@ -7,6 +7,7 @@ import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSeparator;
@@ -37,6 +38,11 @@ class DataPluginInputFrame extends JFrame {
      */
     private static final int INPUT_PANEL_HEIGHT = 360;
 
+    /**
+     * Title of the import options.
+     */
+    private static final String IMPORT_OPTIONS = "Import Options (Optional)";
+
     /**
      * Create and initialize the data plugin input frame.
      * 
@@ -79,9 +85,18 @@ class DataPluginInputFrame extends JFrame {
         if (pluginType.equals(Receiver.DATA_PLUGIN)) {
             UserInputComponent dataSetNameInput = new UserInputComponent.TextFieldInput("DataSet Name");
             upperPanel.add(dataSetNameInput);
+
+            // Set up optional operations applied while the data is being imported.
+            JLabel importLabel = new JLabel(IMPORT_OPTIONS);
+            importLabel.setBorder(BorderFactory.createEmptyBorder(10, 0, 5, 0));
+            upperPanel.add(importLabel);
+            UserInputPanel importPanel = new UserInputPanel(parent.getCore().getImportConfigs());
+            upperPanel.add(importPanel);
+
             okButton.addActionListener(l -> {
                 try {
-                    parent.loadData(pluginName, dataSetNameInput.getUserInput().get(0), userInputPanel.getUserInput());
+                    parent.loadData(pluginName, dataSetNameInput.getUserInput().get(0), userInputPanel.getUserInput(),
+                            importPanel.getUserInput());
                     this.setVisible(false);
                     this.dispose();
                 } catch (IllegalArgumentException ex) {
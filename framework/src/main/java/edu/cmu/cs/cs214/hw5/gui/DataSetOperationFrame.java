@@ -3,6 +3,7 @@ package edu.cmu.cs.cs214.hw5.gui;
 import edu.cmu.cs.cs214.hw5.core.DataSet;
 import edu.cmu.cs.cs214.hw5.core.DataType;
 import edu.cmu.cs.cs214.hw5.core.DisplayFilterConfig;
+import edu.cmu.cs.cs214.hw5.core.GeoCodeProgress;
 import edu.cmu.cs.cs214.hw5.core.UserInputConfig;
 import static javax.swing.JOptionPane.NO_OPTION;
 import static javax.swing.JOptionPane.YES_NO_OPTION;
@@ -19,14 +20,17 @@ import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
+import javax.swing.ProgressMonitor;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.IntStream;
@@ -36,8 +40,12 @@ import java.util.stream.IntStream;
  * type), SelectDisplayPlugin Panel(user can select display plugin for plots), DisplayPlugin
  * Panel(user can specify usage-specific configuration parameters), GeoCoding Panel(use can
  * specify configuration parameter of geoCoding transformation), Filter Panel (user can specify
- * configuration parameter of filtering transformation) and Sort Panel (user can specify 
- * configuration parameter of sorting transformation).
+ * configuration parameter of filtering transformation), Sort Panel (user can specify 
+ * configuration parameter of sorting transformation), Window Panel (user can specify
+ * configuration parameter of window function transformation), Sample Panel (user can
+ * specify configuration parameter of sampling transformation), Add Column Panel (user can
+ * specify the expression of a computed column) and Metrics Panel (user can specify the area, perimeter
+ * or centroid of a contour column to compute).
  */
 class DataSetOperationFrame extends JFrame {
 
@@ -71,6 +79,16 @@ class DataSetOperationFrame extends JFrame {
      */
     private static final int DATASET_INFO_PANEL_HEIGHT = 100;
 
+    /**
+     * Time in milliseconds after which the geoCoding progress dialog pops up if geoCoding isn't done.
+     */
+    private static final int PROGRESS_POPUP_DELAY = 500;
+
+    /**
+     * Interval in milliseconds between two updates of the geoCoding progress dialog.
+     */
+    private static final int PROGRESS_UPDATE_INTERVAL = 250;
+
     /**
      * GEOCODE title.
      */
@@ -111,6 +129,18 @@ class DataSetOperationFrame extends JFrame {
      * FILTER string form title.
      */
     private static final String FILTER_STRING_FORM = "String Form";
+
+    /**
+     * FILTER spatial form title.
+     */
+    private static final String FILTER_SPATIAL_FORM = "Spatial Form";
+
+    /**
+     * FILTER spatial form tip.
+     */
+    private static final String FILTER_SPATIAL_TIP = "Select a contour column, or the longitude and latitude "
+            + "columns. Coordinates are longitude latitude pairs separated by commas: the two corners of the "
+            + "bounding box, the center of the radius or the vertices of the polygon.";
     
     /**
      * SORT title.
@@ -122,6 +152,54 @@ class DataSetOperationFrame extends JFrame {
      */
     private static final String SORT_TIP = "  Select a column by which you want to sort.";
 
+    /**
+     * WINDOW title.
+     */
+    private static final String WINDOW = "Window";
+
+    /**
+     * WINDOW tip.
+     */
+    private static final String WINDOW_TIP = "  Select a column to partition by, a column to order by and a numeric column. " +
+            "A new column will be created that contains the window function (e.g. rolling average) of each row.";
+
+    /**
+     * SAMPLE title.
+     */
+    private static final String SAMPLE = "Sample";
+
+    /**
+     * SAMPLE tip.
+     */
+    private static final String SAMPLE_TIP = "  Select a sampling method. Reservoir keeps the given number of rows, " +
+            "Stratified keeps the given number of rows per value of the selected column and Bernoulli keeps " +
+            "each row with the given rate (0 to 1).";
+
+    /**
+     * ADD COLUMN title.
+     */
+    private static final String ADD_COLUMN = "Add Column";
+
+    /**
+     * ADD COLUMN tip.
+     */
+    private static final String ADD_COLUMN_TIP = "  Enter an expression over the numeric columns, e.g. " +
+            "NY.GDP / SP.POP or if(SP.POP > 0, NY.GDP / SP.POP, 0). Labels containing other characters " +
+            "can be written in brackets, e.g. [GDP (US$)]. Supported: + - * / %, comparisons, && || !, " +
+            "cond ? a : b, abs, sqrt, log, exp, pow, min, max. Numeric columns: ";
+
+    /**
+     * METRICS title.
+     */
+    private static final String METRICS = "Metrics";
+
+    /**
+     * METRICS tip.
+     */
+    private static final String METRICS_TIP = "  Select a contour column and the metrics to compute. A new column " +
+            "will be created for each metric. Geodesic metrics are in kilometers (e.g. to compute a density per " +
+            "square kilometer), planar ones are in degrees.";
+
     /**
      * GRAPH NAME label name.
      */
@@ -163,6 +241,14 @@ class DataSetOperationFrame extends JFrame {
         paneTransform.addTab(FILTER, filterPanel);
         JPanel sortPanel = createSortPanel();
         paneTransform.addTab(SORT, sortPanel);
+        JPanel windowPanel = createWindowPanel();
+        paneTransform.addTab(WINDOW, windowPanel);
+        JPanel samplePanel = createSamplePanel();
+        paneTransform.addTab(SAMPLE, samplePanel);
+        JPanel addColumnPanel = createAddColumnPanel();
+        paneTransform.addTab(ADD_COLUMN, addColumnPanel);
+        JPanel metricsPanel = createMetricsPanel();
+        paneTransform.addTab(METRICS, metricsPanel);
 
         pack();
         setLocationRelativeTo(null);
@@ -339,25 +425,48 @@ class DataSetOperationFrame extends JFrame {
             boolean isFreeForm = rigidOrFreeFormTabPane.getSelectedIndex() == 0 ? false : true;
             Map<String, List<String>> params = isFreeForm ? mapFreeFormPanel.getUserInput() : mapRigidFormPanel.getUserInput();
 
+            GeoCodeProgress progress = new GeoCodeProgress();
+            ProgressMonitor monitor = new ProgressMonitor(DataSetOperationFrame.this, "Geocoding " + dataSetName,
+                    "Starting...", 0, 1);
+            monitor.setMillisToDecideToPopup(PROGRESS_POPUP_DELAY);
+            Timer progressTimer = new Timer(PROGRESS_UPDATE_INTERVAL, e -> {
+                if (monitor.isCanceled()) {
+                    progress.cancel();
+                    return;
+                }
+                monitor.setMaximum(Math.max(progress.getTotal(), 1));
+                monitor.setProgress(progress.getCompleted());
+                monitor.setNote(progress.toString());
+            });
+            progressTimer.start();
+
             SwingWorker worker = new SwingWorker<Integer, Integer>() {
                 @Override
                 protected Integer doInBackground() {
                     try {
                         DataSetOperationFrame.this.setEnabled(false);
+                        List<String> unresolved = new ArrayList<>();
                         List<String> unfounded = parent.getCore().geoCodeTransform(dataSetName,
                                 newDataSetName.getUserInput().get(0), resultLabel.getUserInput().get(0),params,
-                                isFreeForm);
-                        if (unfounded.size() > 0) {
-                            String s;
-                            if (unfounded.size() > 3) {
-                                s = String.join("\n", unfounded.subList(0, 3));
-                                s += "\n...";
-                            } else {
-                                s = String.join("\n", unfounded);
-                            }
-
-                            String msg = String.format("Some Address(es) Are Not Found:%n" +
-                                    "%s%n%nFilter And Save?", s);
+                                isFreeForm, unresolved, progress);
+                        SwingUtilities.invokeLater(() -> {
+                            progressTimer.stop();
+                            monitor.close();
+                        });
+                        if (unfounded.size() > 0 || unresolved.size() > 0 || progress.isCancelled()) {
+                            String msg = "";
+                            if (progress.isCancelled())
+                                msg += String.format("Geocoding Cancelled: %s%n%n", progress);
+                            if (unfounded.size() > 0)
+                                msg += String.format("Some Address(es) Are Not Found:%n%s%n%n",
+                                        summarizeAddresses(unfounded));
+                            if (unresolved.size() > 0 && progress.isCancelled())
+                                msg += String.format("Some Address(es) Were Not Geocoded Due To Cancellation " +
+                                        "Or Connection Failures:%n%s%n%n", summarizeAddresses(unresolved));
+                            else if (unresolved.size() > 0)
+                                msg += String.format("Some Address(es) Could Not Be Geocoded Due To " +
+                                        "Connection Failures (Retry Later):%n%s%n%n", summarizeAddresses(unresolved));
+                            msg += "Filter And Save?";
                             int res = JOptionPane.showConfirmDialog(DataSetOperationFrame.this, msg, dataSetName, YES_NO_OPTION);
                             if (res == NO_OPTION) {
                                 parent.getCore().deleteDataSet(newDataSetName.getUserInput().get(0));
@@ -376,6 +485,12 @@ class DataSetOperationFrame extends JFrame {
                     }
                     return 0;
                 }
+
+                @Override
+                protected void done() {
+                    progressTimer.stop();
+                    monitor.close();
+                }
             };
             worker.execute();
 
@@ -384,6 +499,18 @@ class DataSetOperationFrame extends JFrame {
         return panel;
     }
 
+    /**
+     * Return a summary of a list of addresses showing at most three of them.
+     *
+     * @param addresses list of addresses.
+     * @return a summary of the addresses, one per line.
+     */
+    private static String summarizeAddresses(List<String> addresses) {
+        if (addresses.size() > 3)
+            return String.join("\n", addresses.subList(0, 3)) + "\n... (" + addresses.size() + " in total)";
+        return String.join("\n", addresses);
+    }
+
     /**
      * Create a filtering control panel.
      * 
@@ -437,6 +564,18 @@ class DataSetOperationFrame extends JFrame {
         stringFormPanelContainer.add(stringFormPanel, BorderLayout.NORTH);
         stringFormPanelContainer.add(Box.createGlue(), BorderLayout.CENTER);
         numericOrStringFormTabPane.addTab(FILTER_STRING_FORM, stringFormPanelContainer);
+
+        // create spatial form panel.
+        UserInputPanel spatialPanel = new UserInputPanel(parent.getCore().getSpatialFilterConfigs(dataSetName));
+        JPanel spatialFormPanelContainer = new JPanel(new BorderLayout());
+        spatialFormPanelContainer.add(spatialPanel, BorderLayout.NORTH);
+        spatialFormPanelContainer.add(Box.createGlue(), BorderLayout.CENTER);
+        JTextArea spatialTipArea = new JTextArea(FILTER_SPATIAL_TIP);
+        spatialTipArea.setLineWrap(true);
+        spatialTipArea.setWrapStyleWord(true);
+        spatialTipArea.setOpaque(false);
+        spatialFormPanelContainer.add(spatialTipArea, BorderLayout.SOUTH);
+        numericOrStringFormTabPane.addTab(FILTER_SPATIAL_FORM, spatialFormPanelContainer);
         
         JPanel lowerPanel = new JPanel();
         lowerPanel.setLayout(new BoxLayout(lowerPanel, BoxLayout.Y_AXIS));
@@ -446,13 +585,17 @@ class DataSetOperationFrame extends JFrame {
         lowerPanel.add(newDataSetName);
         
         lowerPanel.add(createCancelOkButtonPanel(l -> {
-            boolean isNumericForm = numericOrStringFormTabPane.getSelectedIndex() == 0 ? true : false;
-            Map<String, List<String>> params = isNumericForm ? numericPanel.getUserInput() : stringFormPanel.getUserInput();
+            int form = numericOrStringFormTabPane.getSelectedIndex();
             try {
-                if (isNumericForm) {
-                    parent.getCore().numericFilter(dataSetName, newDataSetName.getUserInput().get(0), params);
+                if (form == 0) {
+                    parent.getCore().numericFilter(dataSetName, newDataSetName.getUserInput().get(0),
+                            numericPanel.getUserInput());
+                } else if (form == 1) {
+                    parent.getCore().stringFilter(dataSetName, newDataSetName.getUserInput().get(0),
+                            stringFormPanel.getUserInput());
                 } else {
-                    parent.getCore().stringFilter(dataSetName, newDataSetName.getUserInput().get(0), params);
+                    parent.getCore().spatialFilter(dataSetName, newDataSetName.getUserInput().get(0),
+                            spatialPanel.getUserInput());
                 }
                 this.setVisible(false);
                 this.dispose();
@@ -511,6 +654,185 @@ class DataSetOperationFrame extends JFrame {
         return panel;
     }
 
+    /**
+     * Create a window function control panel.
+     *
+     * @return window function control panel.
+     */
+    private JPanel createWindowPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+
+        JTextArea textArea = new JTextArea(WINDOW_TIP);
+        textArea.setLineWrap(true);
+        textArea.setWrapStyleWord(true);
+        textArea.setOpaque(false);
+        textArea.setBorder(BorderFactory.createEmptyBorder(0, 5, 10, 5));
+        panel.add(textArea, BorderLayout.NORTH);
+
+        JPanel controlPanel = new JPanel();
+        controlPanel.setLayout(new BorderLayout());
+        panel.add(controlPanel, BorderLayout.CENTER);
+
+        UserInputPanel windowPanel = new UserInputPanel(
+                parent.getCore().getWindowConfigs(dataSetName));
+        controlPanel.add(windowPanel, BorderLayout.NORTH);
+
+        JPanel lowerPanel = new JPanel();
+        lowerPanel.setLayout(new BoxLayout(lowerPanel, BoxLayout.Y_AXIS));
+        controlPanel.add(lowerPanel, BorderLayout.SOUTH);
+
+        UserInputComponent newDataSetName = new UserInputComponent.TextFieldInput("New DataSet Name");
+        lowerPanel.add(newDataSetName);
+
+        lowerPanel.add(createCancelOkButtonPanel(l -> {
+            Map<String, List<String>> params = windowPanel.getUserInput();
+            try {
+                parent.getCore().window(dataSetName, newDataSetName.getUserInput().get(0), params);
+                this.setVisible(false);
+                this.dispose();
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage());
+            }
+        }));
+
+        return panel;
+    }
+
+    /**
+     * Create a sampling control panel.
+     *
+     * @return sampling control panel.
+     */
+    private JPanel createSamplePanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+
+        JTextArea textArea = new JTextArea(SAMPLE_TIP);
+        textArea.setLineWrap(true);
+        textArea.setWrapStyleWord(true);
+        textArea.setOpaque(false);
+        textArea.setBorder(BorderFactory.createEmptyBorder(0, 5, 10, 5));
+        panel.add(textArea, BorderLayout.NORTH);
+
+        JPanel controlPanel = new JPanel();
+        controlPanel.setLayout(new BorderLayout());
+        panel.add(controlPanel, BorderLayout.CENTER);
+
+        UserInputPanel samplePanel = new UserInputPanel(
+                parent.getCore().getSampleConfigs(dataSetName));
+        controlPanel.add(samplePanel, BorderLayout.NORTH);
+
+        JPanel lowerPanel = new JPanel();
+        lowerPanel.setLayout(new BoxLayout(lowerPanel, BoxLayout.Y_AXIS));
+        controlPanel.add(lowerPanel, BorderLayout.SOUTH);
+
+        UserInputComponent newDataSetName = new UserInputComponent.TextFieldInput("New DataSet Name");
+        lowerPanel.add(newDataSetName);
+
+        lowerPanel.add(createCancelOkButtonPanel(l -> {
+            Map<String, List<String>> params = samplePanel.getUserInput();
+            try {
+                parent.getCore().sample(dataSetName, newDataSetName.getUserInput().get(0), params);
+                this.setVisible(false);
+                this.dispose();
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage());
+            }
+        }));
+
+        return panel;
+    }
+
+    /**
+     * Create a computed column control panel.
+     *
+     * @return computed column control panel.
+     */
+    private JPanel createAddColumnPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+
+        DataSet dataSet = parent.getCore().getDataSet(dataSetName);
+        List<String> numericLabels = new ArrayList<>(dataSet.labelsOfType(DataType.INTEGER));
+        numericLabels.addAll(dataSet.labelsOfType(DataType.DOUBLE));
+        JTextArea textArea = new JTextArea(ADD_COLUMN_TIP + String.join(", ", numericLabels));
+        textArea.setLineWrap(true);
+        textArea.setWrapStyleWord(true);
+        textArea.setOpaque(false);
+        textArea.setBorder(BorderFactory.createEmptyBorder(0, 5, 10, 5));
+        panel.add(textArea, BorderLayout.NORTH);
+
+        JPanel controlPanel = new JPanel();
+        controlPanel.setLayout(new BorderLayout());
+        panel.add(controlPanel, BorderLayout.CENTER);
+
+        UserInputPanel addColumnPanel = new UserInputPanel(
+                parent.getCore().getComputedColumnConfigs(dataSetName));
+        controlPanel.add(addColumnPanel, BorderLayout.NORTH);
+
+        JPanel lowerPanel = new JPanel();
+        lowerPanel.setLayout(new BoxLayout(lowerPanel, BoxLayout.Y_AXIS));
+        controlPanel.add(lowerPanel, BorderLayout.SOUTH);
+
+        UserInputComponent newDataSetName = new UserInputComponent.TextFieldInput("New DataSet Name");
+        lowerPanel.add(newDataSetName);
+
+        lowerPanel.add(createCancelOkButtonPanel(l -> {
+            Map<String, List<String>> params = addColumnPanel.getUserInput();
+            try {
+                parent.getCore().addComputedColumn(dataSetName, newDataSetName.getUserInput().get(0), params);
+                this.setVisible(false);
+                this.dispose();
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage());
+            }
+        }));
+
+        return panel;
+    }
+
+    /**
+     * Create a geometry metrics control panel.
+     *
+     * @return geometry metrics control panel.
+     */
+    private JPanel createMetricsPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+
+        JTextArea textArea = new JTextArea(METRICS_TIP);
+        textArea.setLineWrap(true);
+        textArea.setWrapStyleWord(true);
+        textArea.setOpaque(false);
+        textArea.setBorder(BorderFactory.createEmptyBorder(0, 5, 10, 5));
+        panel.add(textArea, BorderLayout.NORTH);
+
+        JPanel controlPanel = new JPanel();
+        controlPanel.setLayout(new BorderLayout());
+        panel.add(controlPanel, BorderLayout.CENTER);
+
+        UserInputPanel metricsPanel = new UserInputPanel(
+                parent.getCore().getGeometryMetricConfigs(dataSetName));
+        controlPanel.add(metricsPanel, BorderLayout.NORTH);
+
+        JPanel lowerPanel = new JPanel();
+        lowerPanel.setLayout(new BoxLayout(lowerPanel, BoxLayout.Y_AXIS));
+        controlPanel.add(lowerPanel, BorderLayout.SOUTH);
+
+        UserInputComponent newDataSetName = new UserInputComponent.TextFieldInput("New DataSet Name");
+        lowerPanel.add(newDataSetName);
+
+        lowerPanel.add(createCancelOkButtonPanel(l -> {
+            Map<String, List<String>> params = metricsPanel.getUserInput();
+            try {
+                parent.getCore().geometryMetrics(dataSetName, newDataSetName.getUserInput().get(0), params);
+                this.setVisible(false);
+                this.dispose();
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage());
+            }
+        }));
+
+        return panel;
+    }
+
     /**
      * Create a panel containing cancel and ok button.
      * 
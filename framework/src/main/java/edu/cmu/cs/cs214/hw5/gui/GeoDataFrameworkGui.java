@@ -5,13 +5,17 @@ import edu.cmu.cs.cs214.hw5.core.GeoDataFramework;
 import static edu.cmu.cs.cs214.hw5.gui.DataPluginInputFrame.Receiver.DATA_PLUGIN;
 
 import javax.swing.BorderFactory;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JComponent;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.KeyEvent;
@@ -52,6 +56,16 @@ public class GeoDataFrameworkGui extends JFrame implements FrameworkListener {
      */
     private static final String MENU_IMPORT_DATA = "Import...";
 
+    /**
+     * MENU_PREVIEW option name.
+     */
+    private static final String MENU_PREVIEW = "Preview Large Graphs With Sample";
+
+    /**
+     * MENU_LOAD_GAZETTEER option name.
+     */
+    private static final String MENU_LOAD_GAZETTEER = "Load Gazetteer...";
+
     /**
      * MENU_EXIT option name.
      */
@@ -128,6 +142,18 @@ public class GeoDataFrameworkGui extends JFrame implements FrameworkListener {
         importDataMenu.setMnemonic(KeyEvent.VK_N);
         fileMenu.add(importDataMenu);
 
+        // Add a 'Preview' option to render a sample before the full data of large graphs.
+        JCheckBoxMenuItem previewMenuItem = new JCheckBoxMenuItem(MENU_PREVIEW, core.getPreviewSampleSize() > 0);
+        int defaultSampleSize = core.getPreviewSampleSize();
+        previewMenuItem.addActionListener(event ->
+                core.setPreviewSampleSize(previewMenuItem.isSelected() ? defaultSampleSize : 0));
+        fileMenu.add(previewMenuItem);
+
+        // Add a 'Load Gazetteer' menu item for offline geocoding.
+        JMenuItem gazetteerMenuItem = new JMenuItem(MENU_LOAD_GAZETTEER);
+        gazetteerMenuItem.addActionListener(event -> loadGazetteer());
+        fileMenu.add(gazetteerMenuItem);
+
         // Add a separator between 'Import Data' and 'Exit' menu items.
         fileMenu.addSeparator();
 
@@ -146,6 +172,22 @@ public class GeoDataFrameworkGui extends JFrame implements FrameworkListener {
         core.subscribe(this);
     }
 
+    /**
+     * Let the user choose a gazetteer file and load it into the framework for offline geocoding.
+     */
+    private void loadGazetteer() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Gazetteer (GeoJSON, CSV)", "json", "geojson", "csv"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try {
+            int places = core.loadGazetteer(chooser.getSelectedFile().toPath());
+            JOptionPane.showMessageDialog(this, String.format("Loaded %d Place(s) For Offline Geocoding", places));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage());
+        }
+    }
+
     /**
      * Add all data plugin's name into the menu.
      */
@@ -182,6 +224,19 @@ public class GeoDataFrameworkGui extends JFrame implements FrameworkListener {
         core.loadData(pluginName, dataSetName, userInput);
     }
 
+    /**
+     * Load data from data plugin given its name while applying the import operations.
+     *
+     * @param pluginName name of plugin from which to load data.
+     * @param dataSetName name of dataSet loaded by the plugin.
+     * @param userInput a parameter mapping from configuration name to concrete parameters user specifies.
+     * @param importParams a parameter mapping from import configuration name to parameters user specifies.
+     */
+    void loadData(String pluginName, String dataSetName, Map<String, List<String>> userInput,
+                  Map<String, List<String>> importParams) {
+        core.loadData(pluginName, dataSetName, userInput, importParams);
+    }
+
     /**
      * Handle events when dataSet is loaded into the framework. 
      * 
@@ -1,17 +1,23 @@
 package edu.cmu.cs.cs214.hw5.gui;
 
+import edu.cmu.cs.cs214.hw5.core.DataSet;
 import edu.cmu.cs.cs214.hw5.core.DisplayFilterConfig;
+import edu.cmu.cs.cs214.hw5.core.UserInputType;
 import org.apache.commons.lang3.tuple.Pair;
 
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingWorker;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * GraphDisplayingFrame displays the drawn graph in the panel.
@@ -40,6 +46,11 @@ class GraphDisplayingFrame extends JFrame {
 
     private final JScrollPane graphPane;
 
+    /**
+     * Number of times the graph has been refreshed, used to discard outdated graphs drawn in the background.
+     */
+    private int refreshCount;
+
     /**
      * Create and initialize a graph displaying panel.
      *
@@ -71,7 +82,14 @@ class GraphDisplayingFrame extends JFrame {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
-        filterPanel = new UserInputPanel(parent.getCore().convertTransformConfigs(dataSetName, filterConfigs));
+        Map<String, UserInputComponent.PageSource> pageSources = new HashMap<>();
+        DataSet dataSet = parent.getCore().getDataSet(dataSetName);
+        for (DisplayFilterConfig config : filterConfigs) {
+            String label = config.getLabel();
+            if (config.getFilterType() != UserInputType.NONE && parent.getCore().isHighCardinality(dataSetName, label))
+                pageSources.put(label, distinctValueSource(dataSet, label));
+        }
+        filterPanel = new UserInputPanel(parent.getCore().convertTransformConfigs(dataSetName, filterConfigs), pageSources);
         filterPanel.setBorder(BorderFactory.createEmptyBorder(0, 50, 0, 50));
         add(filterPanel, BorderLayout.NORTH);
         filterPanel.addActionListener(e -> refreshGraph());
@@ -83,6 +101,31 @@ class GraphDisplayingFrame extends JFrame {
         pack();
     }
 
+    /**
+     * Return a page source listing the distinct values of a column of the dataSet.
+     *
+     * @param dataSet dataSet containing the column.
+     * @param label label of the column.
+     * @return page source listing the distinct values of the column.
+     */
+    static UserInputComponent.PageSource distinctValueSource(DataSet dataSet, String label) {
+        return new UserInputComponent.PageSource() {
+            @Override
+            public List<String> page(String prefix, int offset, int limit) {
+                return dataSet.getDistinctValues(label, prefix, offset, limit);
+            }
+
+            @Override
+            public int count(String prefix) {
+                return dataSet.countDistinctValues(label, prefix);
+            }
+        };
+    }
+
+    /**
+     * Redraw the graph in background with the display filters selected by user. If the data is large, a
+     * preview drawn with a sample of the data is displayed first and replaced once the full graph is drawn.
+     */
     private void refreshGraph() {
         Map<String, List<String>> userInput = filterPanel.getUserInput();
         List<Pair<DisplayFilterConfig, List<String>>> filterInput = new ArrayList<>();
@@ -99,9 +142,35 @@ class GraphDisplayingFrame extends JFrame {
                     break;
             }
         }
-        setDisplayedGraph(
-                parent.getCore().drawGraph(pluginName, dataSetName, pluginParams, filterInput)
-        );
+        int refreshId = ++refreshCount;
+        new SwingWorker<JPanel, JPanel>() {
+            @Override
+            protected JPanel doInBackground() {
+                return parent.getCore().drawGraph(pluginName, dataSetName, pluginParams, filterInput,
+                        preview -> publish(preview));
+            }
+
+            @Override
+            protected void process(List<JPanel> previews) {
+                // The full graph may already be displayed if it was drawn right after the preview.
+                if (refreshId == refreshCount && !isDone())
+                    setDisplayedGraph(previews.get(previews.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                if (refreshId != refreshCount)
+                    return;
+                try {
+                    setDisplayedGraph(get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    setDisplayedGraph(null);
+                    JOptionPane.showMessageDialog(GraphDisplayingFrame.this, ex.getCause().getMessage());
+                }
+            }
+        }.execute();
     }
 
     /**
@@ -9,7 +9,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * StringFormPanel is a control panel to let user select string typed filtering 
@@ -58,9 +57,14 @@ class StringFormPanel extends JPanel {
             if (!selectedPlugin.isEmpty() && selectedPlugin.get(0) != null) {
                 DataSet dataSet = parent.getCore().getDataSet(dataSetName);
                 String userLabel = this.getUserInput().get(COLUMN_NAME).get(0);
-                List<Object> column = dataSet.getColumn(userLabel);
-                List<String> distinctValues = column.stream().distinct().sorted().map(Object::toString).collect(Collectors.toList());
-                UserInputComponent userInputComponent = new UserInputComponent.MultiSelectionInput(VALUES, distinctValues);
+                UserInputComponent userInputComponent;
+                if (parent.getCore().isHighCardinality(dataSetName, userLabel)) {
+                    userInputComponent = new UserInputComponent.SearchableSelectionInput(VALUES,
+                            GraphDisplayingFrame.distinctValueSource(dataSet, userLabel), true);
+                } else {
+                    List<String> distinctValues = dataSet.getDistinctValues(userLabel, "", 0, Integer.MAX_VALUE);
+                    userInputComponent = new UserInputComponent.MultiSelectionInput(VALUES, distinctValues);
+                }
                 remove(this.valueComponent);
                 this.valueComponent = userInputComponent;
                 this.add(this.valueComponent);
@@ -10,11 +10,14 @@ import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.GridLayout;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -285,4 +288,207 @@ abstract class UserInputComponent extends JPanel {
         }
     }
 
+    /**
+     * Source of the values listed page by page by a SearchableSelectionInput.
+     */
+    interface PageSource {
+
+        /**
+         * Return a page of the values starting with the given prefix.
+         *
+         * @param prefix prefix that the values start with, or empty for all values.
+         * @param offset number of matching values to skip.
+         * @param limit maximum number of values to return.
+         * @return a page of the matching values.
+         */
+        List<String> page(String prefix, int offset, int limit);
+
+        /**
+         * Return the number of values starting with the given prefix.
+         *
+         * @param prefix prefix that the values start with, or empty for all values.
+         * @return number of the matching values.
+         */
+        int count(String prefix);
+    }
+
+    /**
+     * Component to let user search values by prefix and select one or multiple value(s) from a list
+     * that is loaded page by page. It is used instead of the selection components when there are too many
+     * values to be listed as a whole.
+     */
+    static class SearchableSelectionInput extends UserInputComponent {
+
+        /**
+         * Version of the serialized form.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Number of values loaded at a time.
+         */
+        private static final int PAGE_SIZE = 100;
+
+        /**
+         * Source of the values.
+         */
+        private final PageSource source;
+
+        /**
+         * Whether multiple values can be selected.
+         */
+        private final boolean multiSelection;
+
+        /**
+         * Set of values selected by user.
+         */
+        private final Set<String> selected;
+
+        /**
+         * List of action listeners.
+         */
+        private final List<ActionListener> actionListeners;
+
+        /**
+         * Panel containing the check boxes of the loaded values.
+         */
+        private final JPanel innerPanel;
+
+        /**
+         * Label showing the number of loaded and matching values.
+         */
+        private final JLabel countLabel;
+
+        /**
+         * Button loading the next page of values.
+         */
+        private final JButton moreButton;
+
+        private final JButton button;
+
+        /**
+         * Prefix of the values being listed.
+         */
+        private String prefix;
+
+        /**
+         * Number of values loaded.
+         */
+        private int loaded;
+
+        /**
+         * Create and initialize a SearchableSelectionInput.
+         *
+         * @param name name of this component.
+         * @param source source of the values.
+         * @param multiSelection whether multiple values can be selected.
+         */
+        SearchableSelectionInput(String name, PageSource source, boolean multiSelection) {
+            super(name);
+            this.source = source;
+            this.multiSelection = multiSelection;
+            this.selected = new LinkedHashSet<>();
+            this.actionListeners = new ArrayList<>();
+            this.prefix = "";
+
+            innerPanel = new JPanel();
+            innerPanel.setLayout(new BoxLayout(innerPanel, BoxLayout.Y_AXIS));
+            JScrollPane pane = new JScrollPane(innerPanel);
+
+            countLabel = new JLabel();
+            moreButton = new JButton("More...");
+            moreButton.addActionListener(e -> loadPage());
+            JPanel pagePanel = new JPanel(new BorderLayout());
+            pagePanel.add(countLabel, BorderLayout.CENTER);
+            pagePanel.add(moreButton, BorderLayout.EAST);
+
+            JPanel popupPanel = new JPanel(new BorderLayout());
+            popupPanel.add(pane, BorderLayout.CENTER);
+            popupPanel.add(pagePanel, BorderLayout.SOUTH);
+            JPopupMenu popupMenu = new JPopupMenu();
+            popupMenu.add(popupPanel);
+
+            JTextField searchField = new JTextField();
+            searchField.setToolTipText("Type a prefix and press Enter to search");
+
+            button = new JButton();
+            button.setPreferredSize(new Dimension(0, 27));
+            ActionListener showPopup = e -> {
+                prefix = searchField.getText();
+                innerPanel.removeAll();
+                loaded = 0;
+                loadPage();
+                pane.setPreferredSize(new Dimension(button.getWidth() + searchField.getWidth(), 400));
+                popupMenu.show(searchField, 0, searchField.getHeight());
+            };
+            button.addActionListener(showPopup);
+            searchField.addActionListener(showPopup);
+
+            JPanel centerPanel = new JPanel(new GridLayout(1, 2));
+            centerPanel.add(searchField);
+            centerPanel.add(button);
+            add(centerPanel, BorderLayout.CENTER);
+        }
+
+        /**
+         * Load the next page of values starting with the prefix into the list.
+         */
+        private void loadPage() {
+            for (String s : source.page(prefix, loaded, PAGE_SIZE)) {
+                JCheckBox box = new JCheckBox(s, selected.contains(s));
+                box.addActionListener(e -> {
+                    if (box.isSelected()) {
+                        if (!multiSelection) {
+                            selected.clear();
+                            for (Component c : innerPanel.getComponents()) {
+                                if (c != box)
+                                    ((JCheckBox) c).setSelected(false);
+                            }
+                        }
+                        selected.add(s);
+                    } else {
+                        selected.remove(s);
+                    }
+                    refreshText();
+                    for (ActionListener l : actionListeners) {
+                        l.actionPerformed(e);
+                    }
+                });
+                innerPanel.add(box);
+                loaded++;
+            }
+            int total = source.count(prefix);
+            countLabel.setText(String.format(" %d of %d", loaded, total));
+            moreButton.setEnabled(loaded < total);
+            innerPanel.revalidate();
+            innerPanel.repaint();
+        }
+
+        /**
+         * Add an action listener to this component.
+         *
+         * @param l action listener.
+         */
+        @Override
+        void addActionListener(ActionListener l) {
+            actionListeners.add(l);
+        }
+
+        /**
+         * Return a list of inputs specified by user.
+         *
+         * @return a list of inputs specified by user.
+         */
+        @Override
+        public List<String> getUserInput() {
+            return new ArrayList<>(selected);
+        }
+
+        private void refreshText() {
+            String s = String.join(", ", selected.stream().limit(4).collect(Collectors.toList()));
+            if (selected.size() > 4)
+                s = s + "...";
+            button.setText(s);
+        }
+    }
 }
@@ -28,6 +28,17 @@ class UserInputPanel extends JPanel {
      * @param configs a list of configurations which will show as UserInputComponents in the panel.
      */
     UserInputPanel(List<UserInputConfig> configs) {
+        this(configs, new HashMap<>());
+    }
+
+    /**
+     * Create and initialize the panel. Selection configurations whose name has a page source are shown as
+     * searchable components loading their values page by page instead of from the selection list.
+     *
+     * @param configs a list of configurations which will show as UserInputComponents in the panel.
+     * @param pageSources mapping from configuration name to the source of its values.
+     */
+    UserInputPanel(List<UserInputConfig> configs, Map<String, UserInputComponent.PageSource> pageSources) {
         super();
         
         // Null pointer check
@@ -42,6 +53,12 @@ class UserInputPanel extends JPanel {
         for (UserInputConfig config : configs) {
             String optionName = config.getName();
             UserInputType inputType = config.getInputType();
+            UserInputComponent.PageSource pageSource = pageSources.get(optionName);
+            if (pageSource != null && inputType != UserInputType.TEXT_FIELD) {
+                this.inputComponentList.add(new UserInputComponent.SearchableSelectionInput(
+                        optionName, pageSource, inputType == UserInputType.MULTI_SELECTION));
+                continue;
+            }
             switch (inputType) {
                 case SINGLE_SELECTION:
                     this.inputComponentList.add(new UserInputComponent.SingleSelectionInput(optionName, config.getSelectionList()));